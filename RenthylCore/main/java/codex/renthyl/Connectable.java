@@ -77,6 +77,14 @@ public interface Connectable {
      */
     public void setLayoutUpdateNeeded();
     
+    /**
+     * Indicates that only connections between tickets have changed, so
+     * the FrameGraph requires culling but not a full layout update.
+     */
+    public default void setConnectionUpdateNeeded() {
+        setLayoutUpdateNeeded();
+    }
+    
     /**
      * Gets the named input ticket.
      * 
@@ -0,0 +1,378 @@
+/*
+ * Copyright (c) 2024, codex
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package codex.renthyl;
+
+import codex.renthyl.modules.ModuleIndex;
+import codex.renthyl.modules.RenderContainer;
+import codex.renthyl.modules.RenderModule;
+import codex.renthyl.resources.ResourceTicket;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Executes modules in an order determined by their ticket connections rather
+ * than by manually assigned {@link codex.renthyl.modules.RenderThread} indices.
+ * <p>
+ * After culling, a dependency graph is built by following each input ticket's
+ * {@link ResourceTicket#getSource() source} chain to the module that owns the
+ * source output. Modules that are {@link RenderModule#isThreadSafe() thread safe}
+ * are executed on a work-stealing pool as soon as all their dependencies are
+ * complete. All other modules are pinned to the main render thread, where they
+ * execute in their original queue order, except where a pinned module depends on
+ * a pinned module queued after it.
+ * 
+ * @author codex
+ */
+public class DependencyScheduler {
+    
+    private static final Logger LOG = Logger.getLogger(DependencyScheduler.class.getName());
+    
+    private final ArrayList<Node> nodes = new ArrayList<>();
+    private final ArrayList<Node> pinned = new ArrayList<>();
+    private final ArrayList<Node> roots = new ArrayList<>();
+    private final AtomicInteger remaining = new AtomicInteger(0);
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private final Object lock = new Object();
+    private volatile boolean waiting = false;
+    private volatile boolean error = false;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    private FGRenderContext context;
+    
+    /**
+     * Builds the dependency graph from all used modules under the root.
+     * <p>
+     * Should be called after culling. Modules scheduled off the main thread
+     * have their thread index set to {@link ModuleIndex#ANY_THREAD}.
+     * 
+     * @param root 
+     */
+    public void build(RenderModule root) {
+        nodes.clear();
+        pinned.clear();
+        roots.clear();
+        IdentityHashMap<ResourceTicket, Node> owners = new IdentityHashMap<>();
+        root.traverse(m -> {
+            if (!(m instanceof RenderContainer) && m.isUsed()) {
+                Node n = new Node(m, m.isThreadSafe(), nodes.size());
+                nodes.add(n);
+                for (ResourceTicket t : m.getOutputTickets()) {
+                    owners.put(t, n);
+                }
+            }
+        });
+        for (Node n : nodes) {
+            for (ResourceTicket t : n.module.getInputTickets()) {
+                for (ResourceTicket s = t.getSource(); s != null; s = s.getSource()) {
+                    Node p = owners.get(s);
+                    if (p != null) {
+                        if (p != n && !p.dependents.contains(n)) {
+                            p.dependents.add(n);
+                            n.dependencies++;
+                        }
+                        break;
+                    }
+                }
+            }
+            if (!n.pinned) {
+                n.module.getIndex().setThreadIndex(ModuleIndex.ANY_THREAD);
+                if (n.dependencies == 0) {
+                    roots.add(n);
+                }
+            }
+        }
+        orderPinned();
+    }
+    /**
+     * Lists pinned nodes in a topological order of the whole graph, so that awaiting
+     * them one by one on the main thread cannot wait on a pinned node that has not
+     * run yet. Of the nodes ready at each step, the earliest queued is taken first.
+     */
+    private void orderPinned() {
+        PriorityQueue<Node> ready = new PriorityQueue<>((a, b) -> Integer.compare(a.order, b.order));
+        for (Node n : nodes) {
+            n.pending.set(n.dependencies);
+            if (n.dependencies == 0) {
+                ready.add(n);
+            }
+        }
+        while (!ready.isEmpty()) {
+            Node n = ready.poll();
+            if (n.pinned) {
+                pinned.add(n);
+            }
+            for (int i = 0; i < n.dependents.size(); i++) {
+                Node d = n.dependents.get(i);
+                if (d.pending.decrementAndGet() == 0) {
+                    ready.add(d);
+                }
+            }
+        }
+        for (Node n : nodes) {
+            if (n.pending.get() > 0) {
+                // only possible with circular connections, which cannot complete anyway
+                LOG.log(Level.WARNING, "{0} is part of a dependency cycle.", n.module);
+                if (n.pinned) {
+                    pinned.add(n);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Executes all modules in the dependency graph.
+     * <p>
+     * The calling thread executes pinned modules and returns once every module
+     * has completed, or the timeout expires or a module fails. In the latter cases,
+     * no further modules are started, and modules already running on the pool
+     * are waited on before returning.
+     * 
+     * @param context
+     * @param timeout maximum time to wait in milliseconds
+     * @return true if all modules completed, false if execution timed out or failed
+     * @throws InterruptedException 
+     */
+    public boolean execute(FGRenderContext context, long timeout) throws InterruptedException {
+        this.context = context;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        for (int i = 0; i < nodes.size(); i++) {
+            Node n = nodes.get(i);
+            n.pending.set(n.dependencies);
+            n.reinitialize();
+        }
+        remaining.set(nodes.size());
+        for (int i = 0; i < roots.size(); i++) {
+            dispatch(roots.get(i));
+        }
+        for (int i = 0; i < pinned.size(); i++) {
+            Node n = pinned.get(i);
+            if (!await(n, deadline)) {
+                return abort();
+            }
+            run(n);
+        }
+        if (!await(null, deadline)) {
+            return abort();
+        }
+        joinDispatched();
+        return true;
+    }
+    
+    private boolean abort() throws InterruptedException {
+        // stop dispatching modules, and wait for modules already on the pool
+        // so that none run concurrently with the end of the frame
+        error = true;
+        synchronized (lock) {
+            waiting = true;
+            try {
+                while (inFlight.get() > 0) {
+                    lock.wait();
+                }
+            } finally {
+                waiting = false;
+            }
+        }
+        joinDispatched();
+        return false;
+    }
+    private void joinDispatched() {
+        // a task is marked complete only after its module finishes, so it must
+        // be joined before being reinitialized for the next frame, or it may be
+        // marked complete after reinitialization and never execute again
+        for (int i = 0; i < nodes.size(); i++) {
+            Node n = nodes.get(i);
+            if (n.dispatched) {
+                n.quietlyJoin();
+                n.dispatched = false;
+            }
+        }
+    }
+    private void dispatch(Node n) {
+        n.dispatched = true;
+        inFlight.incrementAndGet();
+        if (ForkJoinTask.getPool() == pool) {
+            n.fork();
+        } else {
+            pool.execute(n);
+        }
+    }
+    
+    private void run(Node n) {
+        try {
+            if (!error) {
+                n.module.executeModuleRender(context);
+            }
+        } catch (Exception ex) {
+            LOG.log(Level.SEVERE, "An exception occured while executing "+n.module, ex);
+            error = true;
+        }
+        if (error) {
+            // dependents are not started after an error or timeout
+            signal();
+            return;
+        }
+        for (int i = 0; i < n.dependents.size(); i++) {
+            Node d = n.dependents.get(i);
+            if (d.pending.decrementAndGet() == 0) {
+                if (d.pinned) {
+                    signal();
+                } else {
+                    dispatch(d);
+                }
+            }
+        }
+        if (remaining.decrementAndGet() == 0) {
+            signal();
+        }
+    }
+    private boolean isReady(Node n) {
+        return n != null ? n.pending.get() == 0 : remaining.get() == 0;
+    }
+    private boolean await(Node n, long deadline) throws InterruptedException {
+        if (isReady(n)) {
+            return true;
+        }
+        synchronized (lock) {
+            // waiting is set before checking readiness, and signalling threads check
+            // waiting after updating readiness, so no signal can be missed
+            waiting = true;
+            try {
+                while (!isReady(n)) {
+                    if (error) {
+                        return false;
+                    }
+                    long r = deadline - System.nanoTime();
+                    if (r <= 0) {
+                        return false;
+                    }
+                    lock.wait(r / 1000000L, (int)(r % 1000000L));
+                }
+                return true;
+            } finally {
+                waiting = false;
+            }
+        }
+    }
+    private void signal() {
+        if (waiting) {
+            synchronized (lock) {
+                lock.notifyAll();
+            }
+        }
+    }
+    
+    /**
+     * Clears the dependency graph.
+     */
+    public void clear() {
+        nodes.clear();
+        pinned.clear();
+        roots.clear();
+    }
+    
+    /**
+     * Sets the pool thread safe modules are executed on.
+     * <p>
+     * default={@link ForkJoinPool#commonPool()}
+     * 
+     * @param pool 
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+    
+    /**
+     * 
+     * @return 
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+    /**
+     * Gets the number of modules in the dependency graph.
+     * 
+     * @return 
+     */
+    public int getNumModules() {
+        return nodes.size();
+    }
+    /**
+     * Gets the number of modules pinned to the main render thread.
+     * 
+     * @return 
+     */
+    public int getNumPinnedModules() {
+        return pinned.size();
+    }
+    /**
+     * Returns true if an error occured during execution.
+     * 
+     * @return 
+     */
+    public boolean didErrorOccur() {
+        return error;
+    }
+    
+    private class Node extends RecursiveAction {
+        
+        private final RenderModule module;
+        private final boolean pinned;
+        private final ArrayList<Node> dependents = new ArrayList<>(2);
+        private final AtomicInteger pending = new AtomicInteger(0);
+        private final int order;
+        private int dependencies = 0;
+        private boolean dispatched = false;
+        
+        public Node(RenderModule module, boolean threadSafe, int order) {
+            this.module = module;
+            this.pinned = !threadSafe;
+            this.order = order;
+        }
+        
+        @Override
+        protected void compute() {
+            try {
+                run(this);
+            } finally {
+                if (inFlight.decrementAndGet() == 0) {
+                    signal();
+                }
+            }
+        }
+        
+    }
+    
+}
@@ -31,7 +31,7 @@ package codex.renthyl;
 import codex.renthyl.modules.ModuleIndex;
 import codex.renthyl.modules.RenderModule;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.List;
 
 /**
  * Contains an array of queues, one queue per thread, which
@@ -41,7 +41,7 @@ import java.util.LinkedList;
  */
 public class ExecutionQueueList {
     
-    private final ArrayList<LinkedList<RenderModule>> queues = new ArrayList<>();
+    private final ArrayList<ArrayList<RenderModule>> queues = new ArrayList<>();
     private final ModuleIndex tempIndex = new ModuleIndex();
     private int activeQueues = 0;
     
@@ -61,9 +61,9 @@ public class ExecutionQueueList {
         while (index >= queues.size()) {
             queues.add(null);
         }
-        LinkedList<RenderModule> queue = queues.get(index);
+        ArrayList<RenderModule> queue = queues.get(index);
         if (queue == null) {
-            queue = new LinkedList<>();
+            queue = new ArrayList<>();
             queues.set(index, queue);
             activeQueues++;
         }
@@ -77,7 +77,7 @@ public class ExecutionQueueList {
      */
     public void flush() {
         for (int i = queues.size()-1; i >= 0; i--) {
-            LinkedList<RenderModule> queue = queues.get(i);
+            ArrayList<RenderModule> queue = queues.get(i);
             if (queue != null) {
                 if (queue.isEmpty()) {
                     queues.set(i, null);
@@ -95,7 +95,7 @@ public class ExecutionQueueList {
      * @param i
      * @return queue (may be null)
      */
-    public LinkedList<RenderModule> getQueue(int i) {
+    public List<RenderModule> getQueue(int i) {
         return queues.get(i);
     }
     
@@ -31,28 +31,42 @@ package codex.renthyl;
 import codex.renthyl.modules.RenderModule;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Manages threads for rendering.
+ * <p>
+ * Worker threads are persistent: between frames they are parked and use no
+ * CPU, and they are unparked when given a queue to execute. A worker that is
+ * not used for {@link #getTimeoutMillis()} milliseconds retires on its own.
+ * <p>
+ * Alternatively, queues can be run as tasks on an external {@link Executor},
+ * in which case no threads are created by this manager.
  * 
  * @author codex
  */
-public class ExecutionThreadManager {
+public class ExecutionThreadManager implements QueueExecutor {
     
     private static final Logger LOG = Logger.getLogger(ExecutionThreadManager.class.getName());
     private static long timeout = 5000;
     
+    private static final int DEAD = 0, IDLE = 1, SCHEDULED = 2;
+    
     private final ArrayList<ThreadExecutor> threads;
+    private final Executor executor;
     private FGRenderContext context;
-    private int activeThreads = 0;
-    private boolean error = false;
-    private final AtomicBoolean locked = new AtomicBoolean(false);
-    private final Lock threadLock = new ReentrantLock();
+    private final AtomicInteger activeThreads = new AtomicInteger(0);
+    private volatile boolean error = false;
+    // the manager holds one party, and each scheduled worker registers another
+    private final Phaser phaser = new Phaser(1);
     
     /**
      * 
@@ -66,30 +80,65 @@ public class ExecutionThreadManager {
      * @param threadsArrayLength 
      */
     public ExecutionThreadManager(int threadsArrayLength) {
+        this(threadsArrayLength, null);
+    }
+    
+    /**
+     * 
+     * @param executor executor to run asynchronous queues on, or null to use
+     * persistent threads owned by this manager
+     */
+    public ExecutionThreadManager(Executor executor) {
+        this(5, executor);
+    }
+    
+    /**
+     * 
+     * @param threadsArrayLength
+     * @param executor executor to run asynchronous queues on, or null to use
+     * persistent threads owned by this manager
+     */
+    public ExecutionThreadManager(int threadsArrayLength, Executor executor) {
         threads = new ArrayList<>(threadsArrayLength);
+        this.executor = executor;
     }
     
+    @Override
     public void start(FGRenderContext context, ExecutionQueueList queues) {
         this.context = context;
         while (threads.size() < queues.size()) {
             threads.add(new ThreadExecutor(threads.size()));
         }
-        locked.set(false);
-        for (int i = queues.size()-1; i >= 0; i--) {
+        for (int i = queues.size()-1; i >= 0 && !error; i--) {
             List<RenderModule> q = queues.getQueue(i);
             if (q != null) {
-                if (!locked.get() && i > 0) {
-                    threadLock.lock();
-                    locked.set(true);
-                }
                 threads.get(i).start(q);
             }
         }
     }
     
     /**
-     * Flushes all threads that have not been used.
+     * Waits until all worker threads started by the last call to
+     * {@link #start(FGRenderContext, ExecutionQueueList)} complete.
+     * 
+     * @param timeout maximum time to wait in milliseconds
+     * @return true if all threads completed, false if the wait timed out
+     * @throws InterruptedException 
      */
+    @Override
+    public boolean await(long timeout) throws InterruptedException {
+        try {
+            phaser.awaitAdvanceInterruptibly(phaser.arrive(), timeout, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException ex) {
+            return false;
+        }
+    }
+    
+    /**
+     * Flushes all threads that have not been used since the last flush.
+     */
+    @Override
     public void stop() {
         for (int i = 0; i < threads.size(); i++) {
             ThreadExecutor t = threads.get(i);
@@ -99,22 +148,34 @@ public class ExecutionThreadManager {
         }
     }
     
+    /**
+     * Retires all worker threads.
+     * <p>
+     * Threads are created again as needed by following frames.
+     */
+    @Override
+    public void shutdown() {
+        for (int i = 0; i < threads.size(); i++) {
+            threads.get(i).retire();
+        }
+    }
+    
     /**
      * Indicates that an error has occured and execution
      * should be interrupted.
      * 
      * @param force if true, all active threads (except the main thread) are interrupted
      */
+    @Override
     public void error(boolean force) {
         error = true;
         if (force) {
             for (int i = 1; i < threads.size(); i++) {
                 threads.get(i).interrupt();
             }
-            if (locked.getAndSet(false)) {
-                threadLock.unlock();
-            }
+            phaser.forceTermination();
         }
+        shutdown();
         threads.clear();
     }
     
@@ -123,8 +184,9 @@ public class ExecutionThreadManager {
      * 
      * @return 
      */
+    @Override
     public int getNumActiveThreads() {
-        return activeThreads;
+        return activeThreads.get();
     }
     
     /**
@@ -132,41 +194,31 @@ public class ExecutionThreadManager {
      * 
      * @return 
      */
+    @Override
     public boolean didErrorOccur() {
         return error;
     }
     
     /**
-     * Gets the lock used for waiting until all threads are complete.
+     * Gets the external executor asynchronous queues are run on.
      * 
-     * @return 
-     */
-    public Lock getThreadLock() {
-        return threadLock;
-    }
-    
-    /**
-     * Returns true if the thread lock is currently acquired
-     * by this ExecutionThreadManager.
-     * 
-     * @return 
+     * @return executor, or null if persistent threads are used
      */
-    public boolean isLocked() {
-        return locked.get();
-    }
-    
-    private void notifyThreadComplete() {
-        if (--activeThreads <= 0 && locked.getAndSet(false)) {
-            threadLock.unlock();
-        }
+    public Executor getExecutor() {
+        return executor;
     }
     
     private class ThreadExecutor implements Runnable {
         
         private final int index;
-        private List<RenderModule> queue;
-        private Thread thread;
-        private boolean run = false;
+        private final Runnable task = () -> {
+            execute();
+            complete();
+        };
+        private final AtomicInteger state = new AtomicInteger(DEAD);
+        private volatile List<RenderModule> queue;
+        private volatile Thread thread;
+        private boolean used = false;
         
         public ThreadExecutor(int index) {
             this.index = index;
@@ -174,31 +226,52 @@ public class ExecutionThreadManager {
         
         @Override
         public void run() {
-            while (true) {
-                try {
-                    for (RenderModule r : queue) {
-                        if (error) {
-                            break;
-                        }
-                        r.executeModuleRender(context);
-                    }
-                } catch (Exception ex) {
-                    LOG.log(Level.SEVERE, "An exception occured while executing thread "+index, ex);
-                    error(true);
+            while (awaitSchedule()) {
+                execute();
+                state.set(IDLE);
+                complete();
+            }
+        }
+        
+        private void complete() {
+            activeThreads.decrementAndGet();
+            phaser.arriveAndDeregister();
+        }
+        
+        private boolean awaitSchedule() {
+            long idleStart = System.nanoTime();
+            long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+            int s;
+            while ((s = state.get()) != SCHEDULED) {
+                if (s == DEAD || error) {
+                    return false;
                 }
-                run = false;
-                notifyThreadComplete();
-                long start = System.currentTimeMillis();
-                while (!run && !error && thread != null) {
-                    if (System.currentTimeMillis()-start >= timeout) {
-                        LOG.log(Level.WARNING, "Execution thread timed out after {0} milliseconds.", timeout);
-                        thread = null;
+                long remaining = timeoutNanos - (System.nanoTime() - idleStart);
+                if (remaining <= 0) {
+                    if (state.compareAndSet(IDLE, DEAD)) {
+                        return false;
                     }
+                } else {
+                    LockSupport.parkNanos(this, remaining);
+                    // clear interrupts so parking is not skipped
+                    Thread.interrupted();
                 }
-                if (thread == null || error) {
-                    thread = null;
-                    break;
+            }
+            return true;
+        }
+        
+        private void execute() {
+            List<RenderModule> q = queue;
+            try {
+                for (int i = 0, n = q.size(); i < n; i++) {
+                    if (error) {
+                        break;
+                    }
+                    q.get(i).executeModuleRender(context);
                 }
+            } catch (Exception ex) {
+                LOG.log(Level.SEVERE, "An exception occured while executing thread "+index, ex);
+                error(true);
             }
         }
         
@@ -206,12 +279,29 @@ public class ExecutionThreadManager {
             assert queue != null : "Queue cannot be null";
             this.queue = queue;
             if (!queue.isEmpty()) {
-                run = true;
-                activeThreads++;
+                used = true;
+                activeThreads.incrementAndGet();
                 if (index == 0) {
-                    run();
-                } else if (thread == null) {
-                    thread = new Thread(this);
+                    execute();
+                    activeThreads.decrementAndGet();
+                    return true;
+                }
+                phaser.register();
+                if (executor != null) {
+                    try {
+                        executor.execute(task);
+                    } catch (RejectedExecutionException ex) {
+                        LOG.log(Level.SEVERE, "Executor rejected thread "+index, ex);
+                        complete();
+                        error(false);
+                    }
+                } else if (state.compareAndSet(IDLE, SCHEDULED)) {
+                    LockSupport.unpark(thread);
+                } else {
+                    // thread has retired (or was never created)
+                    state.set(SCHEDULED);
+                    thread = new Thread(this, "Renthyl Execution Thread "+index);
+                    thread.setDaemon(true);
                     thread.start();
                 }
                 return true;
@@ -220,16 +310,24 @@ public class ExecutionThreadManager {
         }
         
         public void stop() {
-            if (queue == null) {
-                thread = null;
+            if (!used) {
+                retire();
             }
+            used = false;
             queue = null;
         }
         
+        public void retire() {
+            if (state.compareAndSet(IDLE, DEAD)) {
+                LockSupport.unpark(thread);
+            }
+        }
+        
         public void interrupt() {
-            run = false;
-            if (thread != null) {
-                thread.interrupt();
+            state.set(DEAD);
+            Thread t = thread;
+            if (t != null) {
+                t.interrupt();
             }
             thread = null;
         }
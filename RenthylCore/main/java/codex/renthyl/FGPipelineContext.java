@@ -49,6 +49,7 @@ public class FGPipelineContext implements PipelineContext {
     
     private final RenderObjectMap renderObjects;
     private final ExecutionThreadManager threadManager = new ExecutionThreadManager();
+    private QueueExecutor queueExecutor = threadManager;
     private final AtomicBoolean rendered = new AtomicBoolean(false);
     private GraphEventCapture eventCapture;
     
@@ -72,7 +73,7 @@ public class FGPipelineContext implements PipelineContext {
             eventCapture.endRenderFrame();
         }
         renderObjects.flushMap();
-        threadManager.stop();
+        queueExecutor.stop();
         if (eventCapture != null && eventCapture.isComplete()) {
             try {
                 eventCapture.export();
@@ -89,12 +90,45 @@ public class FGPipelineContext implements PipelineContext {
     }
     
     public void applicationStopped() {
-        threadManager.stop();
+        queueExecutor.shutdown();
     }
     
     public RenderObjectMap getRenderObjects() {
         return renderObjects;
     }
+    /**
+     * Sets the executor used to execute asynchronous render queues.
+     * <p>
+     * The previous executor is shut down. Should not be called during rendering.
+     * 
+     * @param queueExecutor executor, or null to use the default {@link ExecutionThreadManager}
+     * @see QueueExecutor#wrap(java.util.concurrent.Executor)
+     */
+    public void setQueueExecutor(QueueExecutor queueExecutor) {
+        if (queueExecutor == null) {
+            queueExecutor = threadManager;
+        }
+        if (this.queueExecutor != queueExecutor) {
+            this.queueExecutor.shutdown();
+            this.queueExecutor = queueExecutor;
+        }
+    }
+    
+    /**
+     * Gets the executor used to execute asynchronous render queues.
+     * 
+     * @return 
+     */
+    public QueueExecutor getQueueExecutor() {
+        return queueExecutor;
+    }
+    /**
+     * Gets the default thread manager.
+     * 
+     * @return 
+     * @deprecated use {@link #getQueueExecutor()}, which may not be the default thread manager
+     */
+    @Deprecated
     public ExecutionThreadManager getThreadManager() {
         return threadManager;
     }
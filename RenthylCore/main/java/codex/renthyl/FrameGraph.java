@@ -38,6 +38,7 @@ import codex.renthyl.debug.GraphEventCapture;
 import codex.renthyl.export.FrameGraphData;
 import codex.renthyl.export.ModuleGraphData;
 import codex.renthyl.modules.ModuleLocator;
+import codex.renthyl.modules.ModuleRegistry;
 import codex.renthyl.modules.RenderContainer;
 import codex.renthyl.modules.RenderModule;
 import codex.renthyl.modules.RenderPass;
@@ -51,8 +52,6 @@ import com.jme3.renderer.pipeline.RenderPipeline;
 import com.jme3.renderer.ViewPort;
 import com.jme3.scene.Node;
 import java.util.HashMap;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
 import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -104,16 +103,26 @@ public class FrameGraph implements RenderPipeline<FGPipelineContext> {
     private final AssetManager assetManager;
     private final ResourceList resources;
     private final ExecutionQueueList executionQueues;
+    private final DependencyScheduler scheduler = new DependencyScheduler();
+    private final ModuleRegistry modules = new ModuleRegistry();
+    private ThreadOptimizer optimizer;
     private final FGRenderContext context;
     private final HashMap<String, Object> settings = new HashMap<>();
     private RenderThread root;
     private String name = "FrameGraph";
     private String docAsset = null;
     private boolean dynamic = false;
+    private boolean dependencyScheduling = false;
     private boolean layoutUpdateNeeded = true;
+    private boolean connectionUpdateNeeded = false;
     private boolean rendered = false;
     private boolean debugPrint = false;
     private int nextModuleId = 0;
+    private int layoutVersion = 0;
+    
+    // statistics
+    private int layoutUpdates = 0;
+    private int connectionUpdates = 0;
     private Node debugNode;
     
     /**
@@ -172,10 +181,9 @@ public class FrameGraph implements RenderPipeline<FGPipelineContext> {
         rm.applyViewPort(vp);
         context.target(rm, pContext, vp, tpf);
         
-        boolean updateNeeded = dynamic || layoutUpdateNeeded;
-        ExecutionThreadManager threadManager = pContext.getThreadManager();
+        QueueExecutor threadManager = pContext.getQueueExecutor();
         GraphEventCapture cap = context.getGraphCapture();
-        if (threadManager.didErrorOccur()) {
+        if (threadManager.didErrorOccur() || scheduler.didErrorOccur()) {
             return;
         }
         
@@ -186,27 +194,23 @@ public class FrameGraph implements RenderPipeline<FGPipelineContext> {
         if (!rendered) {
             resources.beginRenderFrame(pContext.getRenderObjects(), pContext.getEventCapture());
         }
-        if (updateNeeded) {
-            executionQueues.flush();
-            root.queueModule(context, executionQueues, ModuleIndex.MAIN_THREAD);
-        }
-        root.prepareModuleRender(context);
-        resources.applyFutureReferences();
-        
-        // cull modules and resources
-        if (updateNeeded) {
-            root.countReferences();
-            resources.cullUnreferenced();
-            layoutUpdateNeeded = false;
-        }
+        prepareModules();
         
         // execute
         context.pushRenderSettings();
-        threadManager.start(context, executionQueues);
-        waitForActiveThreads(threadManager);
-        if (threadManager.didErrorOccur()) {
+        long executeStart = System.nanoTime();
+        if (dependencyScheduling) {
+            executeScheduled();
+        } else {
+            threadManager.start(context, executionQueues);
+            waitForActiveThreads(threadManager);
+        }
+        if (threadManager.didErrorOccur() || scheduler.didErrorOccur()) {
             throw new RendererException("FrameGraph render incomplete.");
         }
+        if (optimizer != null && !dependencyScheduling) {
+            optimizer.frameComplete(root, System.nanoTime()-executeStart, cap);
+        }
         
         // reset
         context.popFrameBuffer();
@@ -233,19 +237,66 @@ public class FrameGraph implements RenderPipeline<FGPipelineContext> {
         return "FrameGraph ("+name+")";
     }
     
-    private void waitForActiveThreads(ExecutionThreadManager threadManager) {
-        if (threadManager.getNumActiveThreads() == 0) {
-            return;
+    /**
+     * Queues modules if the layout changed, then prepares and culls them.
+     * <p>
+     * Called internally. Do not use.
+     */
+    void prepareModules() {
+        boolean updateNeeded = dynamic || layoutUpdateNeeded;
+        if (updateNeeded) {
+            layoutVersion++;
+            executionQueues.flush();
+            root.queueModule(context, executionQueues, ModuleIndex.MAIN_THREAD);
+        }
+        root.prepareModuleRender(context);
+        resources.applyFutureReferences();
+        
+        // cull modules and resources
+        // connection changes made during preparation are included, since
+        // culling depends only on connections and not on queue indices
+        if (updateNeeded || connectionUpdateNeeded) {
+            root.countReferences();
+            resources.cullUnreferenced();
+            if (!dynamic) {
+                resources.planAliasing();
+            } else {
+                resources.getAliasingPlan().clear();
+            }
+            if (dependencyScheduling) {
+                scheduler.build(root);
+            }
+            if (updateNeeded) {
+                layoutUpdates++;
+            } else {
+                connectionUpdates++;
+            }
+            layoutUpdateNeeded = false;
+            connectionUpdateNeeded = false;
         }
+        if (dependencyScheduling) {
+            // queue indices no longer describe execution order
+            resources.markAllAsync();
+        }
+    }
+    private void executeScheduled() {
+        try {
+            if (!scheduler.execute(context, THREAD_WAIT_TIMEOUT)) {
+                throw new RendererException("FrameGraph timed out after " + THREAD_WAIT_TIMEOUT
+                        + " milliseconds waiting for scheduled modules to complete.");
+            }
+        } catch (InterruptedException ex) {
+            LOG.log(Level.SEVERE, "Rendering was interrupted while waiting for modules to complete.", ex);
+        }
+    }
+    private void waitForActiveThreads(QueueExecutor threadManager) {
         try {
-            Lock lock = threadManager.getThreadLock();
-            if (!lock.tryLock(THREAD_WAIT_TIMEOUT, TimeUnit.MILLISECONDS)) {
+            if (!threadManager.await(THREAD_WAIT_TIMEOUT)) {
+                int active = threadManager.getNumActiveThreads();
                 threadManager.error(true);
                 throw new RendererException("FrameGraph timed out after " + THREAD_WAIT_TIMEOUT
-                        + " milliseconds waiting for " + threadManager.getNumActiveThreads()
+                        + " milliseconds waiting for " + active
                         + " active threads to complete.");
-            } else {
-                lock.unlock();
             }
         } catch (InterruptedException ex) {
             LOG.log(Level.SEVERE, "Rendering was interrupted while waiting for threads to complete.", ex);
@@ -367,13 +418,37 @@ public class FrameGraph implements RenderPipeline<FGPipelineContext> {
     
     /**
      * Gets the first pass that qualifies.
+     * <p>
+     * Locators created by {@link ModuleLocator#by(java.lang.Class)} and
+     * {@link ModuleLocator#by(java.lang.Class, java.lang.String)} are resolved
+     * through the {@link ModuleRegistry} instead of searching the module tree.
      * 
      * @param <T>
      * @param by
      * @return first qualifying pass, or null
      */
     public <T extends RenderModule> T get(ModuleLocator<T> by) {
-        return (T)root.get(by);
+        return modules.get(root, by);
+    }
+    
+    /**
+     * Gets the module with the id.
+     * 
+     * @param id
+     * @return module, or null
+     * @see RenderModule#getId()
+     */
+    public RenderModule get(int id) {
+        return modules.get(id);
+    }
+    
+    /**
+     * Gets the registry indexing all modules assigned to this FrameGraph.
+     * 
+     * @return 
+     */
+    public ModuleRegistry getModuleRegistry() {
+        return modules;
     }
     
     /**
@@ -515,6 +590,16 @@ public class FrameGraph implements RenderPipeline<FGPipelineContext> {
         layoutUpdateNeeded = true;
     }
     
+    /**
+     * Indicates that connections between tickets have changed, but the
+     * structure of the module tree has not.
+     * <p>
+     * Only culling is performed again, so queue indices remain stable.
+     */
+    public void setConnectionUpdateNeeded() {
+        connectionUpdateNeeded = true;
+    }
+    
     /**
      * Sets the name of this FrameGraph.
      * 
@@ -536,6 +621,44 @@ public class FrameGraph implements RenderPipeline<FGPipelineContext> {
         this.dynamic = dynamic;
     }
     
+    /**
+     * Sets the optimizer used to automatically assign modules to threads.
+     * <p>
+     * The optimizer is not used while dependency scheduling is enabled.
+     * Setting a different optimizer clears the assignments made by the previous one.
+     * 
+     * @param optimizer optimizer, or null to use manual thread assignments only
+     */
+    public void setThreadOptimizer(ThreadOptimizer optimizer) {
+        if (this.optimizer != null && this.optimizer != optimizer) {
+            this.optimizer.reset(root);
+        }
+        this.optimizer = optimizer;
+    }
+    
+    /**
+     * Sets modules to be executed in an order determined by their ticket
+     * connections, rather than in queue order on manually assigned threads.
+     * <p>
+     * Thread safe modules are spread across the scheduler's pool, while all
+     * other modules are executed on the main render thread.
+     * <p>
+     * default=false
+     * 
+     * @param dependencyScheduling 
+     * @see DependencyScheduler
+     * @see RenderModule#isThreadSafe()
+     */
+    public void setDependencyScheduling(boolean dependencyScheduling) {
+        if (this.dependencyScheduling != dependencyScheduling) {
+            this.dependencyScheduling = dependencyScheduling;
+            if (!dependencyScheduling) {
+                scheduler.clear();
+            }
+            layoutUpdateNeeded = true;
+        }
+    }
+    
     /**
      * Sets the asset path corresponding to a documentation file for
      * this FrameGraph.
@@ -671,6 +794,31 @@ public class FrameGraph implements RenderPipeline<FGPipelineContext> {
         return dynamic;
     }
     
+    /**
+     * 
+     * @return 
+     */
+    public boolean isDependencyScheduling() {
+        return dependencyScheduling;
+    }
+    
+    /**
+     * 
+     * @return thread optimizer, or null
+     */
+    public ThreadOptimizer getThreadOptimizer() {
+        return optimizer;
+    }
+    
+    /**
+     * Gets the scheduler used when dependency scheduling is enabled.
+     * 
+     * @return 
+     */
+    public DependencyScheduler getScheduler() {
+        return scheduler;
+    }
+    
     /**
      * 
      * @return 
@@ -679,13 +827,51 @@ public class FrameGraph implements RenderPipeline<FGPipelineContext> {
         return layoutUpdateNeeded;
     }
     
+    /**
+     * Gets the version of the layout, which changes each time
+     * the layout is updated.
+     * 
+     * @return 
+     */
+    public int getLayoutVersion() {
+        return layoutVersion;
+    }
+    
+    /**
+     * Returns true if connections have changed since the last cull.
+     * 
+     * @return 
+     */
+    public boolean isConnectionUpdateNeeded() {
+        return connectionUpdateNeeded;
+    }
+    
+    /**
+     * Gets the number of full layout updates performed so far.
+     * 
+     * @return 
+     */
+    public int getNumLayoutUpdates() {
+        return layoutUpdates;
+    }
+    
+    /**
+     * Gets the number of connection-only updates performed so far, each of
+     * which avoided a full layout update.
+     * 
+     * @return 
+     */
+    public int getNumConnectionUpdates() {
+        return connectionUpdates;
+    }
+    
     /**
      * Returns true if this framegraph is running asynchronous {@link PassThread}s.
      * 
      * @return 
      */
     public boolean isAsync() {
-        return executionQueues.getNumActiveQueues() > 1;
+        return dependencyScheduling || executionQueues.getNumActiveQueues() > 1;
     }
     
     /**
@@ -35,6 +35,7 @@ import com.jme3.export.JmeExporter;
 import com.jme3.export.JmeImporter;
 import com.jme3.export.OutputCapsule;
 import com.jme3.export.Savable;
+import com.jme3.math.Vector3f;
 import com.jme3.renderer.Camera;
 import com.jme3.renderer.GeometryRenderHandler;
 import com.jme3.renderer.RenderManager;
@@ -44,8 +45,10 @@ import com.jme3.renderer.queue.NullComparator;
 import com.jme3.scene.Geometry;
 import com.jme3.util.ListSort;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.function.Function;
 
 /**
@@ -60,16 +63,43 @@ import java.util.function.Function;
 public class GeometryQueue implements Iterable<Geometry>, Savable {
     
     private static final int DEFAULT_SIZE = 32;
+    private static final int RADIX_BITS = 8;
+    private static final int RADIX = 1 << RADIX_BITS;
+    private static final int KEY_DIGITS = Long.SIZE / RADIX_BITS;
+    /**
+     * Average number of shifts per geometry a coherent sort may make before
+     * falling back to a full sort.
+     */
+    private static final int COHERENT_SHIFTS = 8;
+    /**
+     * Minimum dot product between the current and last camera directions
+     * for the camera to not be considered jumped.
+     */
+    private static final float COHERENT_MIN_DOT = 0.9f;
     
     private Geometry[] geometries;
     private GeometryComparator comparator;
+    private GeometrySortKey sortKey;
     private Camera cam;
     private final ListSort listSort;
-    private final LinkedList<GeometryQueue> internalQueues = new LinkedList<>();
+    private final ArrayList<GeometryQueue> internalQueues = new ArrayList<>();
     private final DepthRange depth = new DepthRange();
     private boolean updateFlag = true;
     private boolean perspective = true;
+    private boolean radixSort = false;
     private int size = 0;
+    private long[] keys, keyBuffer;
+    private Geometry[] geometryBuffer;
+    private int[] histogram;
+    private boolean coherent = false;
+    private float jumpDistance = 5f;
+    private final RankTable ranks = new RankTable();
+    private int rankedSize = 0;
+    private int[] rankOf;
+    private Geometry[] byRank;
+    private final Vector3f lastCamLocation = new Vector3f();
+    private final Vector3f lastCamDirection = new Vector3f();
+    private final Vector3f tempDirection = new Vector3f();
     
     /**
      * Geometry queue with default settings and a {@link NullComparator}.
@@ -92,6 +122,7 @@ public class GeometryQueue implements Iterable<Geometry>, Savable {
      */
     public GeometryQueue(GeometryComparator comparator, int initialSize) {
         this.comparator = comparator;
+        this.sortKey = GeometrySortKey.of(comparator);
         geometries = new Geometry[initialSize];
         listSort = new ListSort<Geometry>();
     }
@@ -101,15 +132,179 @@ public class GeometryQueue implements Iterable<Geometry>, Savable {
      */
     public void sort() {
         if (updateFlag && size > 1) {
-            // sort the spatial list using the comparator
-            if (listSort.getLength() != size) {
-                listSort.allocateStack(size);
+            if (!coherent || !coherentSort()) {
+                if (radixSort && sortKey != null) {
+                    radixSort();
+                } else {
+                    sortWithComparator();
+                }
+            }
+            if (coherent) {
+                recordOrder();
             }
-            listSort.sort(geometries, comparator);
             updateFlag = false;
         }
-        for (GeometryQueue q : internalQueues) {
-            q.sort();
+        for (int i = 0; i < internalQueues.size(); i++) {
+            internalQueues.get(i).sort();
+        }
+    }
+    private void sortWithComparator() {
+        // sort the spatial list using the comparator
+        if (listSort.getLength() != size) {
+            listSort.allocateStack(size);
+        }
+        listSort.sort(geometries, comparator);
+    }
+    private void radixSort() {
+        ensureSortBuffers();
+        // compute keys and the histograms of all digits in one pass
+        Arrays.fill(histogram, 0);
+        sortKey.setCamera(cam);
+        for (int i = 0; i < size; i++) {
+            long k = keys[i] = sortKey.getSortKey(geometries[i]);
+            for (int d = 0; d < KEY_DIGITS; d++) {
+                histogram[d * RADIX + (int)((k >>> (d * RADIX_BITS)) & (RADIX - 1))]++;
+            }
+        }
+        // stable least significant digit first passes
+        long[] srcKeys = keys, dstKeys = keyBuffer;
+        Geometry[] src = geometries, dst = geometryBuffer;
+        for (int d = 0; d < KEY_DIGITS; d++) {
+            int offset = d * RADIX;
+            int shift = d * RADIX_BITS;
+            // skip digits shared by all keys
+            if (histogram[offset + (int)((srcKeys[0] >>> shift) & (RADIX - 1))] == size) {
+                continue;
+            }
+            for (int i = offset, sum = 0; i < offset + RADIX; i++) {
+                int count = histogram[i];
+                histogram[i] = sum;
+                sum += count;
+            }
+            for (int i = 0; i < size; i++) {
+                long k = srcKeys[i];
+                int j = histogram[offset + (int)((k >>> shift) & (RADIX - 1))]++;
+                dstKeys[j] = k;
+                dst[j] = src[i];
+            }
+            long[] tk = srcKeys;
+            srcKeys = dstKeys;
+            dstKeys = tk;
+            Geometry[] tg = src;
+            src = dst;
+            dst = tg;
+        }
+        if (src != geometries) {
+            System.arraycopy(src, 0, geometries, 0, size);
+        }
+        Arrays.fill(geometryBuffer, 0, size, null);
+    }
+    private boolean coherentSort() {
+        if (rankedSize == 0 || cam == null || isCameraJumped()) {
+            return false;
+        }
+        if (rankOf == null || rankOf.length < size) {
+            rankOf = new int[geometries.length];
+        }
+        int added = 0;
+        for (int i = 0; i < size; i++) {
+            if ((rankOf[i] = ranks.get(geometries[i])) < 0) {
+                added++;
+            }
+        }
+        if (added > size / 4) {
+            return false;
+        }
+        // apply last frame's order, appending new (and duplicate) geometries
+        ensureSortBuffers();
+        if (byRank == null || byRank.length < rankedSize) {
+            byRank = new Geometry[Math.max(rankedSize, geometries.length)];
+        }
+        int tail = 0;
+        for (int i = 0; i < size; i++) {
+            int r = rankOf[i];
+            if (r >= 0 && byRank[r] == null) {
+                byRank[r] = geometries[i];
+            } else {
+                geometryBuffer[tail++] = geometries[i];
+            }
+        }
+        int n = 0;
+        for (int r = 0; r < rankedSize; r++) {
+            if (byRank[r] != null) {
+                geometries[n++] = byRank[r];
+                byRank[r] = null;
+            }
+        }
+        System.arraycopy(geometryBuffer, 0, geometries, n, tail);
+        Arrays.fill(geometryBuffer, 0, tail, null);
+        // finish with an insertion sort, which is near linear on near-sorted input
+        return insertionSort((long)size * COHERENT_SHIFTS);
+    }
+    private boolean insertionSort(long maxShifts) {
+        long shifts = 0;
+        if (radixSort && sortKey != null) {
+            sortKey.setCamera(cam);
+            for (int i = 0; i < size; i++) {
+                keys[i] = sortKey.getSortKey(geometries[i]);
+            }
+            for (int i = 1; i < size; i++) {
+                long k = keys[i];
+                Geometry g = geometries[i];
+                int j = i - 1;
+                for (; j >= 0 && Long.compareUnsigned(keys[j], k) > 0; j--) {
+                    keys[j + 1] = keys[j];
+                    geometries[j + 1] = geometries[j];
+                }
+                keys[j + 1] = k;
+                geometries[j + 1] = g;
+                if ((shifts += i - 1 - j) > maxShifts) {
+                    return false;
+                }
+            }
+        } else {
+            for (int i = 1; i < size; i++) {
+                Geometry g = geometries[i];
+                int j = i - 1;
+                for (; j >= 0 && comparator.compare(geometries[j], g) > 0; j--) {
+                    geometries[j + 1] = geometries[j];
+                }
+                geometries[j + 1] = g;
+                if ((shifts += i - 1 - j) > maxShifts) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+    private boolean isCameraJumped() {
+        return cam.getLocation().distanceSquared(lastCamLocation) > jumpDistance * jumpDistance
+            || cam.getDirection(tempDirection).dot(lastCamDirection) < COHERENT_MIN_DOT;
+    }
+    private void recordOrder() {
+        ranks.clear();
+        for (int i = 0; i < size; i++) {
+            ranks.put(geometries[i], i);
+        }
+        rankedSize = size;
+        if (cam != null) {
+            lastCamLocation.set(cam.getLocation());
+            cam.getDirection(lastCamDirection);
+        }
+    }
+    private void clearOrder() {
+        ranks.clear();
+        rankedSize = 0;
+        if (byRank != null) {
+            Arrays.fill(byRank, null);
+        }
+    }
+    private void ensureSortBuffers() {
+        if (keys == null || keys.length < size) {
+            keys = new long[geometries.length];
+            keyBuffer = new long[geometries.length];
+            geometryBuffer = new Geometry[geometries.length];
+            histogram = new int[KEY_DIGITS * RADIX];
         }
     }
     /**
@@ -135,8 +330,8 @@ public class GeometryQueue implements Iterable<Geometry>, Savable {
             renderManager.setCamera(cam, false);
         }
         DepthRange.NORMAL.apply(renderManager.getRenderer());
-        for (GeometryQueue q : internalQueues) {
-            q.render(renderManager, handler);
+        for (int i = 0; i < internalQueues.size(); i++) {
+            internalQueues.get(i).render(renderManager, handler);
         }
     }
     
@@ -215,6 +410,9 @@ public class GeometryQueue implements Iterable<Geometry>, Savable {
         target.depth.set(depth);
         target.updateFlag = updateFlag;
         target.perspective = perspective;
+        target.radixSort = radixSort;
+        target.coherent = coherent;
+        target.jumpDistance = jumpDistance;
         if (includeInternalQueues) for (GeometryQueue q : internalQueues) {
             target.add(q.makeParamCopy(true));
         }
@@ -302,6 +500,7 @@ public class GeometryQueue implements Iterable<Geometry>, Savable {
     public void setComparator(GeometryComparator comparator) {
         if (this.comparator != comparator) {
             this.comparator = comparator;
+            this.sortKey = GeometrySortKey.of(comparator);
             updateFlag = true;
         }
     }
@@ -317,10 +516,70 @@ public class GeometryQueue implements Iterable<Geometry>, Savable {
             comparator.setCamera(this.cam);
             updateFlag = true;
         }
-        for (GeometryQueue q : internalQueues) {
-            q.setCamera(cam);
+        for (int i = 0; i < internalQueues.size(); i++) {
+            internalQueues.get(i).setCamera(cam);
+        }
+    }
+    /**
+     * Sets this queue and all internal queues to sort using an LSD radix
+     * sort over 64-bit keys instead of the comparator.
+     * <p>
+     * Keys are computed once per geometry by the {@link GeometrySortKey} matching
+     * the comparator, so no comparator calls are made during sorting. Queues whose
+     * comparator has no matching sort key continue to sort with the comparator.
+     * <p>
+     * default=false
+     * 
+     * @param radixSort 
+     * @see GeometrySortKey#of(com.jme3.renderer.queue.GeometryComparator)
+     */
+    public void setRadixSort(boolean radixSort) {
+        if (this.radixSort != radixSort) {
+            this.radixSort = radixSort;
+            updateFlag = true;
+        }
+        for (int i = 0; i < internalQueues.size(); i++) {
+            internalQueues.get(i).setRadixSort(radixSort);
         }
     }
+    /**
+     * Sets this queue and all internal queues to sort starting from the
+     * previous frame's order.
+     * <p>
+     * The sorted order is recorded after each sort. On the next sort, geometries
+     * are first arranged in the recorded order (new geometries last), then an
+     * insertion sort corrects the differences, which approaches linear time
+     * when the camera and scene are stable. A full sort is performed instead if
+     * the camera jumped, too many geometries are new, or the insertion sort
+     * makes too many moves.
+     * <p>
+     * default=false
+     * 
+     * @param coherent 
+     * @see #setCameraJumpDistance(float)
+     */
+    public void setTemporalCoherence(boolean coherent) {
+        if (this.coherent != coherent) {
+            this.coherent = coherent;
+            clearOrder();
+        }
+        for (int i = 0; i < internalQueues.size(); i++) {
+            internalQueues.get(i).setTemporalCoherence(coherent);
+        }
+    }
+    /**
+     * Sets the distance the camera must move between sorts to be considered
+     * jumped, in which case a full sort is performed.
+     * <p>
+     * The camera is also considered jumped if it turns roughly 25 degrees.
+     * <p>
+     * default=5
+     * 
+     * @param jumpDistance 
+     */
+    public void setCameraJumpDistance(float jumpDistance) {
+        this.jumpDistance = jumpDistance;
+    }
     /**
      * Sets the depth range geometries in this queue (not internal queues)
      * are rendered at.
@@ -349,6 +608,14 @@ public class GeometryQueue implements Iterable<Geometry>, Savable {
     public GeometryComparator getComparator() {
         return comparator;
     }
+    /**
+     * Gets the sort key used in radix sort mode.
+     * 
+     * @return sort key, or null if the comparator is not supported
+     */
+    public GeometrySortKey getSortKey() {
+        return sortKey;
+    }
     /**
      * Gets the list of internal queues.
      * <p>
@@ -356,7 +623,7 @@ public class GeometryQueue implements Iterable<Geometry>, Savable {
      * 
      * @return 
      */
-    public LinkedList<GeometryQueue> getInternalQueues() {
+    public List<GeometryQueue> getInternalQueues() {
         return internalQueues;
     }
     /**
@@ -374,8 +641,8 @@ public class GeometryQueue implements Iterable<Geometry>, Savable {
      */
     public int getNumGeometries() {
         int s = size;
-        for (GeometryQueue q : internalQueues) {
-            s += q.getNumGeometries();
+        for (int i = 0; i < internalQueues.size(); i++) {
+            s += internalQueues.get(i).getNumGeometries();
         }
         return s;
     }
@@ -402,6 +669,29 @@ public class GeometryQueue implements Iterable<Geometry>, Savable {
     public boolean isPerspective() {
         return perspective;
     }
+    /**
+     * Returns true if this queue sorts using radix sort.
+     * 
+     * @return 
+     */
+    public boolean isRadixSort() {
+        return radixSort;
+    }
+    /**
+     * Returns true if this queue sorts starting from the previous frame's order.
+     * 
+     * @return 
+     */
+    public boolean isTemporalCoherence() {
+        return coherent;
+    }
+    /**
+     * 
+     * @return 
+     */
+    public float getCameraJumpDistance() {
+        return jumpDistance;
+    }
     /**
      * Returns true if this queue or any internal queue contains geometry.
      * 
@@ -409,8 +699,8 @@ public class GeometryQueue implements Iterable<Geometry>, Savable {
      */
     public boolean containsGeometry() {
         if (size > 0) return true;
-        for (GeometryQueue q : internalQueues) {
-            if (q.containsGeometry()) return true;
+        for (int i = 0; i < internalQueues.size(); i++) {
+            if (internalQueues.get(i).containsGeometry()) return true;
         }
         return false;
     }
@@ -436,6 +726,9 @@ public class GeometryQueue implements Iterable<Geometry>, Savable {
         out.write(new SavableObject(comparator), "comparator", SavableObject.NULL);
         out.write(depth, "depth", DepthRange.NORMAL);
         out.write(perspective, "perspective", true);
+        out.write(radixSort, "radixSort", false);
+        out.write(coherent, "temporalCoherence", false);
+        out.write(jumpDistance, "cameraJumpDistance", 5f);
     }
     @Override
     public void read(JmeImporter im) throws IOException {
@@ -443,6 +736,66 @@ public class GeometryQueue implements Iterable<Geometry>, Savable {
         comparator = SavableObject.read(in, "comparator", GeometryComparator.class);
         depth.set(SavableObject.readSavable(in, "depth", DepthRange.class, DepthRange.NORMAL));
         perspective = in.readBoolean("perspective", true);
+        radixSort = in.readBoolean("radixSort", false);
+        coherent = in.readBoolean("temporalCoherence", false);
+        jumpDistance = in.readFloat("cameraJumpDistance", 5f);
+        sortKey = GeometrySortKey.of(comparator);
+    }
+    
+    /**
+     * Allocation-free identity map from geometries to their sorted index.
+     */
+    private static class RankTable {
+        
+        private Geometry[] keys = new Geometry[64];
+        private int[] values = new int[64];
+        private int size = 0;
+        
+        public void put(Geometry g, int rank) {
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+            }
+            int i = find(keys, g);
+            if (keys[i] == null) {
+                keys[i] = g;
+                size++;
+            }
+            values[i] = rank;
+        }
+        public int get(Geometry g) {
+            int i = find(keys, g);
+            return keys[i] != null ? values[i] : -1;
+        }
+        public void clear() {
+            if (size > 0) {
+                Arrays.fill(keys, null);
+                size = 0;
+            }
+        }
+        
+        private void grow() {
+            Geometry[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new Geometry[oldKeys.length * 2];
+            values = new int[keys.length];
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] != null) {
+                    int i = find(keys, oldKeys[j]);
+                    keys[i] = oldKeys[j];
+                    values[i] = oldValues[j];
+                }
+            }
+        }
+        private static int find(Geometry[] keys, Geometry g) {
+            int mask = keys.length - 1;
+            int h = System.identityHashCode(g);
+            int i = (h ^ (h >>> 16)) & mask;
+            while (keys[i] != null && keys[i] != g) {
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+        
     }
     
     private class GeometryIterator implements Iterator<Geometry> {
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2024, codex
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package codex.renthyl;
+
+import com.jme3.bounding.BoundingVolume;
+import com.jme3.material.Material;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.queue.GeometryComparator;
+import com.jme3.renderer.queue.GuiComparator;
+import com.jme3.renderer.queue.NullComparator;
+import com.jme3.renderer.queue.OpaqueComparator;
+import com.jme3.renderer.queue.TransparentComparator;
+import com.jme3.scene.Geometry;
+
+/**
+ * Produces a 64-bit key per geometry, so that ordering keys as unsigned
+ * longs orders geometries the same way as a {@link GeometryComparator}.
+ * <p>
+ * Used by {@link GeometryQueue} in radix sort mode. A comparator may implement
+ * this interface to supply its own keys; otherwise the keys of the builtin
+ * comparators are provided by {@link #of(GeometryComparator)}.
+ * 
+ * @author codex
+ */
+public interface GeometrySortKey {
+    
+    /**
+     * Sets the camera geometries are sorted for.
+     * <p>
+     * Called once before each key pass.
+     * 
+     * @param cam 
+     */
+    public void setCamera(Camera cam);
+    
+    /**
+     * Gets the sort key of the geometry.
+     * <p>
+     * Keys are ordered as unsigned longs, and geometries with equal keys
+     * keep their relative order.
+     * 
+     * @param g
+     * @return 
+     */
+    public long getSortKey(Geometry g);
+    
+    /**
+     * Gets a new sort key equivalent to the comparator.
+     * 
+     * @param comparator
+     * @return equivalent sort key, or null if the comparator is not supported
+     */
+    public static GeometrySortKey of(GeometryComparator comparator) {
+        if (comparator instanceof GeometrySortKey) {
+            return (GeometrySortKey)comparator;
+        }
+        if (comparator == null) {
+            return null;
+        }
+        Class type = comparator.getClass();
+        if (type == OpaqueComparator.class) {
+            return new Opaque();
+        } else if (type == TransparentComparator.class) {
+            return new Transparent();
+        } else if (type == GuiComparator.class) {
+            return new Gui();
+        } else if (type == NullComparator.class) {
+            return new Unsorted();
+        }
+        return null;
+    }
+    
+    /**
+     * Converts the float to an int whose unsigned order matches the
+     * order of the float.
+     * 
+     * @param f
+     * @return 
+     */
+    public static int toSortableBits(float f) {
+        int bits = Float.floatToIntBits(f);
+        return bits ^ ((bits >> 31) | 0x80000000);
+    }
+    
+    /**
+     * Sorts by material sort id, then front to back.
+     * 
+     * @see OpaqueComparator
+     */
+    public static class Opaque extends Distance {
+        
+        @Override
+        public long getSortKey(Geometry g) {
+            Material mat = g.getMaterial();
+            long id = mat.getSortId() ^ 0x80000000;
+            return (id << 32) | (toSortableBits(distanceToCam(g)) & 0xffffffffL);
+        }
+        
+    }
+    
+    /**
+     * Sorts back to front by the distance from the camera to the nearest
+     * edge of the world bound.
+     * <p>
+     * Unlike opaque keys, the geometry's queue distance is left untouched,
+     * since the comparator does not use it.
+     * 
+     * @see TransparentComparator
+     */
+    public static class Transparent implements GeometrySortKey {
+        
+        private final Vector3f camLocation = new Vector3f();
+        
+        @Override
+        public void setCamera(Camera cam) {
+            camLocation.set(cam.getLocation());
+        }
+        @Override
+        public long getSortKey(Geometry g) {
+            BoundingVolume bound = g.getWorldBound();
+            float d = (bound != null ? bound.distanceToEdge(camLocation)
+                    : g.getWorldTranslation().distance(camLocation));
+            // adding zero turns -0 into 0, which the comparator treats as equal
+            return (long)~toSortableBits(d + 0f) << 32;
+        }
+        
+    }
+    
+    /**
+     * Sorts by world z.
+     * 
+     * @see GuiComparator
+     */
+    public static class Gui implements GeometrySortKey {
+        
+        @Override
+        public void setCamera(Camera cam) {}
+        @Override
+        public long getSortKey(Geometry g) {
+            return (long)toSortableBits(g.getWorldTranslation().z) << 32;
+        }
+        
+    }
+    
+    /**
+     * Keeps geometries in queue order.
+     * 
+     * @see NullComparator
+     */
+    public static class Unsorted implements GeometrySortKey {
+        
+        @Override
+        public void setCamera(Camera cam) {}
+        @Override
+        public long getSortKey(Geometry g) {
+            return 0;
+        }
+        
+    }
+    
+    /**
+     * Base for keys that measure distance along the camera's view direction.
+     */
+    public static abstract class Distance implements GeometrySortKey {
+        
+        private final Vector3f camLocation = new Vector3f();
+        private final Vector3f camDirection = new Vector3f();
+        
+        @Override
+        public void setCamera(Camera cam) {
+            camLocation.set(cam.getLocation());
+            cam.getDirection(camDirection);
+        }
+        
+        /**
+         * Computes the distance from the camera to the geometry along the
+         * view direction, and stores it as the geometry's queue distance.
+         * 
+         * @param g
+         * @return 
+         */
+        protected float distanceToCam(Geometry g) {
+            if (g.queueDistance != Float.NEGATIVE_INFINITY) {
+                return g.queueDistance;
+            }
+            Vector3f p = g.getWorldBound() != null ? g.getWorldBound().getCenter() : g.getWorldTranslation();
+            g.queueDistance = (p.x - camLocation.x) * camDirection.x
+                    + (p.y - camLocation.y) * camDirection.y
+                    + (p.z - camLocation.z) * camDirection.z;
+            return g.queueDistance;
+        }
+        
+    }
+    
+}
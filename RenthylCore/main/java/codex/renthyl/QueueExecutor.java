@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2024, codex
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package codex.renthyl;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Executes the queues of an {@link ExecutionQueueList} for a frame.
+ * <p>
+ * The queue at the main thread index is always executed on the calling thread.
+ * All other queues are executed concurrently by the implementation. The default
+ * implementation is {@link ExecutionThreadManager}, which uses its own persistent
+ * threads. Use {@link #wrap(Executor)} to share threads with an existing job
+ * system, a {@link java.util.concurrent.ForkJoinPool}, or virtual threads.
+ * 
+ * @author codex
+ * @see FGPipelineContext#setQueueExecutor(QueueExecutor)
+ */
+public interface QueueExecutor {
+    
+    /**
+     * Starts executing the queues.
+     * <p>
+     * Returns after the main thread queue is executed.
+     * 
+     * @param context
+     * @param queues 
+     */
+    public void start(FGRenderContext context, ExecutionQueueList queues);
+    
+    /**
+     * Waits until all queues started by the last call to
+     * {@link #start(FGRenderContext, ExecutionQueueList)} complete.
+     * 
+     * @param timeout maximum time to wait in milliseconds
+     * @return true if all queues completed, false if the wait timed out
+     * @throws InterruptedException 
+     */
+    public boolean await(long timeout) throws InterruptedException;
+    
+    /**
+     * Called at the end of each render frame.
+     */
+    public void stop();
+    
+    /**
+     * Releases all threads held by this executor.
+     */
+    public void shutdown();
+    
+    /**
+     * Indicates that an error has occured and execution
+     * should be interrupted.
+     * 
+     * @param force if true, active threads (except the main thread) are interrupted if possible
+     */
+    public void error(boolean force);
+    
+    /**
+     * Gets the number of queues currently executing.
+     * 
+     * @return 
+     */
+    public int getNumActiveThreads();
+    
+    /**
+     * Returns true if an error occured during execution.
+     * 
+     * @return 
+     */
+    public boolean didErrorOccur();
+    
+    /**
+     * Creates a queue executor that runs each asynchronous queue as one task
+     * on the given executor.
+     * <p>
+     * On JDK 21 and later, {@code Executors.newVirtualThreadPerTaskExecutor()}
+     * can be passed to execute queues on virtual threads.
+     * 
+     * @param executor
+     * @return 
+     */
+    public static QueueExecutor wrap(Executor executor) {
+        return new ExecutionThreadManager(executor);
+    }
+    
+}
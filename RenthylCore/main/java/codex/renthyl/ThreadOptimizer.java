@@ -0,0 +1,417 @@
+/*
+ * Copyright (c) 2024, codex
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package codex.renthyl;
+
+import codex.renthyl.debug.GraphEventCapture;
+import codex.renthyl.modules.RenderContainer;
+import codex.renthyl.modules.RenderModule;
+import codex.renthyl.resources.ResourceTicket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Assigns modules to threads from their measured execution times.
+ * <p>
+ * Execution times of each module are averaged over a window of frames. At the end
+ * of a window, a dependency graph is built by following input tickets to the modules
+ * producing them, and modules are assigned, in queue order, to the thread on which
+ * they are predicted to finish earliest. Modules that are not
+ * {@link RenderModule#isThreadSafe() thread safe} always stay on the main thread.
+ * The new assignment is applied through {@link RenderModule#setThreadAssignment(int)}
+ * only if it is predicted to shorten the frame by a significant amount.
+ * <p>
+ * Assignments are only re-evaluated when the measured frame time drifts away from
+ * the predicted frame time, or when the set of executed modules changes.
+ * 
+ * @author codex
+ * @see FrameGraph#setThreadOptimizer(ThreadOptimizer)
+ */
+public class ThreadOptimizer {
+    
+    private static final Logger LOG = Logger.getLogger(ThreadOptimizer.class.getName());
+    
+    private final IdentityHashMap<RenderModule, Timing> timings = new IdentityHashMap<>();
+    private final Consumer<RenderModule> recorder = this::record;
+    private int maxThreads;
+    private int windowFrames = 60;
+    private float driftTolerance = 0.15f;
+    private float minImprovement = 0.05f;
+    private int frame = 0;
+    private long frameNanos = 0;
+    private boolean modulesChanged = true;
+    
+    // statistics
+    private long predictedNanos = -1;
+    private long actualNanos = -1;
+    private long criticalPathNanos = -1;
+    private int evaluations = 0;
+    private int applications = 0;
+    
+    /**
+     * 
+     * @param maxThreads maximum number of threads modules are assigned to
+     */
+    public ThreadOptimizer(int maxThreads) {
+        setMaxThreads(maxThreads);
+    }
+    
+    /**
+     * Records the execution times of the frame.
+     * <p>
+     * Called internally by the FrameGraph after execution completes.
+     * 
+     * @param root root module
+     * @param frameNanos time in nanoseconds taken to execute all modules
+     * @param cap event capture (may be null)
+     */
+    public void frameComplete(RenderModule root, long frameNanos, GraphEventCapture cap) {
+        this.frameNanos += frameNanos;
+        root.traverse(recorder);
+        if (++frame >= windowFrames) {
+            endWindow(root);
+        }
+        if (cap != null && predictedNanos >= 0) {
+            cap.value("optimizerPredictedNanos", predictedNanos);
+            cap.value("optimizerActualNanos", actualNanos);
+            cap.value("optimizerCriticalPathNanos", criticalPathNanos);
+        }
+    }
+    private void record(RenderModule m) {
+        if (m instanceof RenderContainer || !m.isUsed()) {
+            return;
+        }
+        Timing t = timings.get(m);
+        if (t == null) {
+            // thread safety is captured before this optimizer moves the module
+            t = new Timing(m.isThreadSafe());
+            timings.put(m, t);
+            modulesChanged = true;
+        }
+        t.totalNanos += m.getExecutionNanos();
+        t.frames++;
+    }
+    private void endWindow(RenderModule root) {
+        actualNanos = frameNanos / frame;
+        for (Iterator<Timing> it = timings.values().iterator(); it.hasNext();) {
+            Timing t = it.next();
+            if (t.frames == 0) {
+                it.remove();
+                modulesChanged = true;
+            } else {
+                t.averageNanos = t.totalNanos / t.frames;
+            }
+        }
+        boolean drifted = predictedNanos < 0
+                || Math.abs(actualNanos-predictedNanos) > predictedNanos*driftTolerance;
+        if (modulesChanged || drifted) {
+            evaluate(root);
+        }
+        for (Timing t : timings.values()) {
+            t.totalNanos = 0;
+            t.frames = 0;
+        }
+        frame = 0;
+        frameNanos = 0;
+        modulesChanged = false;
+    }
+    
+    private void evaluate(RenderModule root) {
+        evaluations++;
+        // collect modules in queue order, which is assumed to be a valid execution order
+        ArrayList<RenderModule> modules = new ArrayList<>();
+        root.traverse(m -> {
+            if (timings.containsKey(m) && m.isUsed()) {
+                modules.add(m);
+            }
+        });
+        int n = modules.size();
+        if (n == 0) {
+            return;
+        }
+        IdentityHashMap<ResourceTicket, Integer> owners = new IdentityHashMap<>();
+        for (int i = 0; i < n; i++) {
+            for (ResourceTicket t : modules.get(i).getOutputTickets()) {
+                owners.put(t, i);
+            }
+        }
+        int[][] deps = new int[n][];
+        long[] costs = new long[n];
+        boolean[] safe = new boolean[n];
+        int[] current = new int[n];
+        int[] buffer = new int[n];
+        for (int i = 0; i < n; i++) {
+            RenderModule m = modules.get(i);
+            Timing timing = timings.get(m);
+            costs[i] = timing.averageNanos;
+            safe[i] = timing.threadSafe;
+            current[i] = Math.max(m.getIndex().getThreadIndex(), 0);
+            int d = 0;
+            for (ResourceTicket t : m.getInputTickets()) {
+                for (ResourceTicket s = t.getSource(); s != null; s = s.getSource()) {
+                    Integer p = owners.get(s);
+                    if (p != null) {
+                        // dependencies later in the queue cannot be waited on, so ignore them
+                        if (p < i) buffer[d++] = p;
+                        break;
+                    }
+                }
+            }
+            deps[i] = Arrays.copyOf(buffer, d);
+        }
+        // longest path through the dependency graph, regardless of thread
+        long[] finish = new long[n];
+        criticalPathNanos = 0;
+        for (int i = 0; i < n; i++) {
+            finish[i] = readyTime(deps[i], finish) + costs[i];
+            criticalPathNanos = Math.max(criticalPathNanos, finish[i]);
+        }
+        // earliest finish time assignment in queue order
+        int[] assigned = new int[n];
+        long[] threadFree = new long[maxThreads];
+        long makespan = 0;
+        for (int i = 0; i < n; i++) {
+            long ready = readyTime(deps[i], finish);
+            int best = 0;
+            long bestFinish = Math.max(threadFree[0], ready) + costs[i];
+            if (safe[i]) for (int t = 1; t < maxThreads; t++) {
+                long f = Math.max(threadFree[t], ready) + costs[i];
+                if (f < bestFinish) {
+                    best = t;
+                    bestFinish = f;
+                }
+            }
+            assigned[i] = best;
+            finish[i] = bestFinish;
+            threadFree[best] = bestFinish;
+            makespan = Math.max(makespan, bestFinish);
+        }
+        long currentMakespan = simulate(current, deps, costs, finish);
+        if (makespan < currentMakespan*(1f-minImprovement)) {
+            for (int i = 0; i < n; i++) {
+                modules.get(i).setThreadAssignment(assigned[i]);
+            }
+            predictedNanos = makespan;
+            applications++;
+        } else {
+            predictedNanos = currentMakespan;
+        }
+        if (LOG.isLoggable(Level.FINE)) {
+            LOG.fine(getReport());
+        }
+    }
+    private long simulate(int[] threads, int[][] deps, long[] costs, long[] finish) {
+        int numThreads = 1;
+        for (int t : threads) {
+            numThreads = Math.max(numThreads, t+1);
+        }
+        long[] threadFree = new long[numThreads];
+        long makespan = 0;
+        for (int i = 0; i < threads.length; i++) {
+            int t = threads[i];
+            finish[i] = Math.max(threadFree[t], readyTime(deps[i], finish)) + costs[i];
+            threadFree[t] = finish[i];
+            makespan = Math.max(makespan, finish[i]);
+        }
+        return makespan;
+    }
+    private static long readyTime(int[] deps, long[] finish) {
+        long ready = 0;
+        for (int d : deps) {
+            ready = Math.max(ready, finish[d]);
+        }
+        return ready;
+    }
+    
+    /**
+     * Clears all thread assignments made by this optimizer and resets measurements.
+     * 
+     * @param root 
+     */
+    public void reset(RenderModule root) {
+        root.traverse(m -> {
+            if (timings.containsKey(m)) {
+                m.setThreadAssignment(-1);
+            }
+        });
+        timings.clear();
+        frame = 0;
+        frameNanos = 0;
+        modulesChanged = true;
+        predictedNanos = -1;
+        actualNanos = -1;
+        criticalPathNanos = -1;
+    }
+    
+    /**
+     * Gets a readable report comparing the predicted and measured frame times.
+     * 
+     * @return 
+     */
+    public String getReport() {
+        return "ThreadOptimizer[predicted=" + toMillis(predictedNanos) + "ms, actual=" + toMillis(actualNanos)
+                + "ms, criticalPath=" + toMillis(criticalPathNanos) + "ms, modules=" + timings.size()
+                + ", evaluations=" + evaluations + ", applications=" + applications + "]";
+    }
+    private static String toMillis(long nanos) {
+        return nanos < 0 ? "?" : String.format("%.3f", nanos / 1000000.0);
+    }
+    
+    /**
+     * Sets the maximum number of threads modules are assigned to.
+     * 
+     * @param maxThreads 
+     */
+    public void setMaxThreads(int maxThreads) {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("Must allow at least one thread.");
+        }
+        this.maxThreads = maxThreads;
+    }
+    /**
+     * Sets the number of frames execution times are averaged over.
+     * <p>
+     * default=60
+     * 
+     * @param windowFrames 
+     */
+    public void setWindowFrames(int windowFrames) {
+        this.windowFrames = Math.max(windowFrames, 1);
+    }
+    /**
+     * Sets the relative difference between the predicted and measured frame
+     * times at which assignments are re-evaluated.
+     * <p>
+     * default=0.15
+     * 
+     * @param driftTolerance 
+     */
+    public void setDriftTolerance(float driftTolerance) {
+        this.driftTolerance = driftTolerance;
+    }
+    /**
+     * Sets the relative improvement of the predicted frame time required
+     * to apply a new assignment.
+     * <p>
+     * default=0.05
+     * 
+     * @param minImprovement 
+     */
+    public void setMinImprovement(float minImprovement) {
+        this.minImprovement = minImprovement;
+    }
+    
+    /**
+     * 
+     * @return 
+     */
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+    /**
+     * 
+     * @return 
+     */
+    public int getWindowFrames() {
+        return windowFrames;
+    }
+    /**
+     * 
+     * @return 
+     */
+    public float getDriftTolerance() {
+        return driftTolerance;
+    }
+    /**
+     * 
+     * @return 
+     */
+    public float getMinImprovement() {
+        return minImprovement;
+    }
+    /**
+     * Gets the frame time in nanoseconds predicted for the current assignment.
+     * 
+     * @return predicted time, or -1 if not yet evaluated
+     */
+    public long getPredictedNanos() {
+        return predictedNanos;
+    }
+    /**
+     * Gets the average frame time in nanoseconds measured over the last window.
+     * 
+     * @return measured time, or -1 if not yet measured
+     */
+    public long getActualNanos() {
+        return actualNanos;
+    }
+    /**
+     * Gets the length in nanoseconds of the critical path through the dependency
+     * graph, which is the lower bound of the frame time.
+     * 
+     * @return critical path length, or -1 if not yet evaluated
+     */
+    public long getCriticalPathNanos() {
+        return criticalPathNanos;
+    }
+    /**
+     * Gets the number of times assignments were evaluated.
+     * 
+     * @return 
+     */
+    public int getEvaluations() {
+        return evaluations;
+    }
+    /**
+     * Gets the number of times a new assignment was applied.
+     * 
+     * @return 
+     */
+    public int getApplications() {
+        return applications;
+    }
+    
+    private static class Timing {
+        
+        private final boolean threadSafe;
+        private long totalNanos = 0;
+        private long averageNanos = 0;
+        private int frames = 0;
+        
+        public Timing(boolean threadSafe) {
+            this.threadSafe = threadSafe;
+        }
+        
+    }
+    
+}
@@ -83,6 +83,38 @@ public interface ResourceDef <T> {
         return -1;
     }
     
+    /**
+     * Gets an immutable key describing the resources this definition can
+     * accept directly.
+     * <p>
+     * Render objects are indexed under the key of the definition that created
+     * them, so that direct reallocation only needs to inspect objects sharing
+     * the same key. Objects created under a different non-null key are only
+     * considered for indirect reallocation, so a definition must not directly
+     * accept resources created under a different key.
+     * <p>
+     * If null, resources are not indexed and reallocation falls back to
+     * inspecting every object.
+     * 
+     * @return compatibility key, or null
+     */
+    public default Object getCompatibilityKey() {
+        return null;
+    }
+    
+    /**
+     * Estimates the memory in bytes occupied by a resource created by
+     * this definition.
+     * <p>
+     * Used to track pool memory and enforce memory budgets. Zero indicates
+     * the size is unknown or negligible.
+     * 
+     * @return estimated size in bytes
+     */
+    public default long estimateSize() {
+        return 0;
+    }
+    
     /**
      * Gets the Consumer used to dispose of a resource.
      * 
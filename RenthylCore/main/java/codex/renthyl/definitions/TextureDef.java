@@ -67,6 +67,7 @@ public class TextureDef <T extends Texture> extends AbstractResourceDef<T> imple
     private Texture.WrapMode wrapS, wrapT, wrapR;
     private boolean formatFlexible = false;
     private boolean colorSpaceFlexible = false;
+    private CompatibilityKey key;
     
     /**
      * 
@@ -135,6 +136,23 @@ public class TextureDef <T extends Texture> extends AbstractResourceDef<T> imple
         return null;
     }
     @Override
+    public Object getCompatibilityKey() {
+        if (colorSpaceFlexible || samples <= 0) {
+            // any color space or sample count can be accepted, so they cannot be part of the key
+            return null;
+        }
+        if (key == null) {
+            key = new CompatibilityKey(type, width, height, depth, samples, format.isDepthFormat(), colorSpace);
+        }
+        return key;
+    }
+    @Override
+    public long estimateSize() {
+        // mipmaps are not accounted for
+        long pixels = (long)width * height * Math.max(depth, 1) * Math.max(samples, 1);
+        return pixels * format.getBitsPerPixel() / 8;
+    }
+    @Override
     public Consumer<T> getDisposalMethod() {
         return this;
     }
@@ -213,6 +231,7 @@ public class TextureDef <T extends Texture> extends AbstractResourceDef<T> imple
             throw new IllegalArgumentException("Width must be greater than zero.");
         }
         this.width = width;
+        key = null;
     }
     /**
      * Sets the texture height.
@@ -224,6 +243,7 @@ public class TextureDef <T extends Texture> extends AbstractResourceDef<T> imple
             throw new IllegalArgumentException("Height must be greater than zero.");
         }
         this.height = height;
+        key = null;
     }
     /**
      * Sets the texture depth.
@@ -237,6 +257,7 @@ public class TextureDef <T extends Texture> extends AbstractResourceDef<T> imple
             throw new IllegalArgumentException("Depth cannot be less than zero.");
         }
         this.depth = depth;
+        key = null;
     }
     /**
      * Sets the width and height of the texture to the length.
@@ -245,6 +266,7 @@ public class TextureDef <T extends Texture> extends AbstractResourceDef<T> imple
      */
     public void setSquare(int length) {
         width = height = length;
+        key = null;
     }
     /**
      * Sets the width, height, and depth of the texture to the length.
@@ -253,6 +275,7 @@ public class TextureDef <T extends Texture> extends AbstractResourceDef<T> imple
      */
     public void setCube(int length) {
         width = height = depth = length;
+        key = null;
     }
     /**
      * Sets the width and height of the texture.
@@ -301,6 +324,7 @@ public class TextureDef <T extends Texture> extends AbstractResourceDef<T> imple
         if (w) width = length;
         if (h) height = length;
         if (d) depth = length;
+        key = null;
     }
     /**
      * Sets the number of samples of the texture's image.
@@ -312,6 +336,7 @@ public class TextureDef <T extends Texture> extends AbstractResourceDef<T> imple
             throw new IllegalArgumentException("Image samples must be greater than zero.");
         }
         this.samples = samples;
+        key = null;
     }
     /**
      * Sets the format of the image.
@@ -321,6 +346,7 @@ public class TextureDef <T extends Texture> extends AbstractResourceDef<T> imple
     public void setFormat(Image.Format format) {
         Objects.requireNonNull(format);
         this.format = format;
+        key = null;
     }
     /**
      * Sets reallocation so that the target image only needs to have the same
@@ -340,6 +366,7 @@ public class TextureDef <T extends Texture> extends AbstractResourceDef<T> imple
      */
     public void setColorSpace(ColorSpace colorSpace) {
         this.colorSpace = colorSpace;
+        key = null;
     }
     /**
      * Sets the magnification filter of the texture.
@@ -536,4 +563,63 @@ public class TextureDef <T extends Texture> extends AbstractResourceDef<T> imple
         return new TextureDef<>(Texture3D.class, TEXTURE_3D);
     }
     
+    /**
+     * Immutable description of the textures a definition can accept directly.
+     * <p>
+     * Formats are only distinguished by class (color versus depth), so that
+     * format flexible definitions share keys with strict definitions.
+     */
+    private static final class CompatibilityKey {
+        
+        private final Class type;
+        private final int width, height, depth, samples;
+        private final boolean depthFormat;
+        private final ColorSpace colorSpace;
+        private final int hash;
+
+        public CompatibilityKey(Class type, int width, int height, int depth, int samples,
+                boolean depthFormat, ColorSpace colorSpace) {
+            this.type = type;
+            this.width = width;
+            this.height = height;
+            this.depth = depth;
+            this.samples = samples;
+            this.depthFormat = depthFormat;
+            this.colorSpace = colorSpace;
+            int h = 7;
+            h = 37 * h + type.hashCode();
+            h = 37 * h + width;
+            h = 37 * h + height;
+            h = 37 * h + depth;
+            h = 37 * h + samples;
+            h = 37 * h + (depthFormat ? 1 : 0);
+            h = 37 * h + Objects.hashCode(colorSpace);
+            this.hash = h;
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            final CompatibilityKey other = (CompatibilityKey)obj;
+            return hash == other.hash
+                && width == other.width
+                && height == other.height
+                && depth == other.depth
+                && samples == other.samples
+                && depthFormat == other.depthFormat
+                && colorSpace == other.colorSpace
+                && type == other.type;
+        }
+        
+    }
+    
 }
@@ -75,6 +75,7 @@ public class Attribute <T> extends RenderPass {
     
     @Override
     protected void initialize(FrameGraph frameGraph) {
+        staticPrepare = true;
         this.
         in = addInput(INPUT);
         out = addOutput(OUTPUT);
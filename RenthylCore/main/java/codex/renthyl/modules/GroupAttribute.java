@@ -75,6 +75,7 @@ public class GroupAttribute extends RenderPass {
     
     @Override
     protected void initialize(FrameGraph frameGraph) {
+        staticPrepare = true;
         addInputGroup(INPUT, groupSize);
         addOutputGroup(OUTPUT, groupSize);
     }
@@ -127,7 +127,7 @@ public class Junction <T> extends RenderPass {
     private void connect(int i) {
         boolean assignNull = i < 0 || i >= length;
         if (i != curIndex) {
-            frameGraph.setLayoutUpdateNeeded();
+            frameGraph.setConnectionUpdateNeeded();
             curIndex = i;
         }
         if (groupSize > 1) {
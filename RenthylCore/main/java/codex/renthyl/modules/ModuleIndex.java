@@ -44,6 +44,13 @@ public final class ModuleIndex {
      * Index of the main render thread.
      */
     public static final int MAIN_THREAD = 0;
+    /**
+     * Thread index of modules that may be executed on any thread other
+     * than the main render thread.
+     * 
+     * @see codex.renthyl.DependencyScheduler
+     */
+    public static final int ANY_THREAD = -1;
     
     /**
      * Index that conforms to defaults only.
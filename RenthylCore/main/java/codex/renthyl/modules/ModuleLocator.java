@@ -44,6 +44,27 @@ public interface ModuleLocator <T extends RenderModule> {
      */
     public T accept(RenderModule module);
     
+    /**
+     * Gets the type every module accepted by this locator is an instance of.
+     * <p>
+     * Used to narrow searches with the {@link ModuleRegistry}. Locators that
+     * return null are resolved by searching the module tree.
+     * 
+     * @return located type, or null if unknown
+     */
+    public default Class<? extends RenderModule> getLocatedType() {
+        return null;
+    }
+    
+    /**
+     * Gets the name every module accepted by this locator has.
+     * 
+     * @return located name, or null if unknown
+     */
+    public default String getLocatedName() {
+        return null;
+    }
+    
     /**
      * Locates a pass by its type.
      * 
@@ -52,13 +73,7 @@ public interface ModuleLocator <T extends RenderModule> {
      * @return 
      */
     public static <R extends RenderModule> ModuleLocator<R> by(Class<R> type) {
-        return pass -> {
-            if (type.isAssignableFrom(pass.getClass())) {
-                return (R)pass;
-            } else {
-                return null;
-            }
-        };
+        return new ByType<>(type, null);
     }
     
     /**
@@ -70,13 +85,41 @@ public interface ModuleLocator <T extends RenderModule> {
      * @return 
      */
     public static <R extends RenderModule> ModuleLocator<R> by(Class<R> type, String name) {
-        return pass -> {
-            if (name.equals(pass.getName()) && type.isAssignableFrom(pass.getClass())) {
-                return (R)pass;
+        return new ByType<>(type, name);
+    }
+    
+    /**
+     * Locates a pass by its type and, optionally, its name.
+     * 
+     * @param <R> 
+     */
+    public static class ByType <R extends RenderModule> implements ModuleLocator<R> {
+        
+        private final Class<R> type;
+        private final String name;
+        
+        public ByType(Class<R> type, String name) {
+            this.type = type;
+            this.name = name;
+        }
+        
+        @Override
+        public R accept(RenderModule module) {
+            if ((name == null || name.equals(module.getName())) && type.isAssignableFrom(module.getClass())) {
+                return (R)module;
             } else {
                 return null;
             }
-        };
+        }
+        @Override
+        public Class<R> getLocatedType() {
+            return type;
+        }
+        @Override
+        public String getLocatedName() {
+            return name;
+        }
+        
     }
     
 }
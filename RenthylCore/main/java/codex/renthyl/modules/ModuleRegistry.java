@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2024, codex
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package codex.renthyl.modules;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Indexes the modules assigned to a FrameGraph by id, name, and type.
+ * <p>
+ * Modules register themselves on initialization and unregister on cleanup,
+ * and renamed modules are reindexed, so lookups do not need to search the
+ * module tree. Where several modules qualify, the first in tree order is
+ * returned, matching {@link RenderContainer#get(codex.renthyl.modules.ModuleLocator)}.
+ * 
+ * @author codex
+ */
+public class ModuleRegistry {
+    
+    private final HashMap<Integer, RenderModule> ids = new HashMap<>();
+    private final HashMap<String, ArrayList<RenderModule>> names = new HashMap<>();
+    private final HashMap<Class, ArrayList<RenderModule>> types = new HashMap<>();
+    
+    /**
+     * Registers the module.
+     * <p>
+     * Called internally. Do not use.
+     * 
+     * @param module 
+     */
+    public void register(RenderModule module) {
+        ids.put(module.getId(), module);
+        add(names, module.getName(), module);
+        add(types, module.getClass(), module);
+    }
+    /**
+     * Unregisters the module.
+     * <p>
+     * Called internally. Do not use.
+     * 
+     * @param module 
+     */
+    public void unregister(RenderModule module) {
+        ids.remove(module.getId(), module);
+        remove(names, module.getName(), module);
+        remove(types, module.getClass(), module);
+    }
+    /**
+     * Reindexes the module under its current name.
+     * <p>
+     * Called internally. Do not use.
+     * 
+     * @param module
+     * @param previousName 
+     */
+    public void rename(RenderModule module, String previousName) {
+        remove(names, previousName, module);
+        add(names, module.getName(), module);
+    }
+    
+    /**
+     * Gets the module with the id.
+     * 
+     * @param id
+     * @return module, or null if none is registered under the id
+     */
+    public RenderModule get(int id) {
+        return ids.get(id);
+    }
+    /**
+     * Gets all modules registered under the name.
+     * 
+     * @param name
+     * @return unmodifiable list of modules (not in tree order)
+     */
+    public List<RenderModule> getAll(String name) {
+        ArrayList<RenderModule> list = names.get(name);
+        return list != null ? Collections.unmodifiableList(list) : Collections.emptyList();
+    }
+    /**
+     * Gets the first module under the root, in tree order, that satisfies the locator.
+     * <p>
+     * Only modules of the locator's {@link ModuleLocator#getLocatedName() name} or
+     * {@link ModuleLocator#getLocatedType() type} are tested. If the locator
+     * provides neither, the tree under the root is searched instead.
+     * 
+     * @param <T>
+     * @param root container to search under (not tested itself)
+     * @param by module locator (not null)
+     * @return located module, or null
+     */
+    public <T extends RenderModule> T get(RenderContainer root, ModuleLocator<T> by) {
+        String name = by.getLocatedName();
+        if (name != null) {
+            return first(root, by, names.get(name), null);
+        }
+        Class type = by.getLocatedType();
+        if (type == null) {
+            return (T)root.get(by);
+        }
+        T result = null;
+        for (Map.Entry<Class, ArrayList<RenderModule>> e : types.entrySet()) {
+            if (type.isAssignableFrom(e.getKey())) {
+                result = first(root, by, e.getValue(), result);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Gets the number of registered modules.
+     * 
+     * @return 
+     */
+    public int size() {
+        return ids.size();
+    }
+    
+    private <T extends RenderModule> T first(RenderContainer root, ModuleLocator<T> by, List<RenderModule> candidates, T result) {
+        if (candidates == null) {
+            return result;
+        }
+        for (int i = 0, n = candidates.size(); i < n; i++) {
+            RenderModule m = candidates.get(i);
+            if (m == root || (result != null && !precedes(m, result)) || !isUnder(m, root)) {
+                continue;
+            }
+            T t = by.accept(m);
+            if (t != null) {
+                result = t;
+            }
+        }
+        return result;
+    }
+    
+    private static <K> void add(HashMap<K, ArrayList<RenderModule>> map, K key, RenderModule module) {
+        if (key != null) {
+            map.computeIfAbsent(key, k -> new ArrayList<>(1)).add(module);
+        }
+    }
+    private static <K> void remove(HashMap<K, ArrayList<RenderModule>> map, K key, RenderModule module) {
+        if (key == null) {
+            return;
+        }
+        ArrayList<RenderModule> list = map.get(key);
+        if (list != null && list.remove(module) && list.isEmpty()) {
+            map.remove(key);
+        }
+    }
+    private static boolean isUnder(RenderModule module, RenderContainer root) {
+        for (RenderModule m = module.getParent(); m != null; m = m.getParent()) {
+            if (m == root) {
+                return true;
+            }
+        }
+        return false;
+    }
+    private static int depth(RenderModule module) {
+        int d = 0;
+        for (RenderModule m = module.getParent(); m != null; m = m.getParent()) {
+            d++;
+        }
+        return d;
+    }
+    /**
+     * Returns true if {@code a} is visited before {@code b} in a depth-first
+     * (pre-order) traversal of the module tree.
+     * 
+     * @param a
+     * @param b
+     * @return 
+     */
+    private static boolean precedes(RenderModule a, RenderModule b) {
+        RenderModule x = a, y = b;
+        int dx = depth(x), dy = depth(y);
+        for (; dx > dy; dx--) {
+            x = x.getParent();
+        }
+        for (; dy > dx; dy--) {
+            y = y.getParent();
+        }
+        if (x == y) {
+            // one is an ancestor of the other, and ancestors are visited first
+            return x == a;
+        }
+        while (x.getParent() != y.getParent()) {
+            x = x.getParent();
+            y = y.getParent();
+        }
+        return x.getParent() != null && x.getPosition() < y.getPosition();
+    }
+    
+}
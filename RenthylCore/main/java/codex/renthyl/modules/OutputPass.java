@@ -58,12 +58,14 @@ public class OutputPass extends RenderPass {
     
     @Override
     protected void initialize(FrameGraph frameGraph) {
+        staticPrepare = true;
         color = addInput("Color");
         depth = addInput("Depth");
     }
     @Override
     protected void prepare(FGRenderContext context) {
-        referenceOptional(color, depth);
+        referenceOptional(color);
+        referenceOptional(depth);
     }
     @Override
     protected void execute(FGRenderContext context) {
@@ -77,22 +77,22 @@ public class RenderContainer <R extends RenderModule> extends RenderModule imple
     }
     @Override
     public void prepareModuleRender(FGRenderContext context) {
-        for (RenderModule m : queue) {
-            m.prepareModuleRender(context);
+        for (int i = 0, n = queue.size(); i < n; i++) {
+            queue.get(i).prepareModuleRender(context);
         }
     }
     @Override
     public void executeRender(FGRenderContext context) {}
     @Override
     public void resetRender(FGRenderContext context) {
-        for (RenderModule m : queue) {
-            m.resetRender(context);
+        for (int i = 0, n = queue.size(); i < n; i++) {
+            queue.get(i).resetRender(context);
         }
     }
     @Override
     public void renderingComplete() {
-        for (RenderModule m : queue) {
-            m.renderingComplete();
+        for (int i = 0, n = queue.size(); i < n; i++) {
+            queue.get(i).renderingComplete();
         }
     }
     @Override
@@ -121,6 +121,7 @@ public class RenderContainer <R extends RenderModule> extends RenderModule imple
         InputCapsule in = im.getCapsule(this);
         ArrayList<R> array = in.readSavableArrayList("queue", new ArrayList<>(0));
         queue.addAll(array);
+        updatePositions(0);
     }
     @Override
     public Iterator<R> iterator() {
@@ -160,6 +161,7 @@ public class RenderContainer <R extends RenderModule> extends RenderModule imple
         }
         if (module.setParent(this)) {
             queue.add(index, module);
+            updatePositions(index);
             if (isAssigned()) {
                 module.initializeModule(frameGraph);
             }
@@ -293,7 +295,11 @@ public class RenderContainer <R extends RenderModule> extends RenderModule imple
      * @return true only if the module was removed
      */
     public boolean remove(R module) {
-        if (module.getParent() == this && queue.remove(module)) {
+        int i = (module.getParent() == this ? queue.indexOf(module) : -1);
+        if (i >= 0) {
+            queue.remove(i);
+            updatePositions(i);
+            module.setPosition(-1);
             module.setParent(null);
             module.cleanupModule();
             return true;
@@ -312,6 +318,8 @@ public class RenderContainer <R extends RenderModule> extends RenderModule imple
             return null;
         }
         R m = queue.remove(index);
+        updatePositions(index);
+        m.setPosition(-1);
         m.setParent(null);
         m.cleanupModule();
         return m;
@@ -322,6 +330,7 @@ public class RenderContainer <R extends RenderModule> extends RenderModule imple
      */
     public void clear() {
         for (RenderModule m : queue) {
+            m.setPosition(-1);
             m.cleanupModule();
         }
         queue.clear();
@@ -336,4 +345,10 @@ public class RenderContainer <R extends RenderModule> extends RenderModule imple
         return queue.size();
     }
     
+    private void updatePositions(int start) {
+        for (int i = start, n = queue.size(); i < n; i++) {
+            queue.get(i).setPosition(i);
+        }
+    }
+    
 }
@@ -44,7 +44,6 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.function.Consumer;
-import java.util.stream.Stream;
 
 /**
  *
@@ -59,8 +58,16 @@ public abstract class RenderModule implements Connectable, ResourceUser, Savable
     protected final LinkedList<ResourceTicket> inputs = new LinkedList<>();
     protected final LinkedList<ResourceTicket> outputs = new LinkedList<>();
     protected final HashMap<String, TicketGroup> groups = new HashMap<>();
+    private final HashMap<String, ResourceTicket> inputIndex = new HashMap<>();
+    private final HashMap<String, ResourceTicket> outputIndex = new HashMap<>();
+    private int indexedInputs = -1;
+    private int indexedOutputs = -1;
     private int refs = 0;
     private int id = -1;
+    private int position = -1;
+    private int threadAssignment = -1;
+    private long executionNanos = 0;
+    private long excludedNanos = 0;
     
     @Override
     public LinkedList<ResourceTicket> getInputTickets() {
@@ -103,11 +110,25 @@ public abstract class RenderModule implements Connectable, ResourceUser, Savable
     
     @Override
     public ResourceTicket getInput(String name) {
-        return getTicketFromStream(inputs.stream(), name);
+        if (indexedInputs == inputs.size()) {
+            ResourceTicket t = inputIndex.get(name);
+            if (isIndexedUnder(t, name)) {
+                return t;
+            }
+        }
+        indexedInputs = indexTickets(inputs, inputIndex);
+        return inputIndex.get(name);
     }
     @Override
     public ResourceTicket getOutput(String name) {
-        return getTicketFromStream(outputs.stream(), name);
+        if (indexedOutputs == outputs.size()) {
+            ResourceTicket t = outputIndex.get(name);
+            if (isIndexedUnder(t, name)) {
+                return t;
+            }
+        }
+        indexedOutputs = indexTickets(outputs, outputIndex);
+        return outputIndex.get(name);
     }
     @Override
     public TicketGroup getGroup(String name) {
@@ -125,6 +146,12 @@ public abstract class RenderModule implements Connectable, ResourceUser, Savable
             frameGraph.setLayoutUpdateNeeded();
         }
     }
+    @Override
+    public void setConnectionUpdateNeeded() {
+        if (isAssigned()) {
+            frameGraph.setConnectionUpdateNeeded();
+        }
+    }
     
     public int getId() {
         return id;
@@ -138,6 +165,9 @@ public abstract class RenderModule implements Connectable, ResourceUser, Savable
      * @return given ticket
      */
     public <T> ResourceTicket<T> addInput(ResourceTicket<T> input) {
+        if (indexedInputs == inputs.size()) {
+            indexedInputs += indexTicket(input, inputIndex);
+        }
         getInputTickets().add(input);
         return input;
     }
@@ -149,6 +179,9 @@ public abstract class RenderModule implements Connectable, ResourceUser, Savable
      * @return given ticket
      */
     public <T> ResourceTicket<T> addOutput(ResourceTicket<T> output) {
+        if (indexedOutputs == outputs.size()) {
+            indexedOutputs += indexTicket(output, outputIndex);
+        }
         getOutputTickets().add(output);
         return output;
     }
@@ -161,7 +194,7 @@ public abstract class RenderModule implements Connectable, ResourceUser, Savable
      */
     public <T> ResourceTicket<T> addInput(String name) {
         ResourceTicket.validateUserTicketName(name);
-        return addInput(new ResourceTicket<>(name));
+        return addInput(new ResourceTicket<>(this, name));
     }
     /**
      * Creates and registers a new ticket as output.
@@ -172,7 +205,7 @@ public abstract class RenderModule implements Connectable, ResourceUser, Savable
      */
     public <T> ResourceTicket<T> addOutput(String name) {
         ResourceTicket.validateUserTicketName(name);
-        return addOutput(new ResourceTicket<>(name));
+        return addOutput(new ResourceTicket<>(this, name));
     }
     /**
      * Creates and adds a ticket array as a group input of the specified length under the given name.
@@ -188,7 +221,7 @@ public abstract class RenderModule implements Connectable, ResourceUser, Savable
      */
     public <T> ResourceTicket<T>[] addInputGroup(String name, int length) {
         ResourceTicket.validateUserTicketName(name);
-        TicketGroup group = new TicketGroup(name, length);
+        TicketGroup group = new TicketGroup(this, name, length);
         for (int i = 0; i < length; i++) {
             group.getArray()[i] = addInput(group.create(i));
         }
@@ -209,7 +242,7 @@ public abstract class RenderModule implements Connectable, ResourceUser, Savable
      */
     public <T> ResourceTicket<T>[] addOutputGroup(String name, int length) {
         ResourceTicket.validateUserTicketName(name);
-        TicketGroup group = new TicketGroup(name, length);
+        TicketGroup group = new TicketGroup(this, name, length);
         for (int i = 0; i < length; i++) {
             group.getArray()[i] = addOutput(group.create(i));
         }
@@ -231,11 +264,40 @@ public abstract class RenderModule implements Connectable, ResourceUser, Savable
      */
     public void addInputList(String name) {
         ResourceTicket.validateUserTicketName(name);
-        groups.put(name, new TicketGroup(name));
+        groups.put(name, new TicketGroup(this, name));
     }
     
-    private static ResourceTicket getTicketFromStream(Stream<ResourceTicket> stream, String name) {
-        return stream.filter(t -> name.equals(t.getName())).findFirst().orElse(null);
+    /**
+     * Marks the ticket name indices as outdated.
+     * <p>
+     * Must be called after tickets are removed from the input or output lists.
+     * Additions through {@link #addInput(codex.renthyl.resources.ResourceTicket)}
+     * and {@link #addOutput(codex.renthyl.resources.ResourceTicket)} are indexed automatically,
+     * and tickets renamed with {@link ResourceTicket#setName(java.lang.String)} are
+     * reindexed when looked up.
+     */
+    protected void invalidateTicketIndex() {
+        indexedInputs = -1;
+        indexedOutputs = -1;
+    }
+    private static int indexTickets(LinkedList<ResourceTicket> tickets, HashMap<String, ResourceTicket> index) {
+        index.clear();
+        for (ResourceTicket t : tickets) {
+            indexTicket(t, index);
+        }
+        return tickets.size();
+    }
+    private static boolean isIndexedUnder(ResourceTicket ticket, String name) {
+        // tickets may be renamed at any time, so a stale entry or a miss
+        // (which may be a renamed ticket) is verified by reindexing
+        return ticket != null && name.equals(ticket.getName());
+    }
+    private static int indexTicket(ResourceTicket ticket, HashMap<String, ResourceTicket> index) {
+        // the first ticket with a name takes precedence
+        if (ticket.getName() != null) {
+            index.putIfAbsent(ticket.getName(), ticket);
+        }
+        return 1;
     }
     protected ResourceTicket[] getGroupArray(String name) {
         return getGroup(name, true).getArray();
@@ -257,6 +319,7 @@ public abstract class RenderModule implements Connectable, ResourceUser, Savable
         this.frameGraph = frameGraph;
         this.frameGraph.setLayoutUpdateNeeded();
         id = this.frameGraph.getNextId();
+        this.frameGraph.getModuleRegistry().register(this);
         initModule(this.frameGraph);
     }
     /**
@@ -267,7 +330,7 @@ public abstract class RenderModule implements Connectable, ResourceUser, Savable
      * @param parentThread
      */
     public void queueModule(FGRenderContext context, ExecutionQueueList queues, int parentThread) {
-        index.set(queues.add(this, parentThread));
+        index.set(queues.add(this, threadAssignment >= 0 ? threadAssignment : parentThread));
     }
     /**
      * Executes this module.
@@ -276,9 +339,22 @@ public abstract class RenderModule implements Connectable, ResourceUser, Savable
      */
     public void executeModuleRender(FGRenderContext context) {
         if (!isUsed()) {
+            executionNanos = 0;
             return;
         }
+        excludedNanos = 0;
+        long start = System.nanoTime();
         executeRender(context);
+        executionNanos = System.nanoTime()-start-excludedNanos;
+    }
+    /**
+     * Excludes time spent during execution from this module's measured
+     * execution time, such as time spent waiting on other threads.
+     * 
+     * @param nanos 
+     */
+    protected void excludeExecutionNanos(long nanos) {
+        excludedNanos += nanos;
     }
     /**
      * Resets this module from execution.
@@ -292,6 +368,9 @@ public abstract class RenderModule implements Connectable, ResourceUser, Savable
      * Cleans up this module from being attached to a FrameGraph.
      */
     public void cleanupModule() {
+        if (frameGraph != null) {
+            frameGraph.getModuleRegistry().unregister(this);
+        }
         id = -1;
         if (frameGraph != null) {
             cleanupModule(frameGraph);
@@ -368,7 +447,11 @@ public abstract class RenderModule implements Connectable, ResourceUser, Savable
     public void setName(String name) {
         assert name != null : "Name cannot be null.";
         assert !name.isEmpty() : "Name cannot be an empty string.";
+        String prev = this.name;
         this.name = name;
+        if (frameGraph != null) {
+            frameGraph.getModuleRegistry().rename(this, prev);
+        }
     }
     /**
      * Sets the name of this module.
@@ -420,6 +503,16 @@ public abstract class RenderModule implements Connectable, ResourceUser, Savable
         this.parent = parent;
         return true;
     }
+    /**
+     * Sets the index of this module within its parent.
+     * <p>
+     * Called internally. Do not use.
+     * 
+     * @param position 
+     */
+    void setPosition(int position) {
+        this.position = position;
+    }
     
     /**
      * 
@@ -448,6 +541,14 @@ public abstract class RenderModule implements Connectable, ResourceUser, Savable
     public RenderContainer getParent() {
         return parent;
     }
+    /**
+     * Gets the index of this module within its parent.
+     * 
+     * @return index, or -1 if this module has no parent
+     */
+    public int getPosition() {
+        return position;
+    }
     /**
      * Returns true if this module is assigned to a FrameGraph.
      * 
@@ -464,5 +565,48 @@ public abstract class RenderModule implements Connectable, ResourceUser, Savable
     public boolean isAsync() {
         return !index.isMainThread();
     }
+    /**
+     * Returns true if this module may be executed on a thread other than the
+     * main render thread when the FrameGraph schedules modules by dependencies.
+     * <p>
+     * Modules that make renderer calls must return false. By default, only modules
+     * already assigned to a thread other than the main thread are considered safe.
+     * 
+     * @return 
+     * @see FrameGraph#setDependencyScheduling(boolean)
+     */
+    public boolean isThreadSafe() {
+        return !index.isMainThread();
+    }
+    /**
+     * Assigns this module to a thread, overriding the thread of its parent.
+     * <p>
+     * Intended for automatic thread assignment, such as by {@link codex.renthyl.ThreadOptimizer}.
+     * Has no effect on containers.
+     * 
+     * @param threadAssignment thread index, or negative to use the parent's thread
+     */
+    public void setThreadAssignment(int threadAssignment) {
+        if (this.threadAssignment != threadAssignment) {
+            this.threadAssignment = threadAssignment;
+            setLayoutUpdateNeeded();
+        }
+    }
+    /**
+     * 
+     * @return thread index, or negative if the parent's thread is used
+     */
+    public int getThreadAssignment() {
+        return threadAssignment;
+    }
+    /**
+     * Gets the time in nanoseconds this module took to execute during the
+     * last frame.
+     * 
+     * @return execution time, or zero if this module did not execute
+     */
+    public long getExecutionNanos() {
+        return executionNanos;
+    }
     
 }
@@ -30,6 +30,7 @@ package codex.renthyl.modules;
 
 import codex.renthyl.FGRenderContext;
 import codex.renthyl.FrameGraph;
+import codex.renthyl.resources.PrepareRecord;
 import codex.renthyl.resources.ResourceList;
 import codex.renthyl.resources.ResourceTicket;
 import codex.renthyl.resources.TicketGroup;
@@ -58,6 +59,14 @@ public abstract class RenderPass extends RenderModule implements Savable {
     private final LinkedList<PassFrameBuffer> frameBuffers = new LinkedList<>();
     protected ResourceList resources;
     protected boolean autoTicketRelease = true;
+    /**
+     * If true, the resource operations made by {@link #prepare(FGRenderContext)} are
+     * recorded once and replayed on following frames until the layout changes.
+     * <p>
+     * Only enable for passes whose preparation depends on nothing but the graph layout.
+     */
+    protected boolean staticPrepare = false;
+    private final PrepareRecord prepareRecord = new PrepareRecord();
     
     @Override
     public String toString() {
@@ -85,14 +94,37 @@ public abstract class RenderPass extends RenderModule implements Savable {
     @Override
     public void prepareModuleRender(FGRenderContext context) {
         resources = context.getResources();
-        prepare(context);
+        if (!staticPrepare) {
+            prepare(context);
+        } else if (prepareRecord.isValid(frameGraph.getLayoutVersion())) {
+            resources.replay(this, prepareRecord);
+        } else {
+            resources.beginRecording(prepareRecord);
+            boolean complete = false;
+            try {
+                prepare(context);
+                complete = true;
+            } finally {
+                // an incomplete record is never replayed
+                resources.endRecording(complete ? frameGraph.getLayoutVersion() : -1);
+            }
+        }
     }
     @Override
     public void executeRender(FGRenderContext context) {
         if (context.isAsync()) {
+            long start = System.nanoTime();
             waitToExecute();
+            excludeExecutionNanos(System.nanoTime()-start);
+        }
+        Object key = getContentKey(context);
+        if (key == null || !resources.acquireMemoized(outputs, key)) {
+            long start = System.nanoTime();
+            execute(context);
+            if (key != null) {
+                resources.memoize(outputs, key, System.nanoTime()-start);
+            }
         }
-        execute(context);
         if (autoTicketRelease) {
             releaseAll();
         }
@@ -107,9 +139,11 @@ public abstract class RenderPass extends RenderModule implements Savable {
     @Override
     public void cleanupModule(FrameGraph frameGraph) {
         cleanup(frameGraph);
+        prepareRecord.invalidate();
         inputs.clear();
         outputs.clear();
         groups.clear();
+        invalidateTicketIndex();
         this.frameGraph = null;
     }
     
@@ -144,6 +178,24 @@ public abstract class RenderPass extends RenderModule implements Savable {
      * @param context 
      */
     protected abstract void reset(FGRenderContext context);
+    /**
+     * Gets a key identifying the content this pass will produce this frame.
+     * <p>
+     * If a pass produced outputs under an equal key earlier in the same render
+     * frame (including in other FrameGraphs sharing the pipeline context), those
+     * outputs are handed to this pass and {@link #execute(FGRenderContext)} is
+     * skipped. The key must therefore account for all inputs and settings that
+     * affect the outputs, such as scene content and light state, but not the
+     * camera unless the outputs depend on it.
+     * <p>
+     * Called during execution, after inputs are available.
+     * 
+     * @param context
+     * @return content key, or null to always execute (default)
+     */
+    protected Object getContentKey(FGRenderContext context) {
+        return null;
+    }
     /**
      * Cleans up the pass.
      * 
@@ -389,6 +441,7 @@ public abstract class RenderPass extends RenderModule implements Savable {
                 state = -1;
             }
         }
+        invalidateTicketIndex();
         return group.getArray();
     }
     
@@ -5,7 +5,7 @@
 package codex.renthyl.modules;
 
 import codex.renthyl.ExecutionQueueList;
-import codex.renthyl.ExecutionThreadManager;
+import codex.renthyl.QueueExecutor;
 import codex.renthyl.FGRenderContext;
 import codex.renthyl.FrameGraph;
 import com.jme3.renderer.RendererException;
@@ -39,7 +39,7 @@ public class TimeGuard extends RenderModule {
     protected void prepareModuleRender(FGRenderContext context) {}
     @Override
     protected void executeRender(FGRenderContext context) {
-        ExecutionThreadManager threadManager = context.getPipelineContext().getThreadManager();
+        QueueExecutor threadManager = context.getPipelineContext().getQueueExecutor();
         long start = System.currentTimeMillis();
         while (threadManager.getNumActiveThreads() > 1) {
             if (System.currentTimeMillis()-start >= timeout) {
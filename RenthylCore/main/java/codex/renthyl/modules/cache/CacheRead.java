@@ -15,6 +15,11 @@ import com.jme3.export.OutputCapsule;
 import java.io.IOException;
 
 /**
+ * Reads a render object from the {@link codex.renthyl.resources.ObjectCache}.
+ * <p>
+ * If the key is null or nothing is cached at the key, the output is marked
+ * undefined, so that dependent passes can fall back using
+ * {@link codex.renthyl.resources.ResourceList#acquireOrElse(codex.renthyl.resources.ResourceTicket, java.lang.Object) acquireOrElse}.
  *
  * @author codex
  */
@@ -32,6 +37,7 @@ public class CacheRead extends RenderPass {
     
     @Override
     protected void initialize(FrameGraph frameGraph) {
+        staticPrepare = true;
         output = addOutput(OUTPUT);
     }
     @Override
@@ -43,6 +49,8 @@ public class CacheRead extends RenderPass {
         String key = keySource.getGraphValue(frameGraph, context.getViewPort());
         if (key != null) {
             resources.acquireCached(output, key);
+        } else {
+            resources.setUndefined(output);
         }
     }
     @Override
@@ -32,6 +32,7 @@ public class CacheWrite extends RenderPass {
     
     @Override
     protected void initialize(FrameGraph frameGraph) {
+        staticPrepare = true;
         input = addInput(INPUT);
     }
     @Override
@@ -102,9 +102,11 @@ public class GeometryPass extends RenderPass {
         depthDef.setSize(w, h);
         declare(colorDef, outColor);
         declare(depthDef, outDepth);
-        reserve(outColor, outDepth);
+        reserve(outColor);
+        reserve(outDepth);
         reference(geometry);
-        referenceOptional(inColor, inDepth);
+        referenceOptional(inColor);
+        referenceOptional(inDepth);
     }
     @Override
     protected void execute(FGRenderContext context) {
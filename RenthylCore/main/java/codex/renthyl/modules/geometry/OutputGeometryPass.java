@@ -45,6 +45,7 @@ public class OutputGeometryPass extends RenderPass {
     
     @Override
     protected void initialize(FrameGraph frameGraph) {
+        staticPrepare = true;
         geometry = addInput("Geometry");
     }
     @Override
@@ -38,6 +38,7 @@ import com.jme3.export.JmeExporter;
 import com.jme3.export.JmeImporter;
 import com.jme3.export.OutputCapsule;
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * Merges a specified number of {@link GeometryQueue}s into one output queue.
@@ -58,7 +59,8 @@ public class QueueMergePass extends RenderPass {
     private int groupSize = 2;
     private ResourceTicket<GeometryQueue> result;
     private final GeometryQueue target = new GeometryQueue();
-
+    private GeometryQueue[] queues = new GeometryQueue[0];
+    
     public QueueMergePass() {}
     public QueueMergePass(int groupSize) {
         this.groupSize = groupSize;
@@ -66,6 +68,7 @@ public class QueueMergePass extends RenderPass {
     
     @Override
     protected void initialize(FrameGraph frameGraph) {
+        staticPrepare = true;
         addInputGroup("Queues", groupSize);
         result = addOutput("Result");
     }
@@ -76,7 +79,11 @@ public class QueueMergePass extends RenderPass {
     }
     @Override
     protected void execute(FGRenderContext context) {
-        GeometryQueue[] queues = acquireArrayOrElse("Queues", n -> new GeometryQueue[n], null);
+        int n = getGroupArray("Queues").length;
+        if (queues.length != n) {
+            queues = new GeometryQueue[n];
+        }
+        acquireArrayOrElse("Queues", queues, null);
         for (GeometryQueue q : queues) {
             if (q != null) {
                 target.add(q);
@@ -87,10 +94,15 @@ public class QueueMergePass extends RenderPass {
     @Override
     protected void reset(FGRenderContext context) {
         target.clear();
+        Arrays.fill(queues, null);
     }
     @Override
     protected void cleanup(FrameGraph frameGraph) {}
     @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+    @Override
     public void write(JmeExporter ex) throws IOException {
         super.write(ex);
         OutputCapsule out = ex.getCapsule(this);
@@ -32,10 +32,16 @@ import codex.boost.export.SavableObject;
 import codex.renthyl.modules.RenderPass;
 import codex.renthyl.FGRenderContext;
 import codex.renthyl.FrameGraph;
+import codex.renthyl.debug.GraphEventCapture;
 import codex.renthyl.GeometryQueue;
 import codex.renthyl.resources.ResourceTicket;
 import codex.boost.render.DepthRange;
 import codex.renthyl.util.SpatialWorldParam;
+import codex.renthyl.util.ThreadSafeControl;
+import codex.renthyl.util.WorldParamCache;
+import com.jme3.bounding.BoundingBox;
+import com.jme3.bounding.BoundingSphere;
+import com.jme3.bounding.BoundingVolume;
 import com.jme3.export.InputCapsule;
 import com.jme3.export.JmeExporter;
 import com.jme3.export.JmeImporter;
@@ -53,12 +59,22 @@ import com.jme3.renderer.queue.RenderQueue;
 import com.jme3.renderer.queue.TransparentComparator;
 import com.jme3.scene.Geometry;
 import com.jme3.scene.Node;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Transform;
+import com.jme3.math.Vector3f;
 import com.jme3.scene.Spatial;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * Enqueues geometries into different {@link GeometryQueue}s based on world
@@ -73,6 +89,9 @@ import java.util.List;
  * {@link #QUEUE} (expected as String) according to ancestor inheritance, or the
  * value returned by {@link Geometry#getQueueBucket()} (converted to String).
  * Userdata value (if found) trumps queue bucket value.
+ * <p>
+ * Large scenes can optionally be traversed in parallel (see {@link #setParallel(boolean)}),
+ * or incrementally (see {@link #setIncremental(boolean)}).
  * 
  * @author codex
  */
@@ -95,10 +114,41 @@ public class SceneEnqueuePass extends RenderPass {
             GUI = "Gui",
             TRANSLUCENT = "Translucent";
     
+    /**
+     * Number of frames a subtree record survives without being used.
+     */
+    private static final int RECORD_TIMEOUT = 120;
+    // translation, rotation, scale, bound type, bound center, and bound extents
+    private static final int STATE_SIZE = 17;
+    private static final float NO_BOUND = 0, BOX = 1, SPHERE = 2, OTHER_BOUND = 3;
+    
     private boolean runControlRender = true;
     private final HashMap<String, Queue> queues = new HashMap<>();
-    private final LinkedList<SpatialWorldParam> worldParams = new LinkedList<>();
+    private final ArrayList<Queue> queueList = new ArrayList<>();
+    private final ArrayList<SpatialWorldParam> worldParams = new ArrayList<>();
+    private final WorldParamCache<String> queueParams = new WorldParamCache<>(SpatialWorldParam.RenderQueueParam);
     private String defaultBucket = OPAQUE;
+    private boolean radixSort = false;
+    private boolean coherentSort = false;
+    private boolean parallel = false;
+    private int splitDepth = 3;
+    private int splitSize = 64;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    private final ArrayList<EnqueueTask> taskPool = new ArrayList<>();
+    private final ThreadLocal<WorkerCamera> workerCams = ThreadLocal.withInitial(WorkerCamera::new);
+    private long traversals = 0;
+    private boolean incremental = false;
+    private int incrementalDepth = 1;
+    private final IdentityHashMap<Spatial, Record> records = new IdentityHashMap<>();
+    private Record recording;
+    private final Camera lastCam = new Camera(1, 1);
+    private int cameraVersion = 0;
+    private long frame = 0;
+    
+    // statistics
+    private int walkedSpatials = 0;
+    private int skippedSpatials = 0;
+    private float skippedPercent = 0;
 
     /**
      * Initialize an instance with default settings.
@@ -122,11 +172,11 @@ public class SceneEnqueuePass extends RenderPass {
             add(GUI, new GuiComparator(), DepthRange.FRONT, false);
             add(TRANSLUCENT, new TransparentComparator());
         }
-        worldParams.add(SpatialWorldParam.RenderQueueParam);
     }
     
     @Override
     protected void initialize(FrameGraph frameGraph) {
+        staticPrepare = true;
         for (Queue b : queues.values()) {
             b.geometry = addOutput(b.name);
             b.lights = addOutput(b.name+"Lights");
@@ -134,7 +184,8 @@ public class SceneEnqueuePass extends RenderPass {
     }
     @Override
     protected void prepare(FGRenderContext context) {
-        for (Queue b : queues.values()) {
+        for (int i = 0; i < queueList.size(); i++) {
+            Queue b = queueList.get(i);
             declare(null, b.geometry);
             declare(null, b.lights);
         }
@@ -143,24 +194,55 @@ public class SceneEnqueuePass extends RenderPass {
     protected void execute(FGRenderContext context) {
         ViewPort vp = context.getViewPort();
         List<Spatial> scenes = vp.getScenes();
+        boolean useRecords = incremental && !parallel;
+        if (useRecords) {
+            updateCameraVersion(vp.getCamera());
+        }
+        walkedSpatials = 0;
+        skippedSpatials = 0;
         for (int i = scenes.size()-1; i >= 0; i--) {
             vp.getCamera().setPlaneState(0);
-            queueSubScene(context, scenes.get(i));
+            if (parallel) {
+                queueSubSceneParallel(context, scenes.get(i));
+            } else {
+                queueSubScene(context, scenes.get(i), 0, useRecords);
+            }
         }
-        for (Queue b : queues.values()) {
+        queueParams.endFrame();
+        if (useRecords) {
+            pruneRecords();
+            int total = walkedSpatials+skippedSpatials;
+            skippedPercent = (total > 0 ? skippedSpatials*100f/total : 0);
+            GraphEventCapture cap = context.getGraphCapture();
+            if (cap != null) {
+                cap.value("enqueueSkippedPercent", skippedPercent);
+            }
+        } else if (!records.isEmpty()) {
+            records.clear();
+        }
+        for (int i = 0; i < queueList.size(); i++) {
+            Queue b = queueList.get(i);
             resources.setPrimitive(b.geometry, b.queue);
             resources.setPrimitive(b.lights, b.lightList);
         }
     }
     @Override
     protected void reset(FGRenderContext context) {
-        for (Queue b : queues.values()) {
+        for (int i = 0; i < queueList.size(); i++) {
+            Queue b = queueList.get(i);
             b.queue.clear();
             b.lightList.clear();
         }
     }
     @Override
-    protected void cleanup(FrameGraph frameGraph) {}
+    protected void cleanup(FrameGraph frameGraph) {
+        queueParams.clear();
+        records.clear();
+    }
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
     @Override
     public void write(JmeExporter ex) throws IOException {
         super.write(ex);
@@ -179,50 +261,178 @@ public class SceneEnqueuePass extends RenderPass {
         ArrayList<Savable> list = in.readSavableArrayList("buckets", new ArrayList<>());
         for (Savable s : list) {
             Queue b = (Queue)s;
-            queues.put(b.name, b);
+            putQueue(b);
         }
         defaultBucket = in.readString("defaultBucket", OPAQUE);
     }
     
-    private void queueSubScene(FGRenderContext context, Spatial spatial) {
+    private void queueSubScene(FGRenderContext context, Spatial spatial, int depth, boolean useRecords) {
         // check culling
         Camera cam = context.getViewPort().getCamera();
+        // culled spatials are recorded too, in case they move into view
+        if (recording != null) {
+            recording.visit(spatial);
+        }
         if (!spatial.checkCulling(cam)) {
             return;
         }
+        walkedSpatials++;
         // render controls
         if (runControlRender) {
+            if (recording != null && spatial.getNumControls() > 0) {
+                // controls must be rendered every frame
+                recording.cacheable = false;
+            }
             spatial.runControlRender(context.getRenderManager(), context.getViewPort());
         }
         // apply world parameters
-        for (SpatialWorldParam p : worldParams) {
-            p.apply(spatial);
+        for (int i = 0; i < worldParams.size(); i++) {
+            worldParams.get(i).apply(spatial);
         }
         // get target bucket
-        String value = SpatialWorldParam.RenderQueueParam.getWorldValue(spatial);
+        String value = queueParams.resolve(spatial);
         if (value == null) {
             throw new NullPointerException("World render queue value was not calculated correctly.");
         }
-        Queue queue = queues.get(value);
-        // accumulate lights
-        if (queue != null) for (Light l : spatial.getLocalLightList()) {
-            queue.lightList.add(l);
+        Record record = null;
+        if (useRecords && depth == incrementalDepth && spatial instanceof Node) {
+            record = records.get(spatial);
+            if (record != null && record.matches((Node)spatial, value)) {
+                // splice the subtree's results from the last walk
+                record.splice();
+                skippedSpatials += record.spatials-1;
+                record.frame = frame;
+                return;
+            }
+            if (record == null) {
+                record = new Record();
+                records.put(spatial, record);
+            }
+            record.begin((Node)spatial, value);
+            recording = record;
+        }
+        try {
+            Queue queue = queues.get(value);
+            // accumulate lights
+            if (queue != null) {
+                LightList local = spatial.getLocalLightList();
+                for (int i = 0, n = local.size(); i < n; i++) {
+                    queue.lightList.add(local.get(i));
+                    if (recording != null) {
+                        recording.add(local.get(i), queue, false);
+                    }
+                }
+            }
+            if (spatial instanceof Node) {
+                int camState = cam.getPlaneState();
+                List<Spatial> children = ((Node)spatial).getChildren();
+                for (int i = 0, n = children.size(); i < n; i++) {
+                    // restore cam state before queueing children
+                    cam.setPlaneState(camState);
+                    queueSubScene(context, children.get(i), depth+1, useRecords);
+                }
+            } else if (queue != null && spatial instanceof Geometry) {
+                // add to the render queue
+                Geometry g = (Geometry)spatial;
+                if (g.getMaterial() == null) {
+                    throw new IllegalStateException("No material is set for Geometry: " + g.getName());
+                }
+                queue.queue.add(g);
+                if (recording != null) {
+                    recording.add(g, queue, true);
+                }
+            }
+        } catch (RuntimeException | Error ex) {
+            if (record != null) {
+                // partial results must not be spliced
+                record.cacheable = false;
+            }
+            throw ex;
+        } finally {
+            if (record != null) {
+                recording = null;
+                record.spatials = walkedSpatials-record.spatials;
+                record.frame = frame;
+                if (!record.cacheable) {
+                    records.remove(spatial);
+                }
+            }
+        }
+    }
+    private void updateCameraVersion(Camera cam) {
+        frame++;
+        if (!cam.getLocation().equals(lastCam.getLocation())
+                || !cam.getRotation().equals(lastCam.getRotation())
+                || cam.getFrustumNear() != lastCam.getFrustumNear()
+                || cam.getFrustumFar() != lastCam.getFrustumFar()
+                || cam.getFrustumLeft() != lastCam.getFrustumLeft()
+                || cam.getFrustumRight() != lastCam.getFrustumRight()
+                || cam.getFrustumTop() != lastCam.getFrustumTop()
+                || cam.getFrustumBottom() != lastCam.getFrustumBottom()
+                || cam.isParallelProjection() != lastCam.isParallelProjection()
+                || cam.getWidth() != lastCam.getWidth() || cam.getHeight() != lastCam.getHeight()) {
+            lastCam.copyFrom(cam);
+            cameraVersion++;
         }
-        if (spatial instanceof Node) {
-            int camState = cam.getPlaneState();
-            for (Spatial s : ((Node)spatial).getChildren()) {
-                // restore cam state before queueing children
-                cam.setPlaneState(camState);
-                queueSubScene(context, s);
+    }
+    private void pruneRecords() {
+        if (frame % RECORD_TIMEOUT == 0) {
+            for (Iterator<Map.Entry<Spatial, Record>> it = records.entrySet().iterator(); it.hasNext();) {
+                if (it.next().getValue().frame < frame-RECORD_TIMEOUT) {
+                    it.remove();
+                }
             }
-        } else if (queue != null && spatial instanceof Geometry) {
-            // add to the render queue
-            Geometry g = (Geometry)spatial;
-            if (g.getMaterial() == null) {
-                throw new IllegalStateException("No material is set for Geometry: " + g.getName());
+        }
+    }
+    private static boolean boundsEqual(BoundingVolume a, BoundingVolume b) {
+        if (a == null || b == null || a.getClass() != b.getClass() || !a.getCenter().equals(b.getCenter())) {
+            return false;
+        }
+        if (a instanceof BoundingBox) {
+            BoundingBox x = (BoundingBox)a, y = (BoundingBox)b;
+            return x.getXExtent() == y.getXExtent() && x.getYExtent() == y.getYExtent()
+                && x.getZExtent() == y.getZExtent();
+        }
+        if (a instanceof BoundingSphere) {
+            return ((BoundingSphere)a).getRadius() == ((BoundingSphere)b).getRadius();
+        }
+        return false;
+    }
+    
+    private void queueSubSceneParallel(FGRenderContext context, Spatial scene) {
+        traversals++;
+        EnqueueTask root = obtainTask(context, scene, null, 0, 0, 0, 0);
+        if (ForkJoinTask.inForkJoinPool()) {
+            root.invoke();
+        } else {
+            pool.invoke(root);
+        }
+        // merge buffers in traversal order, which matches the sequential result
+        root.merge();
+    }
+    private EnqueueTask obtainTask(FGRenderContext context, Spatial spatial, Node node,
+            int from, int to, int depth, int planeState) {
+        EnqueueTask t;
+        synchronized (taskPool) {
+            t = taskPool.isEmpty() ? new EnqueueTask() : taskPool.remove(taskPool.size()-1);
+        }
+        t.reinitialize();
+        t.set(context, spatial, node, from, to, depth, planeState);
+        return t;
+    }
+    private void releaseTask(EnqueueTask t) {
+        t.set(null, null, null, 0, 0, 0, 0);
+        synchronized (taskPool) {
+            taskPool.add(t);
+        }
+    }
+    private static boolean isControlRenderThreadSafe(Spatial spatial) {
+        for (int i = 0, n = spatial.getNumControls(); i < n; i++) {
+            if (!(spatial.getControl(i) instanceof ThreadSafeControl)) {
+                return false;
             }
-            queue.queue.add(g);
         }
+        return true;
     }
     
     /**
@@ -252,11 +462,24 @@ public class SceneEnqueuePass extends RenderPass {
         if (isAssigned()) {
             throw new IllegalStateException("Cannot add buckets while assigned to a framegraph.");
         }
-        queues.put(name, new Queue(name, comparator, depth, perspective));
+        putQueue(new Queue(name, comparator, depth, perspective));
         return this;
     }
+    private void putQueue(Queue queue) {
+        Queue prev = queues.put(queue.name, queue);
+        if (prev != null) {
+            queueList.remove(prev);
+        }
+        queue.queue.setRadixSort(radixSort);
+        queue.queue.setTemporalCoherence(coherentSort);
+        queueList.add(queue);
+    }
     
     /**
+     * Adds a world parameter that is applied to each traversed spatial.
+     * <p>
+     * The render queue parameter is resolved internally and does not need to
+     * be added. Its world values are no longer saved to spatial userdata.
      * 
      * @param param 
      */
@@ -285,7 +508,215 @@ public class SceneEnqueuePass extends RenderPass {
     public void setDefaultBucket(String defaultBucket) {
         this.defaultBucket = defaultBucket;
     }
+    /**
+     * Sets the queues of this pass to sort with radix sort instead of
+     * their comparators.
+     * <p>
+     * default=false
+     * 
+     * @param radixSort 
+     * @see GeometryQueue#setRadixSort(boolean)
+     */
+    public void setRadixSort(boolean radixSort) {
+        this.radixSort = radixSort;
+        for (Queue q : queueList) {
+            q.queue.setRadixSort(radixSort);
+        }
+    }
+    /**
+     * Sets the queues of this pass to sort starting from the previous
+     * frame's order.
+     * <p>
+     * default=false
+     * 
+     * @param coherentSort 
+     * @see GeometryQueue#setTemporalCoherence(boolean)
+     */
+    public void setCoherentSort(boolean coherentSort) {
+        this.coherentSort = coherentSort;
+        for (Queue q : queueList) {
+            q.queue.setTemporalCoherence(coherentSort);
+        }
+    }
 
+    /**
+     * Sets this pass to traverse the scene in parallel.
+     * <p>
+     * Subtrees are traversed by separate fork/join tasks, each buffering its results,
+     * and the buffers are merged in traversal order afterwards, so the resulting
+     * queues and light lists are identical to a sequential traversal. Culling is
+     * performed against per-thread copies of the viewport camera.
+     * <p>
+     * Control renders of controls not marked as {@link ThreadSafeControl} are deferred
+     * and run serially, in traversal order, after the scene is traversed. Such controls
+     * must therefore not change the culling, queue, or hierarchy of spatials when rendered.
+     * <p>
+     * default=false
+     * 
+     * @param parallel 
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+    /**
+     * Sets the depth up to which the children of every node are traversed
+     * by separate tasks.
+     * <p>
+     * default=3
+     * 
+     * @param splitDepth 
+     */
+    public void setSplitDepth(int splitDepth) {
+        this.splitDepth = splitDepth;
+    }
+    /**
+     * Sets the number of children each task traverses when the children of a
+     * node are split between tasks. Nodes with at least twice this many children
+     * are split at any depth.
+     * <p>
+     * default=64
+     * 
+     * @param splitSize 
+     */
+    public void setSplitSize(int splitSize) {
+        if (splitSize <= 0) {
+            throw new IllegalArgumentException("Split size must be positive.");
+        }
+        this.splitSize = splitSize;
+    }
+    /**
+     * Sets this pass to reuse the last frame's results of unchanged subtrees.
+     * <p>
+     * The results of each node at the {@link #setIncrementalDepth(int) incremental depth}
+     * are recorded, and spliced back into the queues on following frames instead
+     * of walking the subtree again, as long as:
+     * <ul>
+     * <li>the node's world transform, world bound, child count, and render queue are unchanged;</li>
+     * <li>every spatial reached in the subtree, including culled ones, has the same parent,
+     * world transform, world bound, child count, and local render queue;</li>
+     * <li>the camera is unchanged, or the node is and was entirely inside the view frustum;</li>
+     * <li>no spatial in the subtree had controls to render; and</li>
+     * <li>the subtree was not {@link #invalidate(com.jme3.scene.Spatial) invalidated}.</li>
+     * </ul>
+     * Other changes within a subtree, such as changing a descendant's material,
+     * lights, or cull hint, or attaching controls, must be reported with
+     * {@link #invalidate(com.jme3.scene.Spatial)}.
+     * <p>
+     * Every spatial in a recorded subtree is still checked each frame, so this only
+     * pays off for subtrees that are expensive to walk compared to checking, such as
+     * nodes holding many geometries.
+     * <p>
+     * Not used while traversing in parallel.
+     * <p>
+     * default=false
+     * 
+     * @param incremental 
+     */
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+    /**
+     * Sets the depth of the nodes whose subtrees are recorded for incremental
+     * traversal, where the scenes attached to the viewport are depth zero.
+     * <p>
+     * default=1
+     * 
+     * @param incrementalDepth 
+     */
+    public void setIncrementalDepth(int incrementalDepth) {
+        this.incrementalDepth = incrementalDepth;
+        records.clear();
+    }
+    /**
+     * Forces the recorded subtree containing the spatial to be walked again
+     * next frame.
+     * 
+     * @param spatial 
+     */
+    public void invalidate(Spatial spatial) {
+        for (Spatial s = spatial; s != null; s = s.getParent()) {
+            Record r = records.get(s);
+            if (r != null) {
+                r.cacheable = false;
+            }
+        }
+    }
+    /**
+     * Sets the pool used for parallel traversal.
+     * <p>
+     * default={@link ForkJoinPool#commonPool()}
+     * 
+     * @param pool 
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+    
+    /**
+     * 
+     * @return 
+     */
+    public boolean isIncremental() {
+        return incremental;
+    }
+    /**
+     * 
+     * @return 
+     */
+    public int getIncrementalDepth() {
+        return incrementalDepth;
+    }
+    /**
+     * Gets the percentage of traversed spatials that were skipped by reusing
+     * recorded results during the last incremental traversal.
+     * 
+     * @return percentage between 0 and 100
+     */
+    public float getSkippedPercent() {
+        return skippedPercent;
+    }
+    /**
+     * 
+     * @return 
+     */
+    public boolean isRadixSort() {
+        return radixSort;
+    }
+    /**
+     * 
+     * @return 
+     */
+    public boolean isCoherentSort() {
+        return coherentSort;
+    }
+    /**
+     * 
+     * @return 
+     */
+    public boolean isParallel() {
+        return parallel;
+    }
+    /**
+     * 
+     * @return 
+     */
+    public int getSplitDepth() {
+        return splitDepth;
+    }
+    /**
+     * 
+     * @return 
+     */
+    public int getSplitSize() {
+        return splitSize;
+    }
+    /**
+     * 
+     * @return 
+     */
+    public ForkJoinPool getPool() {
+        return pool;
+    }
     /**
      * 
      * @return 
@@ -301,6 +732,324 @@ public class SceneEnqueuePass extends RenderPass {
         return defaultBucket;
     }
     
+    /**
+     * Results of a subtree walk, recorded for incremental traversal.
+     */
+    private class Record {
+        
+        private Object[] items = new Object[16];
+        private Spatial[] visited = new Spatial[16];
+        private Node[] parents = new Node[16];
+        // world transform and bound of each visited spatial, packed for fast comparison
+        private float[] states = new float[16*STATE_SIZE];
+        private int[] childCounts = new int[16];
+        private String[] locals = new String[16];
+        private int numVisited = 0;
+        private Queue[] targets = new Queue[16];
+        private boolean[] geometry = new boolean[16];
+        private int size = 0;
+        private int spatials = 0;
+        private long frame = 0;
+        private boolean cacheable = false;
+        private boolean inside = false;
+        private int camVersion = -1;
+        private int numChildren = -1;
+        private String worldValue;
+        private final Transform transform = new Transform();
+        private BoundingVolume bound;
+        
+        public void begin(Node node, String value) {
+            for (int i = 0; i < size; i++) {
+                items[i] = null;
+                targets[i] = null;
+            }
+            size = 0;
+            for (int i = 0; i < numVisited; i++) {
+                visited[i] = null;
+                parents[i] = null;
+                locals[i] = null;
+            }
+            numVisited = 0;
+            spatials = walkedSpatials-1;
+            cacheable = true;
+            inside = node.getLastFrustumIntersection() == Camera.FrustumIntersect.Inside;
+            camVersion = cameraVersion;
+            numChildren = node.getQuantity();
+            worldValue = value;
+            transform.set(node.getWorldTransform());
+            BoundingVolume b = node.getWorldBound();
+            bound = (b != null ? b.clone(bound) : null);
+        }
+        public boolean matches(Node node, String value) {
+            return cacheable && numChildren == node.getQuantity() && worldValue.equals(value)
+                && transform.equals(node.getWorldTransform()) && boundsEqual(bound, node.getWorldBound())
+                && (camVersion == cameraVersion || (inside
+                && node.getLastFrustumIntersection() == Camera.FrustumIntersect.Inside))
+                && visitedUnchanged();
+        }
+        public void visit(Spatial spatial) {
+            if (numVisited == visited.length) {
+                int n = numVisited*2;
+                visited = Arrays.copyOf(visited, n);
+                parents = Arrays.copyOf(parents, n);
+                states = Arrays.copyOf(states, n*STATE_SIZE);
+                childCounts = Arrays.copyOf(childCounts, n);
+                locals = Arrays.copyOf(locals, n);
+            }
+            int i = numVisited++;
+            visited[i] = spatial;
+            parents[i] = spatial.getParent();
+            storeState(spatial, i*STATE_SIZE);
+            childCounts[i] = (spatial instanceof Node ? ((Node)spatial).getQuantity() : -1);
+            locals[i] = queueParams.getLocalValue(spatial);
+        }
+        private boolean visitedUnchanged() {
+            for (int i = 0; i < numVisited; i++) {
+                Spatial s = visited[i];
+                if (s.getParent() != parents[i] || !stateUnchanged(s, i*STATE_SIZE)
+                        || childCounts[i] != (s instanceof Node ? ((Node)s).getQuantity() : -1)) {
+                    return false;
+                }
+                // with the same parents and local values, world values are the same,
+                // so they need not be resolved again
+                if (!Objects.equals(locals[i], queueParams.getLocalValue(s))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        private void storeState(Spatial spatial, int o) {
+            float[] a = states;
+            Transform t = spatial.getWorldTransform();
+            Vector3f v = t.getTranslation();
+            a[o] = v.x; a[o+1] = v.y; a[o+2] = v.z;
+            Quaternion q = t.getRotation();
+            a[o+3] = q.getX(); a[o+4] = q.getY(); a[o+5] = q.getZ(); a[o+6] = q.getW();
+            v = t.getScale();
+            a[o+7] = v.x; a[o+8] = v.y; a[o+9] = v.z;
+            BoundingVolume b = spatial.getWorldBound();
+            if (b instanceof BoundingBox) {
+                BoundingBox box = (BoundingBox)b;
+                a[o+10] = BOX;
+                a[o+14] = box.getXExtent(); a[o+15] = box.getYExtent(); a[o+16] = box.getZExtent();
+            } else if (b instanceof BoundingSphere) {
+                a[o+10] = SPHERE;
+                a[o+14] = ((BoundingSphere)b).getRadius();
+            } else {
+                // other volumes are never considered unchanged
+                a[o+10] = (b == null ? NO_BOUND : OTHER_BOUND);
+            }
+            if (b != null) {
+                v = b.getCenter();
+                a[o+11] = v.x; a[o+12] = v.y; a[o+13] = v.z;
+            }
+        }
+        private boolean stateUnchanged(Spatial spatial, int o) {
+            float[] a = states;
+            Transform t = spatial.getWorldTransform();
+            Vector3f v = t.getTranslation();
+            if (a[o] != v.x || a[o+1] != v.y || a[o+2] != v.z) {
+                return false;
+            }
+            Quaternion q = t.getRotation();
+            if (a[o+3] != q.getX() || a[o+4] != q.getY() || a[o+5] != q.getZ() || a[o+6] != q.getW()) {
+                return false;
+            }
+            v = t.getScale();
+            if (a[o+7] != v.x || a[o+8] != v.y || a[o+9] != v.z) {
+                return false;
+            }
+            BoundingVolume b = spatial.getWorldBound();
+            if (b == null) {
+                return a[o+10] == NO_BOUND;
+            }
+            v = b.getCenter();
+            if (a[o+11] != v.x || a[o+12] != v.y || a[o+13] != v.z) {
+                return false;
+            }
+            if (b instanceof BoundingBox) {
+                BoundingBox box = (BoundingBox)b;
+                return a[o+10] == BOX && a[o+14] == box.getXExtent()
+                    && a[o+15] == box.getYExtent() && a[o+16] == box.getZExtent();
+            }
+            if (b instanceof BoundingSphere) {
+                return a[o+10] == SPHERE && a[o+14] == ((BoundingSphere)b).getRadius();
+            }
+            return false;
+        }
+        public void add(Object item, Queue target, boolean isGeometry) {
+            if (size == items.length) {
+                int n = size*2;
+                items = Arrays.copyOf(items, n);
+                targets = Arrays.copyOf(targets, n);
+                geometry = Arrays.copyOf(geometry, n);
+            }
+            items[size] = item;
+            targets[size] = target;
+            geometry[size++] = isGeometry;
+        }
+        public void splice() {
+            for (int i = 0; i < size; i++) {
+                if (geometry[i]) {
+                    targets[i].queue.add((Geometry)items[i]);
+                } else {
+                    targets[i].lightList.add((Light)items[i]);
+                }
+            }
+        }
+        
+    }
+    
+    private static class WorkerCamera {
+        
+        public final Camera cam = new Camera(1, 1);
+        public long traversal = -1;
+        
+    }
+    
+    /**
+     * Traverses a spatial or a range of a node's children, buffering results.
+     */
+    private class EnqueueTask extends RecursiveAction {
+        
+        private static final byte GEOMETRY = 0, LIGHT = 1, CONTROL = 2, CHILD = 3;
+        
+        private FGRenderContext context;
+        private Spatial spatial;
+        private Node node;
+        private int from, to, depth, planeState;
+        private Object[] items = new Object[16];
+        private Queue[] targets = new Queue[16];
+        private byte[] kinds = new byte[16];
+        private int size = 0;
+        private final ArrayList<EnqueueTask> forked = new ArrayList<>();
+        
+        public void set(FGRenderContext context, Spatial spatial, Node node, int from, int to, int depth, int planeState) {
+            this.context = context;
+            this.spatial = spatial;
+            this.node = node;
+            this.from = from;
+            this.to = to;
+            this.depth = depth;
+            this.planeState = planeState;
+        }
+        
+        @Override
+        protected void compute() {
+            WorkerCamera wc = workerCams.get();
+            if (wc.traversal != traversals) {
+                wc.cam.copyFrom(context.getViewPort().getCamera());
+                wc.traversal = traversals;
+            }
+            Camera cam = wc.cam;
+            if (spatial != null) {
+                cam.setPlaneState(planeState);
+                traverse(cam, spatial, depth);
+            } else {
+                List<Spatial> children = node.getChildren();
+                for (int i = from; i < to; i++) {
+                    cam.setPlaneState(planeState);
+                    traverse(cam, children.get(i), depth);
+                }
+            }
+            for (int i = forked.size()-1; i >= 0; i--) {
+                forked.get(i).join();
+            }
+            forked.clear();
+        }
+        
+        private void traverse(Camera cam, Spatial spatial, int depth) {
+            // check culling
+            if (!spatial.checkCulling(cam)) {
+                return;
+            }
+            // render controls
+            if (runControlRender && spatial.getNumControls() > 0) {
+                if (isControlRenderThreadSafe(spatial)) {
+                    spatial.runControlRender(context.getRenderManager(), context.getViewPort());
+                } else {
+                    add(CONTROL, spatial, null);
+                }
+            }
+            // apply world parameters
+            for (int i = 0; i < worldParams.size(); i++) {
+                worldParams.get(i).apply(spatial);
+            }
+            // get target bucket
+            String value = queueParams.resolve(spatial);
+            if (value == null) {
+                throw new NullPointerException("World render queue value was not calculated correctly.");
+            }
+            Queue queue = queues.get(value);
+            // accumulate lights
+            if (queue != null) {
+                LightList local = spatial.getLocalLightList();
+                for (int i = 0, n = local.size(); i < n; i++) {
+                    add(LIGHT, local.get(i), queue);
+                }
+            }
+            if (spatial instanceof Node) {
+                int camState = cam.getPlaneState();
+                List<Spatial> children = ((Node)spatial).getChildren();
+                int n = children.size();
+                if ((depth < splitDepth && n > 1) || n >= splitSize*2) {
+                    // traverse children in separate tasks
+                    int chunk = (n >= splitSize*2 ? splitSize : 1);
+                    for (int i = 0; i < n; i += chunk) {
+                        EnqueueTask t = obtainTask(context, null, (Node)spatial,
+                                i, Math.min(i+chunk, n), depth+1, camState);
+                        add(CHILD, t, null);
+                        forked.add(t);
+                        t.fork();
+                    }
+                } else for (int i = 0; i < n; i++) {
+                    // restore cam state before queueing children
+                    cam.setPlaneState(camState);
+                    traverse(cam, children.get(i), depth+1);
+                }
+            } else if (queue != null && spatial instanceof Geometry) {
+                Geometry g = (Geometry)spatial;
+                if (g.getMaterial() == null) {
+                    throw new IllegalStateException("No material is set for Geometry: " + g.getName());
+                }
+                add(GEOMETRY, g, queue);
+            }
+        }
+        
+        private void add(byte kind, Object item, Queue target) {
+            if (size == items.length) {
+                int n = size*2;
+                items = Arrays.copyOf(items, n);
+                targets = Arrays.copyOf(targets, n);
+                kinds = Arrays.copyOf(kinds, n);
+            }
+            items[size] = item;
+            targets[size] = target;
+            kinds[size++] = kind;
+        }
+        
+        /**
+         * Applies buffered results in order and releases this task and
+         * all child tasks.
+         */
+        public void merge() {
+            for (int i = 0; i < size; i++) {
+                switch (kinds[i]) {
+                    case GEOMETRY: targets[i].queue.add((Geometry)items[i]); break;
+                    case LIGHT: targets[i].lightList.add((Light)items[i]); break;
+                    case CONTROL: ((Spatial)items[i]).runControlRender(
+                            context.getRenderManager(), context.getViewPort()); break;
+                    case CHILD: ((EnqueueTask)items[i]).merge(); break;
+                }
+                items[i] = null;
+                targets[i] = null;
+            }
+            size = 0;
+            releaseTask(this);
+        }
+        
+    }
+    
     private static class Queue implements Savable {
         
         public static final NullComparator NULL_COMPARATOR = new NullComparator();
@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) 2024, codex
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package codex.renthyl.resources;
+
+import codex.renthyl.debug.GraphEventCapture;
+import codex.renthyl.definitions.ResourceDef;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Ahead-of-time assignment of transient resources to shared render objects.
+ * <p>
+ * For graphs whose layout rarely changes, the lifetimes of resources are
+ * known after culling. Resources of the same compatibility class on the same
+ * thread are treated as intervals and colored so that resources whose lifetimes
+ * do not overlap share a {@link Slot}, which uses the fewest slots possible.
+ * On following frames, each resource first tries the render object last bound
+ * to its slot, which avoids searching the object pool.
+ * <p>
+ * The plan is only a hint: if the slot's object is unavailable or no longer
+ * accepted by the resource definition, allocation falls back to the regular
+ * allocator and the slot is rebound to the result.
+ * <p>
+ * Asynchronous resources are never planned, because their end index is unreliable.
+ * 
+ * @author codex
+ */
+public class AliasingPlan {
+    
+    private static final Slot[] EMPTY = new Slot[0];
+    
+    private Slot[] assignments = EMPTY;
+    private boolean enabled = true;
+    private boolean active = false;
+    private boolean measuring = false;
+    private final Set<RenderObject> measured = Collections.newSetFromMap(new IdentityHashMap<>());
+    
+    // statistics
+    private int plannedResources = 0;
+    private int plannedObjects = 0;
+    private int greedyObjects = -1;
+    private long plannedBytes = 0;
+    private long greedyBytes = -1;
+    
+    /**
+     * Builds a new plan from the resources in the list.
+     * <p>
+     * Should only be called after culling, once all resource lifetimes
+     * are known. The plan becomes active after the current frame, during
+     * which the objects used by the regular allocator are counted for comparison.
+     * 
+     * @param resources resources indexed by world index (elements may be null)
+     */
+    public void build(List<ResourceView> resources) {
+        clear();
+        if (!enabled) {
+            return;
+        }
+        HashMap<GroupKey, ArrayList<ResourceView>> groups = new HashMap<>();
+        for (ResourceView r : resources) {
+            if (r != null && isPlannable(r)) {
+                GroupKey key = new GroupKey(r.getDefinition().getCompatibilityKey(),
+                        r.getLifeTime().getThreadIndex());
+                groups.computeIfAbsent(key, k -> new ArrayList<>()).add(r);
+            }
+        }
+        if (groups.isEmpty()) {
+            return;
+        }
+        assignments = new Slot[resources.size()];
+        PriorityQueue<Slot> open = new PriorityQueue<>((a, b) -> Integer.compare(a.end, b.end));
+        ArrayList<Slot> slots = new ArrayList<>();
+        for (ArrayList<ResourceView> group : groups.values()) {
+            // interval coloring: visiting in order of start index and reusing the
+            // slot that frees earliest yields the minimum number of slots
+            group.sort((a, b) -> Integer.compare(
+                    a.getLifeTime().getStartQueueIndex(), b.getLifeTime().getStartQueueIndex()));
+            open.clear();
+            for (ResourceView r : group) {
+                TimeFrame life = r.getLifeTime();
+                Slot slot = open.peek();
+                if (slot != null && slot.end < life.getStartQueueIndex()) {
+                    open.poll();
+                } else {
+                    slot = new Slot();
+                    slots.add(slot);
+                }
+                slot.end = life.getEndQueueIndex();
+                slot.size = Math.max(slot.size, r.getDefinition().estimateSize());
+                open.add(slot);
+                assignments[r.getIndex()] = slot;
+                plannedResources++;
+            }
+        }
+        plannedObjects = slots.size();
+        for (Slot slot : slots) {
+            plannedBytes += slot.size;
+        }
+        measuring = true;
+    }
+    /**
+     * Clears the plan.
+     */
+    public void clear() {
+        assignments = EMPTY;
+        active = false;
+        measuring = false;
+        measured.clear();
+        plannedResources = 0;
+        plannedObjects = 0;
+        greedyObjects = -1;
+        plannedBytes = 0;
+        greedyBytes = -1;
+    }
+    
+    /**
+     * Gets the slot planned for the resource.
+     * 
+     * @param resource
+     * @return planned slot, or null if the resource is not planned or the plan is not active
+     */
+    public Slot getSlot(ResourceView resource) {
+        if (!active) {
+            return null;
+        }
+        int i = resource.getIndex();
+        if (i >= 0 && i < assignments.length) {
+            return assignments[i];
+        }
+        return null;
+    }
+    /**
+     * Records the object allocated to the resource by the regular allocator
+     * while the plan is being measured.
+     * 
+     * @param resource
+     */
+    public void recordAllocation(ResourceView resource) {
+        if (measuring && resource.getObject() != null) {
+            int i = resource.getIndex();
+            if (i >= 0 && i < assignments.length && assignments[i] != null) {
+                synchronized (measured) {
+                    measured.add(resource.getObject());
+                }
+            }
+        }
+    }
+    /**
+     * Called when rendering of a frame completes.
+     * 
+     * @param cap
+     */
+    public void endFrame(GraphEventCapture cap) {
+        if (measuring) {
+            greedyObjects = measured.size();
+            greedyBytes = 0;
+            for (RenderObject obj : measured) {
+                greedyBytes += obj.getSize();
+            }
+            measured.clear();
+            measuring = false;
+            active = true;
+        }
+        if (cap != null && active) {
+            cap.value("aliasPlannedResources", plannedResources);
+            cap.value("aliasPlannedObjects", plannedObjects);
+            cap.value("aliasGreedyObjects", greedyObjects);
+            cap.value("aliasPlannedBytes", plannedBytes);
+            cap.value("aliasGreedyBytes", greedyBytes);
+        }
+    }
+    
+    private boolean isPlannable(ResourceView r) {
+        ResourceDef def = r.getDefinition();
+        return def != null && def.isUseExisting() && !def.isDisposeOnRelease()
+            && def.getCompatibilityKey() != null && r.isUsed() && r.isVirtual()
+            && !r.getLifeTime().isAsync();
+    }
+    
+    /**
+     * Sets whether plans are built.
+     * <p>
+     * default=true
+     * 
+     * @param enabled
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        if (!enabled) {
+            clear();
+        }
+    }
+    
+    /**
+     * Returns true if plans are built.
+     * 
+     * @return
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+    /**
+     * Returns true if the plan is being replayed.
+     * 
+     * @return
+     */
+    public boolean isActive() {
+        return active;
+    }
+    /**
+     * Gets the number of resources assigned a slot by the current plan.
+     * 
+     * @return
+     */
+    public int getPlannedResources() {
+        return plannedResources;
+    }
+    /**
+     * Gets the number of render objects (slots) required by the current plan.
+     * 
+     * @return
+     */
+    public int getPlannedObjects() {
+        return plannedObjects;
+    }
+    /**
+     * Gets the number of distinct render objects the regular allocator used
+     * for the planned resources during the frame the plan was built.
+     * 
+     * @return number of objects, or -1 if not yet measured
+     */
+    public int getGreedyObjects() {
+        return greedyObjects;
+    }
+    /**
+     * Gets the estimated peak memory in bytes required by the current plan.
+     * 
+     * @return 
+     * @see ResourceDef#estimateSize()
+     */
+    public long getPlannedBytes() {
+        return plannedBytes;
+    }
+    /**
+     * Gets the estimated memory in bytes of the distinct render objects the
+     * regular allocator used for the planned resources during the frame the
+     * plan was built.
+     * 
+     * @return number of bytes, or -1 if not yet measured
+     */
+    public long getGreedyBytes() {
+        return greedyBytes;
+    }
+    
+    /**
+     * Holds the render object shared by resources assigned to the same slot.
+     */
+    public static class Slot {
+        
+        private RenderObject object;
+        private int end;
+        private long size;
+        
+        /**
+         * Binds the render object to this slot.
+         * 
+         * @param object
+         */
+        public void bind(RenderObject object) {
+            this.object = object;
+        }
+        
+        /**
+         * Gets the render object last bound to this slot.
+         * 
+         * @return bound object, or null
+         */
+        public RenderObject getObject() {
+            return object;
+        }
+        
+    }
+    
+    private static final class GroupKey {
+        
+        private final Object key;
+        private final int thread;
+        
+        public GroupKey(Object key, int thread) {
+            this.key = key;
+            this.thread = thread;
+        }
+        
+        @Override
+        public int hashCode() {
+            return 31 * key.hashCode() + thread;
+        }
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            final GroupKey other = (GroupKey)obj;
+            return thread == other.thread && key.equals(other.key);
+        }
+        
+    }
+    
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2024, codex
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package codex.renthyl.resources;
+
+import codex.renthyl.definitions.ResourceDef;
+
+/**
+ * Double-buffered resource that persists between frames, for temporal
+ * effects that read the previous frame's result.
+ * <p>
+ * A pass keeps a History and acquires it each frame with
+ * {@link ResourceList#acquireHistory(codex.renthyl.resources.ResourceTicket, codex.renthyl.resources.History)},
+ * which returns this frame's object and optionally assigns it to an output resource.
+ * The previous frame's object is then available from {@link #getPrevious()}. Each
+ * frame, the buffers are swapped instead of copied.
+ * <p>
+ * History objects are managed by the {@link RenderObjectMap}, but are never
+ * placed in an object pool, so they cannot be casually reallocated or aliased.
+ * If a frame completes without the history being acquired, both objects are
+ * disposed and the next frame starts without a previous object.
+ * 
+ * @author codex
+ * @param <T>
+ */
+public class History <T> {
+    
+    private final ResourceDef<T> def;
+    private final RenderObject[] objects = new RenderObject[2];
+    private final Object[] values = new Object[2];
+    private int current = 0;
+    private boolean previousValid = false;
+    private long frame = Long.MIN_VALUE;
+    
+    /**
+     * 
+     * @param def definition used to create and validate the history objects (not null)
+     */
+    public History(ResourceDef<T> def) {
+        this.def = def;
+    }
+    
+    /**
+     * Advances to a new frame.
+     * 
+     * @param frame context frame
+     * @return true if this history was already advanced to the frame
+     */
+    protected boolean advance(long frame) {
+        if (this.frame == frame) {
+            return true;
+        }
+        if (this.frame == frame-1) {
+            // swap buffers, so that the last frame's object becomes the previous object
+            current = 1-current;
+            previousValid = values[1-current] != null;
+        } else {
+            previousValid = false;
+        }
+        this.frame = frame;
+        return false;
+    }
+    /**
+     * Sets the object for the current frame.
+     * 
+     * @param object
+     * @param value 
+     */
+    protected void setCurrent(RenderObject object, Object value) {
+        objects[current] = object;
+        values[current] = value;
+    }
+    /**
+     * Removes both objects from this history.
+     * 
+     * @param objects array to store removed objects in (length of at least 2)
+     */
+    protected void clear(RenderObject[] objects) {
+        for (int i = 0; i < 2; i++) {
+            objects[i] = this.objects[i];
+            this.objects[i] = null;
+            values[i] = null;
+        }
+        previousValid = false;
+    }
+    
+    /**
+     * Gets this frame's object.
+     * 
+     * @return current object, or null if not yet acquired this frame
+     */
+    public T getCurrent() {
+        return (T)values[current];
+    }
+    /**
+     * Gets the previous frame's object.
+     * 
+     * @return previous object, or null if the history was not acquired last frame
+     */
+    public T getPrevious() {
+        return previousValid ? (T)values[1-current] : null;
+    }
+    /**
+     * Returns true if the previous frame's object is available.
+     * 
+     * @return 
+     */
+    public boolean hasPrevious() {
+        return previousValid;
+    }
+    /**
+     * Gets the render object holding this frame's object.
+     * 
+     * @return 
+     */
+    public RenderObject getCurrentObject() {
+        return objects[current];
+    }
+    /**
+     * 
+     * @return 
+     */
+    public ResourceDef<T> getDefinition() {
+        return def;
+    }
+    /**
+     * Gets the context frame this history was last acquired in.
+     * 
+     * @return 
+     */
+    public long getFrame() {
+        return frame;
+    }
+    
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2024, codex
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package codex.renthyl.resources;
+
+import codex.renthyl.debug.GraphEventCapture;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds render objects cached under string keys between frames.
+ * <p>
+ * Entries are kept in least recently used order. When the entry or byte budget
+ * is exceeded at the end of a frame, the least recently used entries are evicted
+ * until the budget is met. Pinned keys are never evicted or timed out.
+ * <p>
+ * Objects are removed from the cache when taken, so a cached object is expected
+ * to be cached again (usually by a {@link codex.renthyl.modules.cache.CacheWrite})
+ * each frame it remains relevant.
+ * 
+ * @author codex
+ */
+public class ObjectCache {
+    
+    private final LinkedHashMap<String, RenderObject> entries = new LinkedHashMap<>(16, .75f, true);
+    private final HashSet<String> pinned = new HashSet<>();
+    private long byteBudget = 0;
+    private int entryBudget = 0;
+    private long currentBytes = 0;
+    
+    // statistics
+    private int hits = 0;
+    private int misses = 0;
+    private int evictions = 0;
+    private long evictedBytes = 0;
+    
+    /**
+     * Puts the object into the cache at the key.
+     * 
+     * @param key
+     * @param object
+     * @return object previously cached at the key, or null
+     */
+    public RenderObject put(String key, RenderObject object) {
+        RenderObject prev = entries.put(key, object);
+        currentBytes += object.getSize();
+        if (prev != null) {
+            currentBytes -= prev.getSize();
+        }
+        return prev;
+    }
+    /**
+     * Removes and returns the object cached at the key.
+     * 
+     * @param key
+     * @return cached object, or null on a cache miss
+     */
+    public RenderObject take(String key) {
+        RenderObject obj = entries.remove(key);
+        if (obj != null) {
+            currentBytes -= obj.getSize();
+            hits++;
+        } else {
+            misses++;
+        }
+        return obj;
+    }
+    /**
+     * Flushes the cache at the end of a frame.
+     * <p>
+     * Unpinned objects that have timed out are removed, then least recently used
+     * unpinned objects are evicted until both budgets are met.
+     * 
+     * @param removed collects removed objects, which should be disposed
+     * @return number of objects removed by timing out
+     */
+    protected int flush(List<RenderObject> removed) {
+        int expired = 0;
+        for (Iterator<Map.Entry<String, RenderObject>> it = entries.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<String, RenderObject> e = it.next();
+            RenderObject obj = e.getValue();
+            if (!pinned.contains(e.getKey()) && !obj.tickTimeout()) {
+                it.remove();
+                currentBytes -= obj.getSize();
+                removed.add(obj);
+                expired++;
+                continue;
+            }
+            obj.setConstant(false);
+        }
+        if (isOverBudget()) {
+            for (Iterator<Map.Entry<String, RenderObject>> it = entries.entrySet().iterator(); it.hasNext() && isOverBudget();) {
+                Map.Entry<String, RenderObject> e = it.next();
+                if (!pinned.contains(e.getKey())) {
+                    RenderObject obj = e.getValue();
+                    it.remove();
+                    currentBytes -= obj.getSize();
+                    removed.add(obj);
+                    evictions++;
+                    evictedBytes += obj.getSize();
+                }
+            }
+        }
+        return expired;
+    }
+    /**
+     * Pins the key, so that the object cached at it is never evicted or timed out.
+     * 
+     * @param key 
+     */
+    public void pin(String key) {
+        pinned.add(key);
+    }
+    /**
+     * Unpins the key.
+     * 
+     * @param key 
+     */
+    public void unpin(String key) {
+        pinned.remove(key);
+    }
+    /**
+     * Returns true if the key is pinned.
+     * 
+     * @param key
+     * @return 
+     */
+    public boolean isPinned(String key) {
+        return pinned.contains(key);
+    }
+    
+    /**
+     * Called when rendering of a frame completes.
+     * 
+     * @param cap 
+     */
+    public void endFrame(GraphEventCapture cap) {
+        if (cap != null) {
+            cap.value("objectCacheHits", hits);
+            cap.value("objectCacheMisses", misses);
+            cap.value("objectCacheEvictions", evictions);
+            cap.value("objectCacheEvictedBytes", evictedBytes);
+            cap.value("objectCacheEntries", entries.size());
+            cap.value("objectCacheBytes", currentBytes);
+        }
+    }
+    /**
+     * Resets frame statistics.
+     */
+    public void resetStatistics() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+        evictedBytes = 0;
+    }
+    
+    /**
+     * Sets the maximum number of bytes cached objects should occupy.
+     * <p>
+     * Objects of unknown size count as zero bytes.
+     * <p>
+     * default=0 (unlimited)
+     * 
+     * @param byteBudget 
+     * @see RenderObject#getSize()
+     */
+    public void setByteBudget(long byteBudget) {
+        this.byteBudget = byteBudget;
+    }
+    /**
+     * Sets the maximum number of cached objects.
+     * <p>
+     * default=0 (unlimited)
+     * 
+     * @param entryBudget 
+     */
+    public void setEntryBudget(int entryBudget) {
+        this.entryBudget = entryBudget;
+    }
+    
+    /**
+     * Returns true if either budget is exceeded.
+     * 
+     * @return 
+     */
+    public boolean isOverBudget() {
+        return (byteBudget > 0 && currentBytes > byteBudget)
+            || (entryBudget > 0 && entries.size() > entryBudget);
+    }
+    /**
+     * 
+     * @return 
+     */
+    public long getByteBudget() {
+        return byteBudget;
+    }
+    /**
+     * 
+     * @return 
+     */
+    public int getEntryBudget() {
+        return entryBudget;
+    }
+    /**
+     * Gets the estimated number of bytes occupied by cached objects.
+     * 
+     * @return 
+     */
+    public long getCurrentBytes() {
+        return currentBytes;
+    }
+    /**
+     * Gets the cached objects in least recently used order.
+     * 
+     * @return 
+     */
+    public Collection<RenderObject> getObjects() {
+        return entries.values();
+    }
+    /**
+     * Gets the number of cached objects.
+     * 
+     * @return 
+     */
+    public int size() {
+        return entries.size();
+    }
+    /**
+     * Gets the number of cache hits this frame.
+     * 
+     * @return 
+     */
+    public int getHits() {
+        return hits;
+    }
+    /**
+     * Gets the number of cache misses this frame.
+     * 
+     * @return 
+     */
+    public int getMisses() {
+        return misses;
+    }
+    /**
+     * Gets the number of objects evicted to meet the budget this frame.
+     * 
+     * @return 
+     */
+    public int getEvictions() {
+        return evictions;
+    }
+    
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2024, codex
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package codex.renthyl.resources;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Subset of the {@link RenderObject}s tracked by a {@link RenderObjectMap},
+ * indexed by compatibility key.
+ * <p>
+ * Each execution thread allocates from its own arena pool, which is only
+ * modified by that thread during rendering and by the render thread between
+ * frames, so arenas are not threadsafe. The shared pool can be accessed by any
+ * thread at any time.
+ * <p>
+ * Objects may be removed from the map without being removed from the pool until
+ * the next frame boundary, so an object only belongs to this pool if its
+ * {@link RenderObject#getPool() pool} is this pool.
+ * 
+ * @author codex
+ */
+public class ObjectPool {
+    
+    private final int threadIndex;
+    private final boolean concurrent;
+    private final Collection<RenderObject> objects;
+    private final Map<Object, Collection<RenderObject>> index;
+    
+    // statistics
+    private int hits = 0;
+    private int misses = 0;
+    
+    /**
+     * 
+     * @param threadIndex index of the thread owning this pool, or -1 if shared
+     */
+    public ObjectPool(int threadIndex) {
+        this.threadIndex = threadIndex;
+        this.concurrent = threadIndex < 0;
+        if (concurrent) {
+            objects = new ConcurrentLinkedQueue<>();
+            index = new ConcurrentHashMap<>();
+        } else {
+            objects = new ArrayList<>();
+            index = new HashMap<>();
+        }
+    }
+    
+    /**
+     * Adds the render object to this pool.
+     * 
+     * @param object 
+     */
+    public void add(RenderObject object) {
+        object.setPool(this);
+        objects.add(object);
+        Object key = object.getCompatibilityKey();
+        if (key != null) {
+            index.computeIfAbsent(key, k -> concurrent ? new ConcurrentLinkedQueue<>() : new ArrayList<>()).add(object);
+        }
+    }
+    /**
+     * Removes all render objects from this pool.
+     * <p>
+     * Only to be called between frames.
+     */
+    public void clear() {
+        objects.clear();
+        index.clear();
+    }
+    
+    /**
+     * Records an allocation request from this pool's thread that was
+     * satisfied by this pool.
+     */
+    public void hit() {
+        hits++;
+    }
+    /**
+     * Records an allocation request from this pool's thread that was
+     * not satisfied by this pool.
+     */
+    public void miss() {
+        misses++;
+    }
+    /**
+     * Resets the hit and miss counters.
+     */
+    public void resetStatistics() {
+        hits = 0;
+        misses = 0;
+    }
+    
+    /**
+     * Gets all render objects in this pool.
+     * 
+     * @return 
+     */
+    public Collection<RenderObject> getObjects() {
+        return objects;
+    }
+    /**
+     * Gets the render objects in this pool under the compatibility key.
+     * 
+     * @param key
+     * @return compatible objects, or null if none exist
+     */
+    public Collection<RenderObject> getCompatible(Object key) {
+        return index.get(key);
+    }
+    /**
+     * Gets the index of the thread owning this pool.
+     * 
+     * @return thread index, or -1 if this pool is shared
+     */
+    public int getThreadIndex() {
+        return threadIndex;
+    }
+    /**
+     * Returns true if this pool is shared between threads.
+     * 
+     * @return 
+     */
+    public boolean isShared() {
+        return concurrent;
+    }
+    /**
+     * Gets the number of render objects in this pool.
+     * 
+     * @return 
+     */
+    public int size() {
+        return objects.size();
+    }
+    /**
+     * Gets the number of allocation requests satisfied by this pool
+     * during the last render frame.
+     * 
+     * @return 
+     */
+    public int getHits() {
+        return hits;
+    }
+    /**
+     * Gets the number of allocation requests this pool could not satisfy
+     * during the last render frame.
+     * 
+     * @return 
+     */
+    public int getMisses() {
+        return misses;
+    }
+    
+}
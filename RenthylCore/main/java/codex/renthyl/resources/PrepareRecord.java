@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2024, codex
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package codex.renthyl.resources;
+
+import codex.renthyl.definitions.ResourceDef;
+import codex.renthyl.modules.ModuleIndex;
+import java.util.Arrays;
+
+/**
+ * Compact record of the operations a resource user performs on a
+ * {@link ResourceList} while preparing.
+ * <p>
+ * For users whose preparation only depends on the graph layout, the record
+ * can be replayed on following frames with {@link ResourceList#replay(ResourceUser, PrepareRecord)}
+ * instead of running the preparation again. A record is only valid for the layout
+ * version it was recorded under, and is never valid if the user called a
+ * {@link ResourceList} method that cannot be recorded while recording.
+ * 
+ * @author codex
+ */
+public class PrepareRecord {
+    
+    static final byte DECLARE = 0, DECLARE_TEMPORARY = 1, RESERVE = 2,
+            REFERENCE = 3, REFERENCE_OPTIONAL = 4, UNDEFINED = 5;
+            
+    private byte[] ops = new byte[8];
+    private ResourceTicket[] tickets = new ResourceTicket[8];
+    private Object[] args = new Object[8];
+    private ModuleIndex[] indices = new ModuleIndex[8];
+    private int size = 0;
+    private int version = -1;
+    private boolean supported = true;
+    
+    /**
+     * Clears the record for recording.
+     */
+    void begin() {
+        Arrays.fill(tickets, 0, size, null);
+        Arrays.fill(args, 0, size, null);
+        Arrays.fill(indices, 0, size, null);
+        size = 0;
+        version = -1;
+        supported = true;
+    }
+    /**
+     * Completes recording under the layout version.
+     * 
+     * @param version 
+     */
+    void end(int version) {
+        this.version = (supported ? version : -1);
+    }
+    /**
+     * Appends an operation.
+     * 
+     * @param op
+     * @param ticket
+     * @param arg resource definition or user name
+     * @param index module index (may be null)
+     */
+    void add(byte op, ResourceTicket ticket, Object arg, ModuleIndex index) {
+        if (size == ops.length) {
+            int n = size * 2;
+            ops = Arrays.copyOf(ops, n);
+            tickets = Arrays.copyOf(tickets, n);
+            args = Arrays.copyOf(args, n);
+            indices = Arrays.copyOf(indices, n);
+        }
+        ops[size] = op;
+        tickets[size] = ticket;
+        args[size] = arg;
+        indices[size++] = index;
+    }
+    /**
+     * Marks this record as not replayable.
+     */
+    void unsupported() {
+        supported = false;
+    }
+    
+    byte getOp(int i) {
+        return ops[i];
+    }
+    ResourceTicket getTicket(int i) {
+        return tickets[i];
+    }
+    ResourceDef getDefinition(int i) {
+        return (ResourceDef)args[i];
+    }
+    String getUser(int i) {
+        return (String)args[i];
+    }
+    ModuleIndex getIndex(int i) {
+        return indices[i];
+    }
+    
+    /**
+     * Invalidates this record, so that the next preparation is recorded again.
+     */
+    public void invalidate() {
+        version = -1;
+    }
+    
+    /**
+     * Returns true if this record can be replayed under the layout version.
+     * 
+     * @param version
+     * @return 
+     */
+    public boolean isValid(int version) {
+        return this.version >= 0 && this.version == version;
+    }
+    /**
+     * Gets the number of recorded operations.
+     * 
+     * @return 
+     */
+    public int size() {
+        return size;
+    }
+    
+}
@@ -31,11 +31,16 @@ package codex.renthyl.resources;
 import codex.renthyl.modules.ModuleIndex;
 import codex.renthyl.definitions.ResourceDef;
 import com.jme3.util.NativeObject;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 /**
  * Handles a raw object used for rendering processes within a FrameGraph.
+ * <p>
+ * The allocation state is held in a single atomic word of flags, so that
+ * threads can claim objects for inspection with one compare-and-set, without
+ * monitors. An object is free only when no flags are set.
  * 
  * @author codex
  * @param <T>
@@ -45,19 +50,40 @@ public class RenderObject <T> {
     private static final Consumer<Object> DEFAULT = object -> {};
     private static final Consumer<NativeObject> NATIVE = object -> object.dispose();
     
+    /**
+     * Flag set while the object is acquired by a resource.
+     */
+    public static final int ACQUIRED = 1;
+    /**
+     * Flag set while the object is constant for the rest of the frame.
+     */
+    public static final int CONSTANT = 1 << 1;
+    /**
+     * Flag set while a thread is inspecting the object for reallocation.
+     */
+    public static final int INSPECTING = 1 << 2;
+    /**
+     * Flag set while a thread holds the object as a reallocation candidate.
+     */
+    public static final int RESERVED = 1 << 3;
+    
     private static long nextId = 0;
     
     private final long id;
+    private final Long key;
     private final T object;
-    private final LinkedList<Reservation> reservations = new LinkedList<>();
+    private final ArrayList<Reservation> reservations = new ArrayList<>();
+    private int numReservations = 0;
     private int timeoutDuration;
     private int timeout = 0;
-    private boolean acquired = false;
-    private boolean constant = false;
-    private boolean inspect = false;
-    private boolean prioritized = false;
+    private final AtomicInteger state = new AtomicInteger(0);
     private final boolean allowCasualAllocation;
     private final boolean allowReservations;
+    private final Object compatibilityKey;
+    private final long size;
+    private long lastAcquired = -1;
+    private volatile ObjectPool pool;
+    private volatile int arenaHint = -1;
     private Consumer disposer;
     
     /**
@@ -68,6 +94,7 @@ public class RenderObject <T> {
      */
     public RenderObject(ResourceDef<T> def, T object, int timeout) {
         this.id = nextId++;
+        this.key = id;
         if (object == null) {
             throw new NullPointerException("Object cannot be null.");
         }
@@ -75,6 +102,8 @@ public class RenderObject <T> {
         this.timeoutDuration = def.getStaticTimeout();
         this.allowCasualAllocation = def.isAllowCasualAllocation();
         this.allowReservations = def.isAllowReservations();
+        this.compatibilityKey = def.getCompatibilityKey();
+        this.size = Math.max(def.estimateSize(), 0);
         if (this.timeoutDuration < 0) {
             this.timeoutDuration = timeout;
         }
@@ -88,75 +117,70 @@ public class RenderObject <T> {
     }
     
     /**
-     * Starts an inspection of this object.
+     * Claims this object for inspection if it is free.
      * <p>
-     * This blocks other threads from inspecting this object at the same time.
-     * Often, other threads will save this object for later, and continue inspecting
-     * other objects in the meantime.
-     * <p>
-     * Note that this is not a threadsafe operation, meaning some threads may "escape"
-     * this check. A synchronized block should be used to catch these exceptions.
+     * While claimed, no other thread can claim, acquire for reallocation, or
+     * hold this object. The claim must be ended by either acquiring this object,
+     * {@link #hold() holding} it, or {@link #unclaim() unclaiming} it.
      * 
-     * @see #endInspect()
+     * @return true if this object was claimed
      */
-    public void startInspect() {
-        inspect = true;
+    public boolean tryClaim() {
+        return state.compareAndSet(0, INSPECTING);
     }
     /**
-     * Ends an inspection of this object.
+     * Converts an inspection claim into a hold, which keeps this object
+     * claimed as a candidate for later reallocation.
      * 
-     * @see #startInspect()
+     * @return true if the hold was made
      */
-    public void endInspect() {
-        inspect = false;
+    public boolean hold() {
+        return state.compareAndSet(INSPECTING, RESERVED);
     }
     /**
-     * Returns true if this object is currently being inspected.
-     * 
-     * @return 
-     */
-    public boolean isInspect() {
-        return inspect;
-    }
-    
-    /**
-     * Marks this RenderObject as priorized, but not officially claimed, by a thread.
-     * <p>
-     * This will block threads from attempting to reallocate this as an indirect
-     * resource.
-     * 
-     * @param prioritized 
+     * Ends an inspection claim or hold without acquiring this object.
      */
-    public void setPrioritized(boolean prioritized) {
-        this.prioritized = prioritized;
+    public void unclaim() {
+        int s;
+        do {
+            s = state.get();
+        } while (!state.compareAndSet(s, s & ~(INSPECTING | RESERVED)));
     }
     /**
-     * Returns true if this RenderObject is prioritized.
+     * Returns true if another thread is currently inspecting or holding this object.
      * 
      * @return 
      */
-    public boolean isPrioritized() {
-        return prioritized;
+    public boolean isClaimed() {
+        return (state.get() & (INSPECTING | RESERVED)) != 0;
     }
     
     /**
      * Acquires this render object for use.
+     * <p>
+     * Any inspection claim or hold is converted into the acquisition.
      */
     public void acquire() {
-        if (acquired) {
-            throw new IllegalStateException("Already acquired.");
-        }
+        int s;
+        do {
+            s = state.get();
+            if ((s & ACQUIRED) != 0) {
+                throw new IllegalStateException("Already acquired.");
+            }
+        } while (!state.compareAndSet(s, (s & CONSTANT) | ACQUIRED));
         timeout = timeoutDuration;
-        acquired = true;
     }
     /**
      * Releases this render object from use.
      */
     public void release() {
-        if (!acquired) {
-            throw new IllegalStateException("Already released.");
-        }
-        acquired = false;
+        int s;
+        do {
+            s = state.get();
+            if ((s & ACQUIRED) == 0) {
+                throw new IllegalStateException("Already released.");
+            }
+        } while (!state.compareAndSet(s, s & ~ACQUIRED));
     }
     /**
      * Reserves this render object for use at the specified render pass index.
@@ -165,7 +189,11 @@ public class RenderObject <T> {
      */
     public void reserve(ModuleIndex index) {
         if (allowReservations) {
-            reservations.add(new Reservation(index));
+            // reservation records are recycled to avoid per-frame garbage
+            if (numReservations == reservations.size()) {
+                reservations.add(new Reservation());
+            }
+            reservations.get(numReservations++).set(index);
         }
     }
     /**
@@ -173,7 +201,7 @@ public class RenderObject <T> {
      */
     public void dispose() {
         // ensure this cannot be acquired
-        acquired = true;
+        state.set(ACQUIRED);
         disposer.accept(object);
     }
     
@@ -184,8 +212,8 @@ public class RenderObject <T> {
      * @return true if a reservation was claimed.
      */
     public boolean claimReservation(ModuleIndex index) {
-        if (allowReservations) for (Reservation r : reservations) {
-            if (r.claim(index)) return true;
+        if (allowReservations) for (int i = 0; i < numReservations; i++) {
+            if (reservations.get(i).claim(index)) return true;
         }
         return false;
     }
@@ -197,8 +225,8 @@ public class RenderObject <T> {
      * @return true if this object is reserved within the timeframe
      */
     public boolean isReservedWithin(TimeFrame frame) {
-        if (allowReservations) for (Reservation r : reservations) {
-            if (r.violates(frame)) return true;
+        if (allowReservations) for (int i = 0; i < numReservations; i++) {
+            if (reservations.get(i).violates(frame)) return true;
         }
         return false;
     }
@@ -206,7 +234,7 @@ public class RenderObject <T> {
      * Clears all reservations.
      */
     public void clearReservations() {
-        reservations.clear();
+        numReservations = 0;
     }
     
     /**
@@ -227,7 +255,36 @@ public class RenderObject <T> {
      * @param constant 
      */
     public void setConstant(boolean constant) {
-        this.constant = constant;
+        int s;
+        do {
+            s = state.get();
+        } while (!state.compareAndSet(s, constant ? (s | CONSTANT) : (s & ~CONSTANT)));
+    }
+    
+    /**
+     * Sets the pool this object belongs to.
+     * 
+     * @param pool pool, or null if this object belongs to no pool
+     */
+    public void setPool(ObjectPool pool) {
+        this.pool = pool;
+    }
+    /**
+     * Sets the frame this object was last acquired in.
+     * 
+     * @param lastAcquired 
+     */
+    public void setLastAcquired(long lastAcquired) {
+        this.lastAcquired = lastAcquired;
+    }
+    /**
+     * Sets the index of the arena this object should be moved to at the
+     * next frame boundary.
+     * 
+     * @param arenaHint thread index, or -1 for the shared pool
+     */
+    public void setArenaHint(int arenaHint) {
+        this.arenaHint = arenaHint;
     }
     
     /**
@@ -238,6 +295,16 @@ public class RenderObject <T> {
     public long getId() {
         return id;
     }
+    /**
+     * Gets the id of this render object as a boxed key.
+     * <p>
+     * The key is created once, so map lookups using it do not allocate.
+     * 
+     * @return 
+     */
+    public Long getKey() {
+        return key;
+    }
     /**
      * Gets the internal object.
      * 
@@ -252,7 +319,7 @@ public class RenderObject <T> {
      * @return 
      */
     public boolean isAcquired() {
-        return acquired;
+        return (state.get() & ACQUIRED) != 0;
     }
     /**
      * Returns true if this render object is constant.
@@ -260,7 +327,16 @@ public class RenderObject <T> {
      * @return 
      */
     public boolean isConstant() {
-        return constant;
+        return (state.get() & CONSTANT) != 0;
+    }
+    /**
+     * Returns true if no state flags are set, meaning this object can be
+     * claimed for reallocation.
+     * 
+     * @return 
+     */
+    public boolean isFree() {
+        return state.get() == 0;
     }
     /**
      * Returns true if this object can be reallocated casually
@@ -279,6 +355,49 @@ public class RenderObject <T> {
     public boolean isAllowReservations() {
         return allowReservations;
     }
+    /**
+     * Gets the compatibility key of the definition that created this object.
+     * 
+     * @return compatibility key, or null if this object is not indexed
+     * @see ResourceDef#getCompatibilityKey()
+     */
+    public Object getCompatibilityKey() {
+        return compatibilityKey;
+    }
+    /**
+     * Gets the estimated size of the internal object in bytes.
+     * 
+     * @return 
+     * @see ResourceDef#estimateSize()
+     */
+    public long getSize() {
+        return size;
+    }
+    /**
+     * Gets the frame this object was last acquired in.
+     * 
+     * @return frame number, or -1 if never acquired through allocation
+     */
+    public long getLastAcquired() {
+        return lastAcquired;
+    }
+    /**
+     * Gets the pool this object belongs to.
+     * 
+     * @return pool, or null
+     */
+    public ObjectPool getPool() {
+        return pool;
+    }
+    /**
+     * Gets the index of the arena this object should be moved to at the
+     * next frame boundary.
+     * 
+     * @return thread index, or -1 for the shared pool
+     */
+    public int getArenaHint() {
+        return arenaHint;
+    }
     
     /**
      * Gets the next unique id of RenderObjects.
@@ -291,11 +410,12 @@ public class RenderObject <T> {
     
     private static class Reservation {
         
-        private final ModuleIndex index;
+        private ModuleIndex index;
         private boolean claimed = false;
         
-        public Reservation(ModuleIndex index) {
+        public void set(ModuleIndex index) {
             this.index = index;
+            this.claimed = false;
         }
         
         public boolean claim(ModuleIndex index) {
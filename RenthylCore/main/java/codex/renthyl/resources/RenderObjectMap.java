@@ -32,10 +32,15 @@ import codex.renthyl.FGPipelineContext;
 import codex.renthyl.modules.ModuleIndex;
 import codex.renthyl.debug.GraphEventCapture;
 import codex.renthyl.definitions.ResourceDef;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Manages creation, reallocation, and disposal of {@link RenderObject}s.
@@ -44,9 +49,26 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class RenderObjectMap {
     
+    private static final Comparator<RenderObject> LEAST_RECENTLY_ACQUIRED = (a, b) -> {
+        int c = Long.compare(a.getLastAcquired(), b.getLastAcquired());
+        return c != 0 ? c : Long.compare(a.getId(), b.getId());
+    };
+    
     private final FGPipelineContext context;
     private final Map<Long, RenderObject> objectMap = new ConcurrentHashMap<>();
+    private final ObjectPool shared = new ObjectPool(-1);
+    private volatile ObjectPool[] arenas = new ObjectPool[0];
+    private volatile boolean poolsChanged = false;
+    private final AtomicLong currentBytes = new AtomicLong(0);
+    private final ArrayList<RenderObject> evictionCandidates = new ArrayList<>();
+    private final Map<Object, Memo> memos = new ConcurrentHashMap<>();
+    private final Set<History> histories = ConcurrentHashMap.newKeySet();
+    private final RenderObject[] removedHistory = new RenderObject[2];
     private int staticTimeout = 1;
+    private long memoryBudget = 0;
+    private long frame = 0;
+    private long contextFrame = 0;
+    private boolean useCompatibilityIndex = true;
     
     // statistics
     private int totalAllocations = 0;
@@ -57,6 +79,16 @@ public class RenderObjectMap {
     private int objectsReallocated = 0;
     private int totalObjects = 0;
     private int flushedObjects = 0;
+    private int objectInspections = 0;
+    private int plannedReallocations = 0;
+    private long peakBytes = 0;
+    private long evictedBytes = 0;
+    private int evictedObjects = 0;
+    private final AtomicInteger memoSkips = new AtomicInteger(0);
+    private final AtomicLong memoSavedNanos = new AtomicLong(0);
+    private int skippedPasses = 0;
+    private long savedNanos = 0;
+    private int activeHistories = 0;
     
     /**
      * 
@@ -67,25 +99,90 @@ public class RenderObjectMap {
         this.context = context;
     }
     
-    private <T> RenderObject<T> create(ResourceDef<T> def) {
-        return create(def, def.createResource());
+    private <T> RenderObject<T> create(ResourceDef<T> def, ObjectPool pool) {
+        return create(def, def.createResource(), pool);
     }
-    private <T> RenderObject<T> create(ResourceDef<T> def, T value) {
+    private <T> RenderObject<T> create(ResourceDef<T> def, T value, ObjectPool pool) {
         RenderObject obj = new RenderObject(def, value, staticTimeout);
-        objectMap.put(obj.getId(), obj);
+        objectMap.put(obj.getKey(), obj);
+        pool.add(obj);
+        long bytes = currentBytes.addAndGet(obj.getSize());
+        if (bytes > peakBytes) {
+            peakBytes = bytes;
+        }
         return obj;
     }
+    private ObjectPool arena(int thread) {
+        ObjectPool[] a = arenas;
+        if (thread < a.length) {
+            return a[thread];
+        }
+        synchronized (this) {
+            if (thread >= arenas.length) {
+                ObjectPool[] grown = new ObjectPool[thread+1];
+                System.arraycopy(arenas, 0, grown, 0, arenas.length);
+                for (int i = arenas.length; i < grown.length; i++) {
+                    grown[i] = new ObjectPool(i);
+                }
+                arenas = grown;
+            }
+            return arenas[thread];
+        }
+    }
+    private ObjectPool getHomePool(TimeFrame lifetime) {
+        if (lifetime.isAsync() || lifetime.getThreadIndex() < 0) {
+            return shared;
+        }
+        return arena(lifetime.getThreadIndex());
+    }
+    private ObjectPool getNextPool(ObjectPool pool) {
+        // arenas fall back on the shared pool
+        return pool != shared ? shared : null;
+    }
+    private void markAllocated(ResourceView resource, RenderObject obj) {
+        TimeFrame life = resource.getLifeTime();
+        obj.setArenaHint(life.isAsync() ? -1 : life.getThreadIndex());
+        obj.setLastAcquired(frame);
+    }
+    private <T> void reallocated(ResourceView<T> resource, RenderObject obj, T r,
+            ObjectPool home, ObjectPool pool, GraphEventCapture cap) {
+        resource.setObject(obj, r);
+        if (cap != null) cap.reallocateObject(obj.getId(), resource.getIndex(),
+                resource.getResource().getClass().getSimpleName());
+        objectsReallocated++;
+        if (pool == home) {
+            home.hit();
+        } else {
+            home.miss();
+        }
+        markAllocated(resource, obj);
+    }
+    private void disposeObject(RenderObject obj, GraphEventCapture cap) {
+        if (cap != null) cap.disposeObject(obj.getId());
+        obj.dispose();
+        currentBytes.addAndGet(-obj.getSize());
+    }
+    private void removeFromPool(RenderObject obj) {
+        // the object is removed from the pool's collections at the next frame boundary
+        obj.setPool(null);
+        poolsChanged = true;
+    }
     private boolean isAvailable(RenderObject object) {
-        return !object.isAcquired() && !object.isConstant();
+        return object.isFree();
     }
     
     /**
      * Allocates a render object to the ResourceView.
      * <p>
      * First, if this resource holds an object id, then corresponding render object,
-     * if it still exists, will be tried for reallocation. If that fails, each render object
-     * will be tried for reallocation. Finally, if that fails, a new render object
-     * will be created and allocated to the resource.
+     * if it still exists, will be tried for reallocation. If that fails, render objects
+     * sharing the definition's compatibility key are tried for direct reallocation, then
+     * each remaining render object will be tried for reallocation. Objects are searched
+     * for in the arena of the resource's thread first, then in the shared pool. Finally,
+     * if that fails, a new render object will be created in the arena and allocated to
+     * the resource.
+     * <p>
+     * Resources with asynchronous lifetimes only use the shared pool.
      * 
      * @param <T>
      * @param resource 
@@ -99,6 +196,31 @@ public class RenderObjectMap {
             allocateSync(resource);
         }
     }
+    /**
+     * Allocates a render object to the ResourceView, first trying the render object
+     * bound to the planned slot.
+     * <p>
+     * The planned object is not used if it does not allow casual allocation, or if
+     * the resource's ticket requests a specific object. If the planned object cannot
+     * be allocated, the object is allocated normally and bound to the slot.
+     * 
+     * @param <T>
+     * @param resource
+     * @param slot planned slot (may be null)
+     * @param async 
+     * @see AliasingPlan
+     */
+    public <T> void allocate(ResourceView<T> resource, AliasingPlan.Slot slot, boolean async) {
+        if (slot == null) {
+            allocate(resource, async);
+            return;
+        }
+        if (!resource.isUndefined() && allocatePlanned(resource, slot, async)) {
+            return;
+        }
+        allocate(resource, async);
+        slot.bind(resource.getObject());
+    }
     /**
      * Allocates a render object from the object cache.
      * 
@@ -108,8 +230,8 @@ public class RenderObjectMap {
      * @param key
      * @return true if allocation successful
      */
-    public <T> boolean allocateFromCache(Map<String, RenderObject> cache, ResourceView<T> resource, String key) {
-        RenderObject obj = cache.remove(key);
+    public <T> boolean allocateFromCache(ObjectCache cache, ResourceView<T> resource, String key) {
+        RenderObject obj = cache.take(key);
         if (obj == null) {
             return false;
         }
@@ -117,10 +239,57 @@ public class RenderObjectMap {
         // for permission. The user should be aware of the types, and the system
         // will fail gracefully if not.
         resource.setObject(obj);
-        objectMap.put(obj.getId(), obj);
+        objectMap.put(obj.getKey(), obj);
+        shared.add(obj);
+        markAllocated(resource, obj);
         return true;
     }
     
+    private <T> boolean allocatePlanned(ResourceView<T> resource, AliasingPlan.Slot slot, boolean async) {
+        RenderObject obj = slot.getObject();
+        ResourceDef<T> def = resource.getDefinition();
+        if (obj == null || def == null || !def.isUseExisting() || objectMap.get(obj.getKey()) != obj
+                || !obj.isAllowCasualAllocation()) {
+            return false;
+        }
+        // a specific object requested by the ticket takes precedence over the plan,
+        // so leave it to normal allocation, which tries the specific object first
+        if (resource.getTicket().getObjectKey() != null) {
+            return false;
+        }
+        if (async) {
+            if (!obj.tryClaim()) {
+                return false;
+            }
+            boolean applied = false;
+            try {
+                applied = applyPlanned(resource, obj);
+            } finally {
+                if (!applied) {
+                    obj.unclaim();
+                }
+            }
+            return applied;
+        }
+        return isAvailable(obj) && applyPlanned(resource, obj);
+    }
+    private <T> boolean applyPlanned(ResourceView<T> resource, RenderObject obj) {
+        if (!obj.isReservedWithin(resource.getLifeTime())) {
+            T r = resource.getDefinition().applyDirectResource(obj.getObject());
+            if (r != null) {
+                resource.setObject(obj, r);
+                GraphEventCapture cap = context.getEventCapture();
+                if (cap != null) cap.reallocateObject(obj.getId(), resource.getIndex(),
+                        resource.getResource().getClass().getSimpleName());
+                totalAllocations++;
+                objectsReallocated++;
+                plannedReallocations++;
+                markAllocated(resource, obj);
+                return true;
+            }
+        }
+        return false;
+    }
     private <T> void allocateSync(ResourceView<T> resource) {
         if (resource.isUndefined()) {
             throw new IllegalArgumentException("Cannot allocate object to an undefined resource.");
@@ -136,52 +305,79 @@ public class RenderObjectMap {
             if (allocateSpecificSync(resource)) {
                 return;
             }
-            // find object to allocate
+            TimeFrame life = resource.getLifeTime();
+            ObjectPool home = getHomePool(life);
+            Object key = useCompatibilityIndex ? def.getCompatibilityKey() : null;
             T indirectRes = null;
             RenderObject indirectObj = null;
-            for (RenderObject obj : objectMap.values()) {
-                if (isAvailable(obj) && obj.isAllowCasualAllocation()
-                        && !obj.isReservedWithin(resource.getLifeTime())) {
-                    // try applying a direct resource
-                    T r = def.applyDirectResource(obj.getObject());
-                    if (r != null) {
-                        resource.setObject(obj, r);
-                        if (cap != null) cap.reallocateObject(obj.getId(), resource.getIndex(),
-                                resource.getResource().getClass().getSimpleName());
-                        objectsReallocated++;
-                        return;
+            ObjectPool indirectPool = null;
+            for (ObjectPool pool = home; pool != null; pool = getNextPool(pool)) {
+                // try objects indexed under the same compatibility key, which are likely direct matches
+                Collection<RenderObject> compatible = (key != null ? pool.getCompatible(key) : null);
+                if (compatible != null) for (RenderObject obj : compatible) {
+                    if (obj.getPool() == pool && isAvailable(obj) && obj.isAllowCasualAllocation()
+                            && !obj.isReservedWithin(life)) {
+                        objectInspections++;
+                        T r = def.applyDirectResource(obj.getObject());
+                        if (r != null) {
+                            reallocated(resource, obj, r, home, pool, cap);
+                            return;
+                        }
                     }
-                    // then try applying an indirect resource, which is not as desirable
-                    if (indirectObj == null) {
-                        indirectRes = def.applyIndirectResource(obj.getObject());
-                        if (indirectRes != null) {
-                            indirectObj = obj;
+                }
+                // find object to allocate
+                for (RenderObject obj : pool.getObjects()) {
+                    if (obj.getPool() == pool && isAvailable(obj) && obj.isAllowCasualAllocation()
+                            && !obj.isReservedWithin(life)) {
+                        // try applying a direct resource, unless it was already tried above
+                        T r = null;
+                        if (key == null || obj.getCompatibilityKey() == null) {
+                            objectInspections++;
+                            r = def.applyDirectResource(obj.getObject());
+                        }
+                        if (r != null) {
+                            reallocated(resource, obj, r, home, pool, cap);
+                            return;
+                        }
+                        // then try applying an indirect resource, which is not as desirable
+                        if (indirectObj == null) {
+                            indirectRes = def.applyIndirectResource(obj.getObject());
+                            if (indirectRes != null) {
+                                indirectObj = obj;
+                                indirectPool = pool;
+                            }
                         }
                     }
                 }
             }
             // allocate indirect object
             if (indirectObj != null) {
-                resource.setObject(indirectObj, indirectRes);
-                if (cap != null) cap.reallocateObject(indirectObj.getId(), resource.getIndex(),
-                        resource.getResource().getClass().getSimpleName());
-                objectsReallocated++;
+                reallocated(resource, indirectObj, indirectRes, home, indirectPool, cap);
                 return;
             }
         }
         // create new object
-        resource.setObject(create(def));
+        createObject(resource, def, cap);
+    }
+    private <T> void createObject(ResourceView<T> resource, ResourceDef<T> def, GraphEventCapture cap) {
+        ObjectPool home = getHomePool(resource.getLifeTime());
+        resource.setObject(create(def, home));
         if (cap != null) cap.createObject(resource.getObject().getId(),
                 resource.getIndex(), resource.getResource().getClass().getSimpleName());
         objectsCreated++;
+        if (def.isUseExisting()) {
+            home.miss();
+        }
+        markAllocated(resource, resource.getObject());
     }
     private <T> boolean allocateSpecificSync(ResourceView<T> resource) {
         GraphEventCapture cap = context.getEventCapture();
         ResourceDef<T> def = resource.getDefinition();
-        long id = resource.getTicket().getObjectId();
-        if (id < 0) return false;
+        Long key = resource.getTicket().getObjectKey();
+        if (key == null) return false;
+        long id = key;
         // allocate reserved object
-        RenderObject obj = objectMap.get(id);        
+        RenderObject obj = objectMap.get(key);
         if (obj != null) {
             if (cap != null) cap.attemptReallocation(id, resource.getIndex());
             if (isAvailable(obj) && (obj.claimReservation(resource.getProducer().getIndex())
@@ -197,6 +393,7 @@ public class RenderObjectMap {
                             resource.getResource().getClass().getSimpleName());
                     completedReservations++;
                     objectsReallocated++;
+                    markAllocated(resource, obj);
                     return true;
                 }
             }
@@ -216,115 +413,149 @@ public class RenderObjectMap {
             if (allocateSpecificAsync(resource)) {
                 return;
             }
-            // find object to allocate
+            TimeFrame life = resource.getLifeTime();
+            ObjectPool home = getHomePool(life);
+            Object key = useCompatibilityIndex ? def.getCompatibilityKey() : null;
             T indirectRes = null;
             RenderObject indirectObj = null;
-            LinkedList<RenderObject> skipped = new LinkedList<>();
-            Iterator<RenderObject> it = objectMap.values().iterator();
-            boolean next;
-            while ((next = it.hasNext()) || !skipped.isEmpty()) {
-                RenderObject obj;
-                if (next) obj = it.next();
-                else obj = skipped.removeFirst();
-                if (isAvailable(obj) && obj.isAllowCasualAllocation()) {
-                    if ((next || !skipped.isEmpty()) && obj.isInspect()) {
-                        // Inspect this object later, because something else is inspecting it.
-                        // This makes this thread try other objects first, instead of waiting
-                        // for a synchronized block to be available.
-                        skipped.addLast(obj);
-                        continue;
-                    }
-                    // If multiple threads do happen to be here at the same time, ensure only one
-                    // will inspect at a time.
-                    synchronized (obj) {
-                        // The thread we were waiting on may have claimed the object, so check again
-                        // if it is available.
-                        if (!isAvailable(obj)) {
-                            continue;
+            ObjectPool indirectPool = null;
+            // object claimed for inspection, which must be unclaimed if a definition throws
+            RenderObject inspected = null;
+            boolean allocated = false;
+            try {
+                // Objects claimed by other threads are skipped instead of waited on. If any
+                // were skipped, one more pass is made in case they have become free since.
+                for (int pass = 0; pass < 2; pass++) {
+                    boolean skipped = false;
+                    for (ObjectPool pool = home; pool != null; pool = getNextPool(pool)) {
+                        // try objects indexed under the same compatibility key, which are likely direct matches
+                        Collection<RenderObject> compatible = (key != null ? pool.getCompatible(key) : null);
+                        if (compatible != null) for (RenderObject obj : compatible) {
+                            if (obj.getPool() != pool || !obj.isAllowCasualAllocation()) {
+                                continue;
+                            }
+                            if (!obj.tryClaim()) {
+                                skipped |= obj.isClaimed();
+                                continue;
+                            }
+                            inspected = obj;
+                            if (applyDirectAsync(resource, obj, home, pool, cap)) {
+                                allocated = true;
+                                return;
+                            }
+                            obj.unclaim();
+                            inspected = null;
                         }
-                        obj.startInspect();
-                        if (!obj.isReservedWithin(resource.getLifeTime())) {
+                        // find object to allocate
+                        for (RenderObject obj : pool.getObjects()) {
+                            if (obj.getPool() != pool || !obj.isAllowCasualAllocation()) {
+                                continue;
+                            }
+                            boolean direct = key == null || obj.getCompatibilityKey() == null;
+                            if (!direct && indirectObj != null) {
+                                // nothing left to try on this object
+                                continue;
+                            }
+                            if (!obj.tryClaim()) {
+                                skipped |= obj.isClaimed();
+                                continue;
+                            }
+                            inspected = obj;
                             // try applying a direct resource
-                            T r = def.applyDirectResource(obj.getObject());
-                            if (r != null) {
-                                resource.setObject(obj, r);
-                                if (cap != null) cap.reallocateObject(obj.getId(), resource.getIndex(),
-                                        resource.getResource().getClass().getSimpleName());
-                                objectsReallocated++;
-                                obj.endInspect();
+                            if (direct && applyDirectAsync(resource, obj, home, pool, cap)) {
+                                allocated = true;
                                 return;
                             }
                             // then try applying an indirect resource, which is not as desirable
-                            if (!obj.isPrioritized() && indirectObj == null) {
+                            if (indirectObj == null && !obj.isReservedWithin(life)) {
                                 indirectRes = def.applyIndirectResource(obj.getObject());
-                                if (indirectRes != null) {
+                                // hold the object so that no other thread can take it in the meantime
+                                if (indirectRes != null && obj.hold()) {
                                     indirectObj = obj;
-                                    // make sure no other thread attempts to apply this indirectly at the same time
-                                    obj.setPrioritized(true);
-                                    obj.endInspect();
+                                    indirectPool = pool;
+                                    inspected = null;
                                     continue;
                                 }
                             }
+                            obj.unclaim();
+                            inspected = null;
                         }
-                        obj.endInspect();
+                    }
+                    if (!skipped || indirectObj != null) {
+                        break;
                     }
                 }
-            }
-            // allocate indirect object
-            if (indirectObj != null) synchronized (indirectObj) {
-                // disable priority flag
-                indirectObj.setPrioritized(false);
-                // check again if object is available
-                if (isAvailable(indirectObj)) {
-                    indirectObj.startInspect();
-                    resource.setObject(indirectObj, indirectRes);
-                    if (cap != null) cap.reallocateObject(indirectObj.getId(), resource.getIndex(),
-                            resource.getResource().getClass().getSimpleName());
-                    objectsReallocated++;
-                    indirectObj.endInspect();
-                } else {
-                    // In the unlikely event that another thread "steals" this object
-                    // from this thread, try allocating again.
-                    allocateAsync(resource);
+                // allocate indirect object
+                if (indirectObj != null) {
+                    RenderObject obj = indirectObj;
+                    indirectObj = null;
+                    inspected = obj;
+                    reallocated(resource, obj, indirectRes, home, indirectPool, cap);
+                    allocated = true;
+                    return;
+                }
+            } finally {
+                // release claims held by this search, including when a definition throws
+                if (inspected != null && !allocated) {
+                    inspected.unclaim();
+                }
+                if (indirectObj != null) {
+                    indirectObj.unclaim();
                 }
-                return;
             }
         }
         // create new object
-        resource.setObject(create(def));
-        if (cap != null) cap.createObject(resource.getObject().getId(),
-                resource.getIndex(), resource.getResource().getClass().getSimpleName());
-        objectsCreated++;
+        createObject(resource, def, cap);
+    }
+    private <T> boolean applyDirectAsync(ResourceView<T> resource, RenderObject obj,
+            ObjectPool home, ObjectPool pool, GraphEventCapture cap) {
+        if (obj.isReservedWithin(resource.getLifeTime())) {
+            return false;
+        }
+        objectInspections++;
+        T r = resource.getDefinition().applyDirectResource(obj.getObject());
+        if (r != null) {
+            reallocated(resource, obj, r, home, pool, cap);
+            return true;
+        }
+        return false;
     }
     private <T> boolean allocateSpecificAsync(ResourceView<T> resource) {
         GraphEventCapture cap = context.getEventCapture();
         ResourceDef<T> def = resource.getDefinition();
-        long id = resource.getTicket().getObjectId();
-        if (id < 0) return false;
+        Long key = resource.getTicket().getObjectKey();
+        if (key == null) return false;
+        long id = key;
         // allocate reserved object
-        RenderObject obj = objectMap.get(id);        
+        RenderObject obj = objectMap.get(key);
         if (obj != null) {
             if (cap != null) cap.attemptReallocation(id, resource.getIndex());
-            if (isAvailable(obj)) synchronized (obj) {
-                obj.startInspect();
-                if (obj.claimReservation(resource.getProducer().getIndex())
-                        || !obj.isReservedWithin(resource.getLifeTime())) {
-                    // reserved object is only applied if it is accepted by the definition
-                    T r = def.applyDirectResource(obj.getObject());
-                    if (r == null) {
-                        r = def.applyIndirectResource(obj.getObject());
+            if (obj.tryClaim()) {
+                boolean applied = false;
+                try {
+                    if (obj.claimReservation(resource.getProducer().getIndex())
+                            || !obj.isReservedWithin(resource.getLifeTime())) {
+                        // reserved object is only applied if it is accepted by the definition
+                        T r = def.applyDirectResource(obj.getObject());
+                        if (r == null) {
+                            r = def.applyIndirectResource(obj.getObject());
+                        }
+                        if (r != null) {
+                            resource.setObject(obj, r);
+                            if (cap != null) cap.reallocateObject(id, resource.getIndex(),
+                                    resource.getResource().getClass().getSimpleName());
+                            completedReservations++;
+                            objectsReallocated++;
+                            markAllocated(resource, obj);
+                            applied = true;
+                            return true;
+                        }
                     }
-                    if (r != null) {
-                        resource.setObject(obj, r);
-                        if (cap != null) cap.reallocateObject(id, resource.getIndex(),
-                                resource.getResource().getClass().getSimpleName());
-                        completedReservations++;
-                        objectsReallocated++;
-                        obj.endInspect();
-                        return true;
+                } finally {
+                    if (!applied) {
+                        obj.unclaim();
                     }
                 }
-                obj.endInspect();
             }
         }
         failedReservations++;
@@ -344,6 +575,17 @@ public class RenderObjectMap {
      * @return true if the referenced object exists
      */
     public boolean reserve(long objectId, ModuleIndex index) {
+        return reserve(Long.valueOf(objectId), index);
+    }
+    /**
+     * Reserves the render object at the boxed key, which avoids boxing the id.
+     * 
+     * @param objectId key of the object to reserve
+     * @param index index to reserve the object at
+     * @return true if the referenced object exists
+     * @see RenderObject#getKey()
+     */
+    public boolean reserve(Long objectId, ModuleIndex index) {
         RenderObject obj = objectMap.get(objectId);
         if (obj != null) {
             obj.reserve(index);
@@ -361,14 +603,12 @@ public class RenderObjectMap {
      * @param resource 
      */
     public void dispose(ResourceView resource) {
-        long id = resource.getTicket().getObjectId();
-        if (id >= 0) {
-            RenderObject obj = objectMap.remove(id);
+        Long key = resource.getTicket().getObjectKey();
+        if (key != null) {
+            RenderObject obj = objectMap.remove(key);
             if (obj != null) {
-                obj.dispose();
-                if (context.getEventCapture() != null) {
-                    context.getEventCapture().disposeObject(id);
-                }
+                removeFromPool(obj);
+                disposeObject(obj, context.getEventCapture());
             }
         }
     }
@@ -380,10 +620,15 @@ public class RenderObjectMap {
      * @param key 
      * @return  
      */
-    public boolean cache(Map<String, RenderObject> cache, long objectId, String key) {
+    public boolean cache(ObjectCache cache, long objectId, String key) {
         RenderObject obj = objectMap.remove(objectId);
         if (obj != null) {
-            cache.put(key, obj);
+            removeFromPool(obj);
+            RenderObject prev = cache.put(key, obj);
+            if (prev != null && prev != obj) {
+                // the previous object is no longer reachable
+                disposeObject(prev, context.getEventCapture());
+            }
             // the object can no longer be reserved, so clear reservations now
             obj.clearReservations();
             return true;
@@ -391,10 +636,161 @@ public class RenderObjectMap {
         return false;
     }
     
+    /**
+     * Memoizes the render objects under the content key for the rest of the
+     * context render frame.
+     * <p>
+     * The objects are withheld from the pools until the end of the frame, so that
+     * their contents are not overwritten before the memo is used. Null elements are
+     * allowed for outputs that did not produce an object. Objects not tracked by
+     * this map are not memoized and replaced with null.
+     * 
+     * @param key content key
+     * @param objects render objects (not withheld by any other memo or cache)
+     * @param nanos time taken to produce the objects
+     * @return true if the objects were memoized, false if the key is already memoized
+     */
+    public boolean memoize(Object key, RenderObject[] objects, long nanos) {
+        if (memos.containsKey(key)) {
+            return false;
+        }
+        for (int i = 0; i < objects.length; i++) {
+            RenderObject obj = objects[i];
+            if (obj != null) {
+                if (objectMap.remove(obj.getKey()) != null) {
+                    removeFromPool(obj);
+                    obj.clearReservations();
+                } else {
+                    // the object is owned elsewhere (i.e. the object cache)
+                    objects[i] = null;
+                }
+            }
+        }
+        if (memos.putIfAbsent(key, new Memo(objects, nanos)) != null) {
+            for (RenderObject obj : objects) {
+                if (obj != null) {
+                    objectMap.put(obj.getKey(), obj);
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+    /**
+     * Gets the memo stored under the content key this render frame.
+     * 
+     * @param key
+     * @return memo, or null
+     */
+    public Memo getMemo(Object key) {
+        return memos.get(key);
+    }
+    /**
+     * Allocates a memoized render object to the resource.
+     * <p>
+     * The object remains withheld by the memo.
+     * 
+     * @param <T>
+     * @param resource
+     * @param obj 
+     */
+    public <T> void allocateMemoized(ResourceView<T> resource, RenderObject obj) {
+        resource.setObject(obj);
+        markAllocated(resource, obj);
+        GraphEventCapture cap = context.getEventCapture();
+        if (cap != null) cap.reallocateObject(obj.getId(), resource.getIndex(),
+                resource.getResource().getClass().getSimpleName());
+    }
+    /**
+     * Records that a pass was skipped because its outputs were memoized.
+     * 
+     * @param memo 
+     */
+    public void memoUsed(Memo memo) {
+        memoSkips.incrementAndGet();
+        memoSavedNanos.addAndGet(memo.nanos);
+    }
+    private void flushMemos(GraphEventCapture cap) {
+        // return withheld objects to the map, which moves them back into the pools
+        for (Memo m : memos.values()) {
+            for (RenderObject obj : m.objects) {
+                if (obj != null) {
+                    objectMap.put(obj.getKey(), obj);
+                }
+            }
+        }
+        memos.clear();
+        skippedPasses = memoSkips.getAndSet(0);
+        savedNanos = memoSavedNanos.getAndSet(0);
+        if (cap != null) {
+            cap.value("memoSkippedPasses", skippedPasses);
+            cap.value("memoSavedNanos", savedNanos);
+        }
+    }
+    
+    /**
+     * Advances the history to the current render frame and ensures it holds
+     * an object for this frame.
+     * <p>
+     * The first call per frame swaps the history's buffers. The object that was
+     * the previous object two frames ago is reused if the history's definition
+     * accepts it, otherwise it is disposed and a new object is created.
+     * 
+     * @param <T>
+     * @param history
+     * @return render object for this frame
+     */
+    public <T> RenderObject<T> advanceHistory(History<T> history) {
+        synchronized (history) {
+            if (!history.advance(contextFrame)) {
+                histories.add(history);
+                ResourceDef<T> def = history.getDefinition();
+                RenderObject obj = history.getCurrentObject();
+                Object value = null;
+                if (obj != null) {
+                    value = def.applyDirectResource(obj.getObject());
+                    if (value == null) {
+                        disposeObject(obj, context.getEventCapture());
+                        obj = null;
+                    }
+                }
+                if (obj == null) {
+                    value = def.createResource();
+                    obj = new RenderObject(def, value, staticTimeout);
+                    long bytes = currentBytes.addAndGet(obj.getSize());
+                    if (bytes > peakBytes) {
+                        peakBytes = bytes;
+                    }
+                }
+                history.setCurrent(obj, value);
+            }
+            return history.getCurrentObject();
+        }
+    }
+    private void flushHistories(GraphEventCapture cap) {
+        for (Iterator<History> it = histories.iterator(); it.hasNext();) {
+            History h = it.next();
+            if (h.getFrame() != contextFrame) {
+                // the history was skipped this frame
+                h.clear(removedHistory);
+                for (int i = 0; i < removedHistory.length; i++) {
+                    if (removedHistory[i] != null) {
+                        disposeObject(removedHistory[i], cap);
+                        removedHistory[i] = null;
+                    }
+                }
+                it.remove();
+            }
+        }
+        activeHistories = histories.size();
+        contextFrame++;
+    }
+    
     /**
      * Should be called only when a new rendering frame begins (before rendering).
      */
     public void newFrame() {
+        frame++;
         totalAllocations = 0;
         officialReservations = 0;
         completedReservations = 0;
@@ -402,6 +798,15 @@ public class RenderObjectMap {
         objectsCreated = 0;
         objectsReallocated = 0;
         flushedObjects = 0;
+        objectInspections = 0;
+        plannedReallocations = 0;
+        peakBytes = currentBytes.get();
+        evictedBytes = 0;
+        evictedObjects = 0;
+        for (ObjectPool a : arenas) {
+            a.resetStatistics();
+        }
+        shared.resetStatistics();
     }
     /**
      * Clears reservations of all tracked render objects.
@@ -415,12 +820,20 @@ public class RenderObjectMap {
      * Flushes the map.
      * <p>
      * Any render objects that have not been used for a number of frames are disposed.
+     * If the memory budget is exceeded, the least recently acquired objects are disposed
+     * until the budget is met. Remaining objects are moved to the arena of the thread that last allocated them,
+     * or to the shared pool if they were not allocated or were last allocated to an
+     * asynchronous resource.
      */
     public void flushMap() {
-        totalObjects = objectMap.size();
         GraphEventCapture cap = context.getEventCapture();
+        flushMemos(cap);
+        flushHistories(cap);
+        totalObjects = objectMap.size();
         if (cap != null) cap.flushObjects(totalObjects);
         flushCollection(objectMap.values(), cap);
+        evictObjects(cap);
+        migrateObjects();
         if (cap != null) {
             cap.value("totalAllocations", totalAllocations);
             cap.value("officialReservations", officialReservations);
@@ -429,15 +842,37 @@ public class RenderObjectMap {
             cap.value("objectsCreated", objectsCreated);
             cap.value("objectsReallocated", objectsReallocated);
             cap.value("flushedObjects", flushedObjects);
+            cap.value("objectInspections", objectInspections);
+            cap.value("plannedReallocations", plannedReallocations);
+            cap.value("currentBytes", currentBytes.get());
+            cap.value("peakBytes", peakBytes);
+            cap.value("evictedBytes", evictedBytes);
+            cap.value("evictedObjects", evictedObjects);
+            cap.value("activeHistories", activeHistories);
+            for (ObjectPool a : arenas) {
+                cap.value("arena"+a.getThreadIndex()+"Hits", a.getHits());
+                cap.value("arena"+a.getThreadIndex()+"Misses", a.getMisses());
+            }
+            cap.value("sharedPoolHits", shared.getHits());
+            cap.value("sharedPoolMisses", shared.getMisses());
         }
     }
     /**
      * Flushes the given object cache.
+     * <p>
+     * Cached objects that time out or are evicted to meet the cache's budget
+     * are disposed.
      * 
      * @param cache 
      */
-    public void flushCache(Map<String, RenderObject> cache) {
-        flushCollection(cache.values(), context.getEventCapture());
+    public void flushCache(ObjectCache cache) {
+        GraphEventCapture cap = context.getEventCapture();
+        flushedObjects += cache.flush(evictionCandidates);
+        // indexed so that frames without evictions do not create an iterator
+        for (int i = 0, n = evictionCandidates.size(); i < n; i++) {
+            disposeObject(evictionCandidates.get(i), cap);
+        }
+        evictionCandidates.clear();
     }
     /**
      * Clears the map and cache.
@@ -446,17 +881,71 @@ public class RenderObjectMap {
      */
     public void clearMap() {
         GraphEventCapture cap = context.getEventCapture();
+        flushMemos(null);
+        // no history is current after skipping a frame, so all are disposed
+        contextFrame++;
+        flushHistories(cap);
         disposeCollection(objectMap.values(), cap);
         objectMap.clear();
+        for (ObjectPool a : arenas) {
+            a.clear();
+        }
+        shared.clear();
+        poolsChanged = false;
     }
     
+    private void evictObjects(GraphEventCapture cap) {
+        if (memoryBudget <= 0 || currentBytes.get() <= memoryBudget) {
+            return;
+        }
+        for (RenderObject obj : objectMap.values()) {
+            if (obj.isFree() && obj.getSize() > 0) {
+                evictionCandidates.add(obj);
+            }
+        }
+        evictionCandidates.sort(LEAST_RECENTLY_ACQUIRED);
+        for (RenderObject obj : evictionCandidates) {
+            if (currentBytes.get() <= memoryBudget) {
+                break;
+            }
+            objectMap.remove(obj.getKey());
+            removeFromPool(obj);
+            disposeObject(obj, cap);
+            evictedBytes += obj.getSize();
+            evictedObjects++;
+        }
+        evictionCandidates.clear();
+    }
+    private void migrateObjects() {
+        for (RenderObject obj : objectMap.values()) {
+            int hint = obj.getArenaHint();
+            ObjectPool target = (hint >= 0 ? arena(hint) : shared);
+            obj.setArenaHint(-1);
+            if (obj.getPool() != target) {
+                obj.setPool(target);
+                poolsChanged = true;
+            }
+        }
+        if (poolsChanged) {
+            // rebuild pools, which also drops objects no longer tracked by the map
+            for (ObjectPool a : arenas) {
+                a.clear();
+            }
+            shared.clear();
+            for (RenderObject obj : objectMap.values()) {
+                obj.getPool().add(obj);
+            }
+            poolsChanged = false;
+        }
+    }
+
     private void flushCollection(Iterable<RenderObject> iterable, GraphEventCapture cap) {
         for (Iterator<RenderObject> it = iterable.iterator(); it.hasNext();) {
             RenderObject obj = it.next();
             if (!obj.tickTimeout()) {
-                if (cap != null) cap.disposeObject(obj.getId());
-                obj.dispose();
+                disposeObject(obj, cap);
                 it.remove();
+                removeFromPool(obj);
                 flushedObjects++;
                 continue;
             }
@@ -465,8 +954,7 @@ public class RenderObjectMap {
     }
     private void disposeCollection(Iterable<RenderObject> iterable, GraphEventCapture cap) {
         for (RenderObject obj : iterable) {
-            if (cap != null) cap.disposeObject(obj.getId());
-            obj.dispose();
+            disposeObject(obj, cap);
         }
     }
     
@@ -482,6 +970,38 @@ public class RenderObjectMap {
         this.staticTimeout = staticTimeout;
     }
     
+    /**
+     * Sets the maximum number of bytes pooled render objects should occupy.
+     * <p>
+     * When exceeded at the end of a frame, free objects are disposed in order
+     * of least recently acquired until the budget is met. Objects that are in use,
+     * cached, or of unknown size are never evicted, so the budget may still be exceeded.
+     * <p>
+     * default=0 (unlimited)
+     * 
+     * @param memoryBudget budget in bytes, or zero or less for unlimited
+     * @see ResourceDef#estimateSize()
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+    
+    /**
+     * Sets whether render objects are looked up by compatibility key before
+     * the full object scan is performed.
+     * <p>
+     * Disabling the index makes every allocation inspect every available
+     * object, as was done originally, which is useful for comparison.
+     * <p>
+     * default=true
+     * 
+     * @param useCompatibilityIndex 
+     * @see ResourceDef#getCompatibilityKey()
+     */
+    public void setUseCompatibilityIndex(boolean useCompatibilityIndex) {
+        this.useCompatibilityIndex = useCompatibilityIndex;
+    }
+    
     /**
      * Gets the default number of frame boundaries an object can experience without
      * being used before being disposed.
@@ -491,6 +1011,22 @@ public class RenderObjectMap {
     public int getStaticTimeout() {
         return staticTimeout;
     }
+    /**
+     * Gets the maximum number of bytes pooled render objects should occupy.
+     * 
+     * @return budget in bytes, or zero or less if unlimited
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+    /**
+     * Returns true if render objects are looked up by compatibility key.
+     * 
+     * @return 
+     */
+    public boolean isUseCompatibilityIndex() {
+        return useCompatibilityIndex;
+    }
     /**
      * Get the total number of allocations that occured during the last render frame.
      * 
@@ -562,5 +1098,155 @@ public class RenderObjectMap {
     public int getFlushedObjects() {
         return flushedObjects;
     }
+    /**
+     * Gets the number of times a render object was inspected for direct
+     * reallocation during the last render frame.
+     * 
+     * @return 
+     */
+    public int getObjectInspections() {
+        return objectInspections;
+    }
+    /**
+     * Gets the number of reallocations that used the render object planned
+     * by an {@link AliasingPlan} during the last render frame.
+     * 
+     * @return 
+     */
+    public int getPlannedReallocations() {
+        return plannedReallocations;
+    }
+    /**
+     * Gets the estimated number of bytes occupied by all live render objects,
+     * including cached objects.
+     * 
+     * @return 
+     */
+    public long getCurrentBytes() {
+        return currentBytes.get();
+    }
+    /**
+     * Gets the highest number of bytes occupied by live render objects
+     * during the last render frame.
+     * 
+     * @return 
+     */
+    public long getPeakBytes() {
+        return peakBytes;
+    }
+    /**
+     * Gets the number of bytes disposed to meet the memory budget during
+     * the last render frame.
+     * 
+     * @return 
+     */
+    public long getEvictedBytes() {
+        return evictedBytes;
+    }
+    /**
+     * Gets the number of render objects disposed to meet the memory budget
+     * during the last render frame.
+     * 
+     * @return 
+     */
+    public int getEvictedObjects() {
+        return evictedObjects;
+    }
+    /**
+     * Gets the number of passes skipped during the last render frame because
+     * their outputs were memoized by an identical pass.
+     * 
+     * @return 
+     */
+    public int getMemoSkippedPasses() {
+        return skippedPasses;
+    }
+    /**
+     * Gets the measured execution time in nanoseconds saved by skipping
+     * memoized passes during the last render frame.
+     * 
+     * @return 
+     */
+    public long getMemoSavedNanos() {
+        return savedNanos;
+    }
+    /**
+     * Gets the number of {@link History histories} kept alive after the last render frame.
+     * 
+     * @return 
+     */
+    public int getActiveHistories() {
+        return activeHistories;
+    }
+    /**
+     * Gets the arena used by the thread at the index.
+     * 
+     * @param threadIndex
+     * @return arena, or null if the thread has not allocated from this map yet
+     */
+    public ObjectPool getArena(int threadIndex) {
+        ObjectPool[] a = arenas;
+        if (threadIndex >= 0 && threadIndex < a.length) {
+            return a[threadIndex];
+        }
+        return null;
+    }
+    /**
+     * Gets the number of thread arenas.
+     * 
+     * @return 
+     */
+    public int getNumArenas() {
+        return arenas.length;
+    }
+    /**
+     * Gets the pool shared by all threads.
+     * 
+     * @return 
+     */
+    public ObjectPool getSharedPool() {
+        return shared;
+    }
+    
+    /**
+     * Render objects produced by a pass under a content key.
+     */
+    public static class Memo {
+        
+        private final RenderObject[] objects;
+        private final long nanos;
+        
+        private Memo(RenderObject[] objects, long nanos) {
+            this.objects = objects;
+            this.nanos = nanos;
+        }
+        
+        /**
+         * Gets the render object produced for the output at the index.
+         * 
+         * @param i
+         * @return render object, or null
+         */
+        public RenderObject get(int i) {
+            return objects[i];
+        }
+        /**
+         * Gets the number of outputs memoized.
+         * 
+         * @return 
+         */
+        public int size() {
+            return objects.length;
+        }
+        /**
+         * Gets the time taken to produce the objects.
+         * 
+         * @return 
+         */
+        public long getNanos() {
+            return nanos;
+        }
+        
+    }
     
 }
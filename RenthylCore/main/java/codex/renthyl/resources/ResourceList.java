@@ -35,8 +35,11 @@ import codex.renthyl.definitions.ResourceDef;
 import com.jme3.texture.FrameBuffer;
 import com.jme3.texture.Texture;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Manages {@link ResourceView} declarations, references, and
@@ -55,16 +58,34 @@ public class ResourceList {
      * Maximum time to wait in milliseconds before throwing an exception.
      */
     public static final long WAIT_TIMEOUT = 5000;
+    /**
+     * Maximum time in milliseconds a waiting thread stays parked on a resource
+     * before locating it again.
+     */
+    private static final long WAIT_SLICE = 10;
     
     private final FrameGraph frameGraph;
     private RenderObjectMap map;
     private GraphEventCapture cap;
-    private ArrayList<ResourceView> resources = new ArrayList<>(INITIAL_SIZE);
-    private final LinkedList<FutureReference> futureRefs = new LinkedList<>();
-    private final HashMap<String, RenderObject> objectCache = new HashMap<>();
+    private final ArrayList<ResourceView> resources = new ArrayList<>(INITIAL_SIZE);
+    private final ArrayList<ResourceView> issuedViews = new ArrayList<>(INITIAL_SIZE);
+    private final ArrayList<ResourceView> freeViews = new ArrayList<>(INITIAL_SIZE);
+    private final ArrayList<FutureReference> futureRefs = new ArrayList<>();
+    private final ArrayList<FutureReference> freeRefs = new ArrayList<>();
+    private final Set<ResourceUser> culledUsers = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final BitSet culledResources = new BitSet();
+    private int[] cullStack = new int[INITIAL_SIZE];
+    private final ObjectCache objectCache = new ObjectCache();
+    private final AliasingPlan aliasing = new AliasingPlan();
+    private PrepareRecord recording;
     private int nextSlot = 0;
     private int textureBinds = 0;
     
+    // statistics
+    private int recordedUsers = 0;
+    private int replayedUsers = 0;
+    private int replayedOperations = 0;
+    
     /**
      * 
      * @param frameGraph 
@@ -74,7 +95,14 @@ public class ResourceList {
     }
     
     private <T> ResourceView<T> create(ResourceUser producer, ResourceDef<T> def, String name) {
-        ResourceView res = new ResourceView<>(producer, def, new ResourceTicket<>(name));
+        // views are recycled across frames to avoid per-frame garbage
+        ResourceView res;
+        if (freeViews.isEmpty()) {
+            res = new ResourceView<>(producer, def, new ResourceTicket<>(name));
+        } else {
+            res = freeViews.remove(freeViews.size()-1).reset(producer, def, name);
+        }
+        issuedViews.add(res);
         res.getTicket().setLocalIndex(add(res));
         return res;
     }
@@ -163,6 +191,10 @@ public class ResourceList {
      * @return 
      */
     public <T> ResourceTicket<T> declare(ResourceUser producer, ResourceDef<T> def, ResourceTicket<T> store) {
+        if (recording != null) record(PrepareRecord.DECLARE, store, def, null);
+        return declareInternal(producer, def, store);
+    }
+    private <T> ResourceTicket<T> declareInternal(ResourceUser producer, ResourceDef<T> def, ResourceTicket<T> store) {
         String name = (store != null ? store.getName() : null);
         ResourceView<T> resource = create(producer, def, name);
         if (cap != null) cap.declareResource(resource.getIndex(), name);
@@ -181,7 +213,8 @@ public class ResourceList {
      * @return 
      */
     public <T> ResourceTicket<T> declareTemporary(ResourceUser producer, ResourceDef<T> def, ResourceTicket<T> store) {
-        store = declare(producer, def, store);
+        if (recording != null) record(PrepareRecord.DECLARE_TEMPORARY, store, def, null);
+        store = declareInternal(producer, def, store);
         locate(store).setTemporary(true);
         return store;
     }
@@ -197,8 +230,9 @@ public class ResourceList {
      * @param ticket 
      */
     public void reserve(ModuleIndex passIndex, ResourceTicket ticket) {
-        if (ticket.getObjectId() >= 0) {
-            map.reserve(ticket.getObjectId(), passIndex);
+        if (recording != null) record(PrepareRecord.RESERVE, ticket, null, passIndex);
+        if (ticket.getObjectKey() != null) {
+            map.reserve(ticket.getObjectKey(), passIndex);
             ticket.copyObjectTo(locate(ticket).getTicket());
         }
     }
@@ -217,6 +251,7 @@ public class ResourceList {
     }
     
     private void reference(ModuleIndex index, String user, ResourceTicket ticket, boolean optional) {
+        if (recording != null) record(optional ? PrepareRecord.REFERENCE_OPTIONAL : PrepareRecord.REFERENCE, ticket, user, index);
         boolean sync = !frameGraph.isAsync();
         if (optional && sync && !ResourceTicket.validate(ticket)) {
             return;
@@ -227,7 +262,13 @@ public class ResourceList {
             if (cap != null) cap.referenceResource(resource.getIndex(), ticket.getName());
         } else {
             // save for later, since the resource hasn't been declared yet
-            futureRefs.add(new FutureReference(index, ticket, optional, user));
+            FutureReference ref;
+            if (freeRefs.isEmpty()) {
+                ref = new FutureReference();
+            } else {
+                ref = freeRefs.remove(freeRefs.size()-1);
+            }
+            futureRefs.add(ref.set(index, ticket, optional, user));
         }
     }
     
@@ -294,6 +335,7 @@ public class ResourceList {
      * @return 
      */
     public <T, R extends ResourceDef<T>> R getDefinition(Class<R> type, ResourceTicket<T> ticket) {
+        if (recording != null) recording.unsupported();
         ResourceDef<T> def = locate(ticket).getDefinition();
         if (type.isAssignableFrom(def.getClass())) {
             return (R)def;
@@ -311,6 +353,7 @@ public class ResourceList {
      * @param ticket 
      */
     public void setUndefined(ResourceTicket ticket) {
+        if (recording != null) record(PrepareRecord.UNDEFINED, ticket, null, null);
         ResourceView resource = locate(ticket);
         resource.setUndefined();
         if (cap != null) cap.setResourceUndefined(resource.getIndex(), ticket.getName());
@@ -330,6 +373,7 @@ public class ResourceList {
      * @param ticket 
      */
     public void setConstant(ResourceTicket ticket) {
+        if (recording != null) recording.unsupported();
         RenderObject obj = locate(ticket).getObject();
         if (obj != null) {
             obj.setConstant(true);
@@ -360,6 +404,7 @@ public class ResourceList {
      * @return 
      */
     public boolean isVirtual(ResourceTicket ticket, boolean optional) {
+        if (recording != null) recording.unsupported();
         if (!optional || validate(ticket)) {
             return locate(ticket).isVirtual();
         }
@@ -383,19 +428,104 @@ public class ResourceList {
             // wait for resource to become available to this context
             long start = System.currentTimeMillis();
             ResourceView res;
-            // TODO: determine why not locating the resource on each try results in timeouts.
-            while (!(res = fastLocate(ticket)).isReadAvailable()) {
-                if (System.currentTimeMillis()-start >= WAIT_TIMEOUT) {
-                    throw new IllegalStateException("Thread "+thread+": Resource at "+ticket+" was assumed "
-                            + "unreachable after "+WAIT_TIMEOUT+" milliseconds.");
+            do {
+                // TODO: determine why not locating the resource on each try results in timeouts.
+                // Parking is done in short slices so the resource is still located on each try.
+                while (!awaitSlice(res = fastLocate(ticket))) {
+                    if (System.currentTimeMillis()-start >= WAIT_TIMEOUT) {
+                        throw new IllegalStateException("Thread "+thread+": Resource at "+ticket+" was assumed "
+                                + "unreachable after "+WAIT_TIMEOUT+" milliseconds.");
+                    }
                 }
-            }
-            // claim read permisions
-            // for resources that are read concurrent, this won't matter
-            if (!res.claimReadPermissions()) {
-                waitForResource(ticket, thread);
+                // claim read permisions
+                // for resources that are read concurrent, this won't matter
+            } while (!res.claimReadPermissions());
+        }
+    }
+    
+    private boolean awaitSlice(ResourceView res) {
+        try {
+            return res.awaitReadAvailable(WAIT_SLICE);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for "+res+".", ex);
+        }
+    }
+    
+    /**
+     * Starts recording operations into the record.
+     * <p>
+     * Operations that cannot be recorded mark the record as not replayable.
+     * 
+     * @param record 
+     * @see #endRecording(int)
+     */
+    public void beginRecording(PrepareRecord record) {
+        if (recording != null) {
+            throw new IllegalStateException("Already recording.");
+        }
+        recording = record;
+        recording.begin();
+    }
+    
+    /**
+     * Stops recording operations.
+     * 
+     * @param layoutVersion layout version the record is valid for, or negative
+     * to make the record invalid
+     */
+    public void endRecording(int layoutVersion) {
+        if (recording != null) {
+            recording.end(layoutVersion);
+            recording = null;
+            recordedUsers++;
+        }
+    }
+    
+    /**
+     * Replays the operations recorded for the user.
+     * <p>
+     * Replaying has the same effect on this list as the recorded operations, but
+     * skips the logic the user originally ran to produce them.
+     * 
+     * @param user
+     * @param record 
+     */
+    public void replay(ResourceUser user, PrepareRecord record) {
+        for (int i = 0, n = record.size(); i < n; i++) {
+            ResourceTicket t = record.getTicket(i);
+            switch (record.getOp(i)) {
+                case PrepareRecord.DECLARE:
+                    declareInternal(user, record.getDefinition(i), t);
+                    break;
+                case PrepareRecord.DECLARE_TEMPORARY:
+                    declareTemporary(user, record.getDefinition(i), t);
+                    break;
+                case PrepareRecord.RESERVE:
+                    reserve(record.getIndex(i), t);
+                    break;
+                case PrepareRecord.REFERENCE:
+                    reference(record.getIndex(i), record.getUser(i), t, false);
+                    break;
+                case PrepareRecord.REFERENCE_OPTIONAL:
+                    reference(record.getIndex(i), record.getUser(i), t, true);
+                    break;
+                case PrepareRecord.UNDEFINED:
+                    setUndefined(t);
+                    break;
             }
         }
+        replayedUsers++;
+        replayedOperations += record.size();
+    }
+    
+    private void record(byte op, ResourceTicket ticket, Object arg, ModuleIndex index) {
+        if (ticket == null) {
+            // the user depends on the returned ticket, which cannot be replayed
+            recording.unsupported();
+        } else {
+            recording.add(op, ticket, arg, index);
+        }
     }
     
     /**
@@ -425,11 +555,13 @@ public class ResourceList {
      * @return 
      */
     protected <T> T acquire(ResourceView<T> resource, ResourceTicket<T> ticket) {
+        if (recording != null) recording.unsupported();
         if (!resource.isUsed()) {
             throw new IllegalStateException(resource+" was unexpectedly acquired.");
         }
         if (resource.isVirtual()) {
-            map.allocate(resource, frameGraph.isAsync());
+            map.allocate(resource, aliasing.getSlot(resource), frameGraph.isAsync());
+            aliasing.recordAllocation(resource);
         }
         if (cap != null) cap.acquireResource(resource.getIndex(), ticket.getName());
         resource.getTicket().copyObjectTo(ticket);
@@ -616,9 +748,121 @@ public class ResourceList {
             return res.getResource();
         }
         res.setUndefined();
+        if (cap != null) cap.setResourceUndefined(res.getIndex(), ticket.getName());
         return null;
     }
     
+    /**
+     * Acquires this frame's object of the history.
+     * <p>
+     * If the ticket is valid and its resource is virtual, the object is also
+     * assigned to the resource, so that it can be read by other passes like any
+     * other resource. Such resources should be declared without a definition,
+     * which keeps them out of {@link AliasingPlan aliasing}.
+     * <p>
+     * The previous frame's object is afterwards available from {@link History#getPrevious()}.
+     * 
+     * @param <T>
+     * @param ticket output ticket to assign the object to (may be null)
+     * @param history
+     * @return this frame's object
+     */
+    public <T> T acquireHistory(ResourceTicket<T> ticket, History<T> history) {
+        if (recording != null) recording.unsupported();
+        RenderObject obj = map.advanceHistory(history);
+        if (validate(ticket)) {
+            ResourceView<T> res = locate(ticket);
+            if (res.isVirtual()) {
+                if (obj.isAcquired()) {
+                    throw new IllegalStateException(history+" is already assigned to a resource this frame.");
+                }
+                res.setObject(obj, history.getCurrent());
+                if (cap != null) cap.acquireResource(res.getIndex(), ticket.getName());
+            }
+            res.getTicket().copyObjectTo(ticket);
+        }
+        return history.getCurrent();
+    }
+    
+    /**
+     * Acquires the render objects memoized under the content key this render
+     * frame for the output tickets.
+     * <p>
+     * Fails without changing any resource if the memo does not exist, does not
+     * match the tickets, or any memoized object is currently in use.
+     * 
+     * @param tickets output tickets, in the order they were memoized
+     * @param key content key
+     * @return true if the memoized objects were acquired
+     * @see #memoize(java.util.List, java.lang.Object, long)
+     */
+    public boolean acquireMemoized(List<ResourceTicket> tickets, Object key) {
+        RenderObjectMap.Memo memo = map.getMemo(key);
+        if (memo == null || memo.size() != tickets.size()) {
+            return false;
+        }
+        synchronized (memo) {
+            int i = 0;
+            for (ResourceTicket t : tickets) {
+                if (validate(t)) {
+                    RenderObject obj = memo.get(i);
+                    ResourceView r = locate(t);
+                    if (obj == null || obj.isAcquired() || !r.isVirtual() || isDisposeOnRelease(r)) {
+                        return false;
+                    }
+                }
+                i++;
+            }
+            i = 0;
+            for (ResourceTicket t : tickets) {
+                if (validate(t)) {
+                    map.allocateMemoized(locate(t), memo.get(i));
+                }
+                i++;
+            }
+        }
+        map.memoUsed(memo);
+        return true;
+    }
+    
+    /**
+     * Memoizes the render objects held by the output tickets under the content
+     * key for the rest of the render frame, including the renders of other
+     * FrameGraphs sharing the same {@link codex.renthyl.FGPipelineContext}.
+     * <p>
+     * Nothing is memoized if any valid ticket's resource does not hold a render object
+     * or is disposed on release.
+     * 
+     * @param tickets output tickets
+     * @param key content key
+     * @param nanos time taken to produce the outputs
+     * @return true if the outputs were memoized
+     */
+    public boolean memoize(List<ResourceTicket> tickets, Object key, long nanos) {
+        if (map.getMemo(key) != null) {
+            return false;
+        }
+        RenderObject[] objects = new RenderObject[tickets.size()];
+        int i = 0;
+        boolean any = false;
+        for (ResourceTicket t : tickets) {
+            if (validate(t)) {
+                ResourceView r = locate(t);
+                if (r.getObject() == null || isDisposeOnRelease(r)) {
+                    return false;
+                }
+                objects[i] = r.getObject();
+                any = true;
+            }
+            i++;
+        }
+        return any && map.memoize(key, objects, nanos);
+    }
+    private static boolean isDisposeOnRelease(ResourceView r) {
+        ResourceDef def = r.getDefinition();
+        return def != null && def.isDisposeOnRelease();
+    }
+    
     /**
      * Directly assign the resource associated with the ticket to the value.
      * <p>
@@ -633,6 +877,7 @@ public class ResourceList {
      * @param value 
      */
     public <T> void setPrimitive(ResourceTicket<T> ticket, T value) {
+        if (recording != null) recording.unsupported();
         locate(ticket).setPrimitive(value);
     }
     
@@ -731,6 +976,10 @@ public class ResourceList {
         this.map = map;
         this.cap = cap;
         textureBinds = 0;
+        recordedUsers = 0;
+        replayedUsers = 0;
+        replayedOperations = 0;
+        objectCache.resetStatistics();
     }
     
     /**
@@ -738,6 +987,7 @@ public class ResourceList {
      */
     public void endRenderFrame() {
         map.flushCache(objectCache);
+        objectCache.endFrame(cap);
     }
     
     /**
@@ -751,10 +1001,20 @@ public class ResourceList {
                 }
                 locate(ref.ticket).reference(ref.index);
             }
+            freeRefs.add(ref.set(null, null, false, null));
         }
         futureRefs.clear();
     }
     
+    /**
+     * Builds a new {@link AliasingPlan} from the current resources.
+     * <p>
+     * Should only be called after culling, and only when the layout changes.
+     */
+    public void planAliasing() {
+        aliasing.build(resources);
+    }
+    
     /**
      * Culls all resources and resource producers found to be unused.
      * <p>
@@ -762,30 +1022,45 @@ public class ResourceList {
      * references, and prior to execution.
      */
     public void cullUnreferenced() {
-        LinkedList<ResourceView> cull = new LinkedList<>();
-        for (ResourceView r : resources) {
+        int n = resources.size();
+        if (cullStack.length < n) {
+            cullStack = new int[n];
+        }
+        // only resources and producers actually being culled are visited, and
+        // each at most once
+        int top = 0;
+        for (int i = 0; i < n; i++) {
+            ResourceView r = resources.get(i);
             if (r != null && !r.isReferenced() && !r.isTemporary()) {
-                cull.add(r);
+                culledResources.set(i);
+                cullStack[top++] = i;
             }
         }
-        ResourceView resource;
-        while ((resource = cull.pollFirst()) != null) {
+        while (top > 0) {
+            int index = cullStack[--top];
+            ResourceView resource = resources.get(index);
+            if (resource == null) {
+                // already removed along with its culled producer
+                continue;
+            }
             // dereference producer of resource
             ResourceUser producer = resource.getProducer();
             if (producer == null) {
-                remove(resource.getIndex());
+                remove(index);
                 continue;
             }
             producer.dereference();
-            if (!producer.isUsed()) {
+            if (!producer.isUsed() && culledUsers.add(producer)) {
                 for (ResourceTicket t : producer.getInputTickets()) {
                     if (!validate(t)) {
                         continue;
                     }
                     ResourceView r = locate(t);
                     r.release();
-                    if (!r.isReferenced()) {
-                        cull.addLast(r);
+                    int k = r.getIndex();
+                    if (!r.isReferenced() && !culledResources.get(k)) {
+                        culledResources.set(k);
+                        cullStack[top++] = k;
                     }
                 }
                 for (ResourceTicket t : producer.getOutputTickets()) {
@@ -795,6 +1070,23 @@ public class ResourceList {
                 }
             }
         }
+        culledResources.clear();
+        culledUsers.clear();
+    }
+    
+    /**
+     * Marks the lifetimes of all resources as asynchronous.
+     * <p>
+     * Used when modules are not executed in queue order, which makes
+     * queue indices unreliable for determining lifetimes.
+     */
+    public void markAllAsync() {
+        for (int i = 0; i < resources.size(); i++) {
+            ResourceView r = resources.get(i);
+            if (r != null) {
+                r.getLifeTime().markAsync();
+            }
+        }
     }
     
     /**
@@ -803,11 +1095,20 @@ public class ResourceList {
     public void clear() {
         // TODO: throw exceptions for unreleased resources.
         int size = resources.size();
-        resources = new ArrayList<>(size);
+        resources.clear();
         nextSlot = 0;
+        // addAll would copy the issued views to a temporary array every frame
+        for (int i = 0; i < issuedViews.size(); i++) {
+            freeViews.add(issuedViews.get(i));
+        }
+        issuedViews.clear();
+        aliasing.endFrame(cap);
         if (cap != null) {
             cap.clearResources(size);
             cap.value("framebufferTextureBinds", textureBinds);
+            cap.value("recordedPrepares", recordedUsers);
+            cap.value("replayedPrepares", replayedUsers);
+            cap.value("replayedPrepareOperations", replayedOperations);
         }
     }
     
@@ -821,6 +1122,45 @@ public class ResourceList {
         return textureBinds;
     }
     
+    /**
+     * Gets the number of resource users whose preparation was recorded
+     * during the last render frame.
+     * 
+     * @return 
+     */
+    public int getRecordedPrepares() {
+        return recordedUsers;
+    }
+    
+    /**
+     * Gets the number of resource users whose preparation was replayed
+     * during the last render frame.
+     * 
+     * @return 
+     */
+    public int getReplayedPrepares() {
+        return replayedUsers;
+    }
+    
+    /**
+     * Gets the plan used to assign resources to render objects ahead of time.
+     * 
+     * @return 
+     */
+    public AliasingPlan getAliasingPlan() {
+        return aliasing;
+    }
+    /**
+     * Gets the lifetime of the resource the ticket points to.
+     * 
+     * @param ticket
+     * @return lifetime, or null if the ticket does not point to a resource
+     */
+    public TimeFrame getLifeTime(ResourceTicket ticket) {
+        ResourceView res = locate(ticket, false);
+        return res != null ? res.getLifeTime() : null;
+    }
+    
     /**
      * Returns the size of the object cache.
      * 
@@ -830,21 +1170,33 @@ public class ResourceList {
         return objectCache.size();
     }
     
+    /**
+     * Gets the cache holding render objects between frames for
+     * {@link codex.renthyl.modules.cache.CacheWrite} and
+     * {@link codex.renthyl.modules.cache.CacheRead}.
+     * 
+     * @return 
+     */
+    public ObjectCache getObjectCache() {
+        return objectCache;
+    }
+    
     /**
      * Represents a reference to a resource that will exist in the future.
      */
     private static class FutureReference {
         
-        public final ModuleIndex index;
-        public final ResourceTicket ticket;
-        public final boolean optional;
-        public final String user;
-
-        public FutureReference(ModuleIndex index, ResourceTicket ticket, boolean optional, String user) {
+        public ModuleIndex index;
+        public ResourceTicket ticket;
+        public boolean optional;
+        public String user;
+        
+        public FutureReference set(ModuleIndex index, ResourceTicket ticket, boolean optional, String user) {
             this.index = index;
             this.ticket = ticket;
             this.optional = optional;
             this.user = user;
+            return this;
         }
         
     }
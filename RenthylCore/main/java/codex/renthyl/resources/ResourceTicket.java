@@ -51,7 +51,9 @@ public class ResourceTicket <T> {
     private String name;
     private int localIndex;
     private long objectId = -1;
+    private Long objectKey = null;
     private ResourceTicket<T> source;
+    private ResourceTicket<T> root;
     private final LinkedList<ResourceTicket<T>> targets = new LinkedList<>();
     private int exportGroupId = -1;
     
@@ -82,6 +84,7 @@ public class ResourceTicket <T> {
     public void clearAllTargets() {
         for (ResourceTicket<T> t : targets) {
             t.source = null;
+            t.invalidateRoot();
         }
         targets.clear();
     }
@@ -108,7 +111,8 @@ public class ResourceTicket <T> {
         if (target == null) {
             target = new ResourceTicket();
         }
-        target.setObjectId(objectId);
+        target.objectId = objectId;
+        target.objectKey = objectKey;
         return target;
     }
     
@@ -123,12 +127,19 @@ public class ResourceTicket <T> {
                 this.source.targets.remove(this);
             }
             if (user != null) {
-                user.setLayoutUpdateNeeded();
+                user.setConnectionUpdateNeeded();
             }
             this.source = source;
             if (this.source != null) {
                 this.source.targets.add(this);
             }
+            invalidateRoot();
+        }
+    }
+    private void invalidateRoot() {
+        root = null;
+        for (ResourceTicket<T> t : targets) {
+            t.invalidateRoot();
         }
     }
     /**
@@ -160,7 +171,20 @@ public class ResourceTicket <T> {
      * @param objectId 
      */
     public void setObjectId(long objectId) {
-        this.objectId = objectId;
+        if (objectKey == null || objectKey != objectId) {
+            this.objectId = objectId;
+            this.objectKey = (objectId >= 0 ? objectId : null);
+        }
+    }
+    /**
+     * Sets the object ID from an already boxed key.
+     * 
+     * @param objectKey key of the object (or null for no object)
+     * @see RenderObject#getKey()
+     */
+    public void setObjectKey(Long objectKey) {
+        this.objectKey = objectKey;
+        this.objectId = (objectKey != null ? objectKey : -1);
     }
     /**
      * Sets the id of the group this ticket is exported with.
@@ -193,12 +217,26 @@ public class ResourceTicket <T> {
      * <p>
      * If the source ticket is null or its world index is negative, this ticket's
      * local index will be returned.
+     * <p>
+     * The end of the source chain is cached until a source along the chain
+     * changes, so this is usually a field read regardless of chain length.
      * 
      * @return 
      */
     public int getWorldIndex() {
+        if (source == null) {
+            return localIndex;
+        }
+        int i = getRoot().localIndex;
+        if (i >= 0) {
+            return i;
+        }
+        // the root is not indexed, so resolve the first indexed ticket on the chain
+        return resolveWorldIndex();
+    }
+    private int resolveWorldIndex() {
         if (source != null) {
-            int i = source.getWorldIndex();
+            int i = source.resolveWorldIndex();
             if (i >= 0) return i;
         }
         return localIndex;
@@ -217,6 +255,14 @@ public class ResourceTicket <T> {
     public long getObjectId() {
         return objectId;
     }
+    /**
+     * Gets the object ID as a boxed key for map lookups.
+     * 
+     * @return object key, or null if no object ID is set
+     */
+    public Long getObjectKey() {
+        return objectKey;
+    }
     /**
      * 
      * @return 
@@ -224,6 +270,24 @@ public class ResourceTicket <T> {
     public ResourceTicket<T> getSource() {
         return source;
     }
+    /**
+     * Gets the ticket at the end of this ticket's source chain.
+     * <p>
+     * Resolved once per change to the chain and cached.
+     * 
+     * @return root ticket (this ticket if it has no source)
+     */
+    public ResourceTicket<T> getRoot() {
+        ResourceTicket<T> r = root;
+        if (r == null) {
+            r = this;
+            while (r.source != null) {
+                r = r.source;
+            }
+            root = r;
+        }
+        return r;
+    }
     /**
      * Returns true if this source ticket is not null.
      * 
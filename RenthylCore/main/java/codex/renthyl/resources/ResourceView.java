@@ -46,8 +46,13 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 public class ResourceView <T> {
     
-    private final ResourceUser producer;
-    private final ResourceDef<T> def;
+    /**
+     * Number of times a waiting thread checks for availability before parking.
+     */
+    private static final int SPIN_TRIES = 64;
+    
+    private ResourceUser producer;
+    private ResourceDef<T> def;
     private final ResourceTicket<T> ticket;
     private final TimeFrame lifetime;
     private RenderObject object;
@@ -56,6 +61,7 @@ public class ResourceView <T> {
     private boolean temporary = false;
     private boolean undefined = false;
     private final AtomicBoolean released = new AtomicBoolean(false);
+    private volatile int waiters = 0;
     
     /**
      * 
@@ -70,6 +76,32 @@ public class ResourceView <T> {
         this.lifetime = new TimeFrame(this.producer.getIndex(), 0);
     }
     
+    /**
+     * Resets this view in place so that it can be reused for another declaration.
+     * <p>
+     * Called internally by {@link ResourceList}, which recycles views across frames.
+     * 
+     * @param producer
+     * @param def
+     * @param name name of the ticket
+     * @return this
+     */
+    protected ResourceView<T> reset(ResourceUser producer, ResourceDef<T> def, String name) {
+        this.producer = producer;
+        this.def = def;
+        ticket.setName(name);
+        ticket.setLocalIndex(-1);
+        ticket.setObjectId(-1);
+        lifetime.set(producer.getIndex(), 0);
+        object = null;
+        resource = null;
+        refs = 0;
+        temporary = false;
+        undefined = false;
+        released.set(false);
+        return this;
+    }
+    
     /**
      * Reference this resource from the specified render pass index.
      * 
@@ -87,6 +119,13 @@ public class ResourceView <T> {
     public boolean release() {
         refs--;
         released.set(true);
+        // waiters is checked after released is set, and waiting threads check
+        // released after incrementing waiters, so no wakeup can be missed
+        if (waiters > 0) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
         return refs >= 0;
     }
     /**
@@ -97,6 +136,40 @@ public class ResourceView <T> {
     public boolean claimReadPermissions() {
         return ((def == null || def.isReadConcurrent()) && released.get()) || released.getAndSet(false);
     }
+    /**
+     * Blocks the calling thread until this resource is available for reading
+     * or the timeout expires.
+     * <p>
+     * The thread briefly spins before parking, and is woken by {@link #release()}.
+     * 
+     * @param timeout maximum time to wait in milliseconds
+     * @return true if the resource is available for reading
+     * @throws InterruptedException 
+     */
+    public boolean awaitReadAvailable(long timeout) throws InterruptedException {
+        for (int i = 0; i < SPIN_TRIES; i++) {
+            if (released.get()) {
+                return true;
+            }
+            Thread.yield();
+        }
+        long deadline = System.nanoTime() + timeout * 1000000L;
+        synchronized (this) {
+            waiters++;
+            try {
+                while (!released.get()) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    wait(remaining / 1000000L, (int)(remaining % 1000000L));
+                }
+                return true;
+            } finally {
+                waiters--;
+            }
+        }
+    }
     
     /**
      * Merges the entry view's references and lifetime into this view.
@@ -143,7 +216,7 @@ public class ResourceView <T> {
         this.object = object;
         this.resource = resource;
         this.object.acquire();
-        ticket.setObjectId(this.object.getId());
+        ticket.setObjectKey(this.object.getKey());
     }
     /**
      * Directly sets the raw resource held by this render resource.
@@ -28,6 +28,7 @@
  */
 package codex.renthyl.resources;
 
+import codex.renthyl.Connectable;
 import codex.renthyl.resources.ResourceTicket;
 
 /**
@@ -42,16 +43,38 @@ public class TicketGroup <T> {
      */
     public static final String LIST = "#list:";
     
+    private final Connectable user;
     private final String name;
     private ResourceTicket<T>[] array;
     private boolean list = false;
 
     public TicketGroup(String name) {
+        this(null, name);
+    }
+    public TicketGroup(String name, int length) {
+        this(null, name, length);
+    }
+    /**
+     * Creates a ticket list whose tickets belong to the user.
+     * 
+     * @param user owner of created tickets (may be null)
+     * @param name 
+     */
+    public TicketGroup(Connectable user, String name) {
+        this.user = user;
         this.name = name;
         this.array = new ResourceTicket[0];
         this.list = true;
     }
-    public TicketGroup(String name, int length) {
+    /**
+     * Creates a ticket array whose tickets belong to the user.
+     * 
+     * @param user owner of created tickets (may be null)
+     * @param name
+     * @param length 
+     */
+    public TicketGroup(Connectable user, String name, int length) {
+        this.user = user;
         this.name = name;
         this.array = new ResourceTicket[length];
     }
@@ -71,7 +94,7 @@ public class TicketGroup <T> {
         } else {
             tName = listTicketName(name);
         }
-        return new ResourceTicket<>(tName);
+        return new ResourceTicket<>(user, tName);
     }
     
     /**
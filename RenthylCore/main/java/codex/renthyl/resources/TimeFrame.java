@@ -58,15 +58,28 @@ public class TimeFrame {
      * @param length 
      */
     public TimeFrame(ModuleIndex index, int length) {
+        set(index, length);
+    }
+    
+    /**
+     * Resets this time frame to start at the index and last for the length.
+     * 
+     * @param index
+     * @param length
+     * @return this
+     */
+    public TimeFrame set(ModuleIndex index, int length) {
         this.thread = index.getThreadIndex();
         this.start = index.getQueueIndex();
         this.length = length;
+        this.async = false;
         if (this.start < 0) {
             throw new IllegalArgumentException("Pass index cannot be negative.");
         }
         if (this.length < 0) {
             throw new IllegalArgumentException("Length cannot be negative.");
         }
+        return this;
     }
     
     /**
@@ -154,6 +167,12 @@ public class TimeFrame {
     public boolean isAsync() {
         return async;
     }
+    /**
+     * Marks this timeframe as asynchronous.
+     */
+    public void markAsync() {
+        async = true;
+    }
     
     /**
      * Returns true if this time frame overlaps the given time frame.
@@ -41,7 +41,13 @@ public abstract class SpatialWorldParam <T> {
         }
     }
     
-    private boolean isInherit(T value) {
+    /**
+     * Returns true if the local value calls for inheriting the parent's world value.
+     * 
+     * @param value local value
+     * @return 
+     */
+    public boolean isInherit(T value) {
         return value == null || value.equals(inherit);
     }
     
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2024, codex
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package codex.renthyl.util;
+
+import com.jme3.scene.Spatial;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stores world values of a {@link SpatialWorldParam} per spatial, instead of
+ * saving them to each spatial's userdata.
+ * <p>
+ * A spatial's world value is only recomputed when its local value, its parent,
+ * or its parent's world value changes, so resolving an unchanged spatial does
+ * not write or allocate anything. Parents must be resolved before their children
+ * each frame for changes to propagate within the same frame, which is naturally
+ * the case for scene traversals.
+ * <p>
+ * Spatials may be resolved concurrently, as long as each spatial is resolved
+ * by only one thread per frame and after its parent.
+ * 
+ * @author codex
+ * @param <T>
+ */
+public class WorldParamCache <T> {
+    
+    private final SpatialWorldParam<T> param;
+    private final ConcurrentHashMap<Spatial, Entry<T>> entries = new ConcurrentHashMap<>();
+    private int pruneInterval = 120;
+    private long frame = 0;
+    
+    /**
+     * 
+     * @param param parameter to resolve (not null)
+     */
+    public WorldParamCache(SpatialWorldParam<T> param) {
+        this.param = param;
+    }
+    
+    /**
+     * Resolves the world value of the spatial.
+     * 
+     * @param spatial
+     * @return world value
+     */
+    public T resolve(Spatial spatial) {
+        Entry<T> e = entries.get(spatial);
+        if (e == null) {
+            e = new Entry<>();
+            Entry<T> prev = entries.putIfAbsent(spatial, e);
+            if (prev != null) {
+                e = prev;
+            }
+        }
+        T local = param.getLocalValue(spatial);
+        Spatial p = spatial.getParent();
+        Entry<T> parent = null;
+        if (p != null) {
+            parent = entries.get(p);
+            if (parent == null || parent.frame != frame) {
+                resolve(p);
+                parent = entries.get(p);
+            }
+        }
+        if (!e.valid || e.parent != parent || !Objects.equals(e.local, local)
+                || (parent != null && e.parentVersion != parent.version)) {
+            T world;
+            if (param.isInherit(local)) {
+                world = (parent != null ? parent.world : param.getStart());
+            } else {
+                world = local;
+            }
+            if (!e.valid || !Objects.equals(world, e.world)) {
+                e.version++;
+            }
+            e.world = world;
+            e.local = local;
+            e.parent = parent;
+            e.parentVersion = (parent != null ? parent.version : 0);
+            e.valid = true;
+        }
+        e.frame = frame;
+        return e.world;
+    }
+    
+    /**
+     * Gets the local value of the spatial, from which its world value is resolved.
+     * <p>
+     * Unlike {@link #resolve(com.jme3.scene.Spatial)}, this does not touch the stored
+     * entries. If a spatial and all its ancestors have the same local values and parents
+     * as when last resolved, its world value is also the same.
+     * 
+     * @param spatial
+     * @return local value
+     */
+    public T getLocalValue(Spatial spatial) {
+        return param.getLocalValue(spatial);
+    }
+    /**
+     * Gets the world value last resolved for the spatial.
+     * 
+     * @param spatial
+     * @return world value, or null if the spatial was never resolved
+     */
+    public T getWorldValue(Spatial spatial) {
+        Entry<T> e = entries.get(spatial);
+        return e != null ? e.world : null;
+    }
+    
+    /**
+     * Ends the frame.
+     * <p>
+     * Periodically removes entries of spatials that have not been resolved recently.
+     */
+    public void endFrame() {
+        if (++frame % pruneInterval == 0) {
+            long min = frame-pruneInterval;
+            for (Iterator<Map.Entry<Spatial, Entry<T>>> it = entries.entrySet().iterator(); it.hasNext();) {
+                Entry<T> e = it.next().getValue();
+                if (e.frame < min) {
+                    it.remove();
+                }
+            }
+        }
+    }
+    
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        entries.clear();
+    }
+    
+    /**
+     * Sets the number of frames between removing entries of spatials not
+     * resolved during that time.
+     * <p>
+     * default=120
+     * 
+     * @param pruneInterval 
+     */
+    public void setPruneInterval(int pruneInterval) {
+        if (pruneInterval <= 0) {
+            throw new IllegalArgumentException("Prune interval must be positive.");
+        }
+        this.pruneInterval = pruneInterval;
+    }
+    
+    /**
+     * 
+     * @return 
+     */
+    public SpatialWorldParam<T> getParam() {
+        return param;
+    }
+    /**
+     * 
+     * @return 
+     */
+    public int getPruneInterval() {
+        return pruneInterval;
+    }
+    /**
+     * Gets the number of spatials with stored values.
+     * 
+     * @return 
+     */
+    public int size() {
+        return entries.size();
+    }
+    
+    private static class Entry <T> {
+        
+        private T local, world;
+        private Entry<T> parent;
+        private int version = 0;
+        private int parentVersion = 0;
+        private long frame = -1;
+        private boolean valid = false;
+        
+    }
+    
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2024, codex
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package codex.renthyl;
+
+import codex.renthyl.modules.RenderModule;
+import codex.renthyl.resources.ResourceTicket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * Compares {@link DependencyScheduler} against manual thread assignment on a
+ * synthetic wide graph.
+ * <p>
+ * A main thread source module feeds a number of branches, each a chain of thread
+ * safe modules that busy-work for a random time, which all feed a main thread sink
+ * module. For manual assignment, branches are dealt to render threads round-robin,
+ * as a user assigning {@link codex.renthyl.modules.RenderThread} indices would, and
+ * each module waits for its inputs as resource acquisition would. For dependency
+ * scheduling, the same graph is connected by tickets and executed on a pool with the
+ * same number of threads. The ideal frame time is the longest branch or the total
+ * branch work divided over the threads, whichever is greater, plus the main thread work.
+ * <p>
+ * Usage: {@code DependencySchedulerBenchmark [frames] [threads] [branches] [depth] [workMicros] [seed]}
+ * 
+ * @author codex
+ */
+public class DependencySchedulerBenchmark {
+    
+    private final ArrayList<WorkModule> modules = new ArrayList<>();
+    private final ArrayList<ArrayList<WorkModule>> branches = new ArrayList<>();
+    private final WorkModule source, sink;
+    private final int frames;
+    private long ideal;
+    
+    public DependencySchedulerBenchmark(int frames, int threads, int numBranches, int depth, long workMicros, long seed) {
+        this.frames = frames;
+        Random random = new Random(seed);
+        long work = workMicros * 1000L;
+        source = add(new WorkModule(work, false));
+        sink = new WorkModule(work, false);
+        long total = 0, longest = 0;
+        for (int b = 0; b < numBranches; b++) {
+            // branches are uneven, so that a fixed assignment cannot balance them
+            double scale = 0.25 + random.nextDouble() * 1.5;
+            ArrayList<WorkModule> branch = new ArrayList<>(depth);
+            WorkModule prev = source;
+            long length = 0;
+            for (int d = 0; d < depth; d++) {
+                WorkModule m = add(new WorkModule((long)(work * scale * (0.5 + random.nextDouble())), true));
+                m.connect(prev);
+                branch.add(m);
+                length += m.workNanos;
+                prev = m;
+            }
+            sink.connect(prev);
+            branches.add(branch);
+            total += length;
+            longest = Math.max(longest, length);
+        }
+        add(sink);
+        ideal = Math.max(longest, total / threads) + source.workNanos + sink.workNanos;
+    }
+    
+    private WorkModule add(WorkModule m) {
+        modules.add(m);
+        return m;
+    }
+    
+    /**
+     * Runs the frames with branches manually assigned to threads.
+     * 
+     * @param threads
+     * @return median frame time in nanoseconds
+     * @throws InterruptedException 
+     */
+    public long runManual(int threads) throws InterruptedException {
+        ExecutionQueueList queues = new ExecutionQueueList();
+        queues.add(source, 0);
+        for (int b = 0; b < branches.size(); b++) {
+            for (WorkModule m : branches.get(b)) {
+                queues.add(m, 1 + b % threads);
+            }
+        }
+        queues.add(sink, 0);
+        ExecutionThreadManager executor = new ExecutionThreadManager();
+        long[] times = new long[frames];
+        for (int i = -Math.min(frames, 50); i < frames; i++) {
+            long start = System.nanoTime();
+            executor.start(null, queues);
+            if (!executor.await(5000)) {
+                throw new IllegalStateException("Frame timed out.");
+            }
+            executor.stop();
+            if (i >= 0) {
+                times[i] = System.nanoTime() - start;
+            }
+            reset();
+        }
+        executor.shutdown();
+        return median(times);
+    }
+    
+    /**
+     * Runs the frames with modules scheduled by dependency.
+     * 
+     * @param threads
+     * @return median frame time in nanoseconds
+     * @throws InterruptedException 
+     */
+    public long runScheduled(int threads) throws InterruptedException {
+        DependencyScheduler scheduler = new DependencyScheduler();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        scheduler.setPool(pool);
+        scheduler.build(new GraphRoot(modules));
+        long[] times = new long[frames];
+        for (int i = -Math.min(frames, 50); i < frames; i++) {
+            long start = System.nanoTime();
+            if (!scheduler.execute(null, 5000)) {
+                throw new IllegalStateException("Frame timed out.");
+            }
+            if (i >= 0) {
+                times[i] = System.nanoTime() - start;
+            }
+            reset();
+        }
+        pool.shutdown();
+        return median(times);
+    }
+    
+    private void reset() {
+        for (WorkModule m : modules) {
+            m.done = false;
+        }
+    }
+    private static long median(long[] times) {
+        Arrays.sort(times);
+        return times[times.length / 2];
+    }
+    
+    /**
+     * 
+     * @return ideal frame time in nanoseconds
+     */
+    public long getIdeal() {
+        return ideal;
+    }
+    
+    private static class WorkModule extends RenderModule {
+        
+        private final long workNanos;
+        private final boolean threadSafe;
+        private final ArrayList<WorkModule> sources = new ArrayList<>(1);
+        private final ResourceTicket<Object> out;
+        private volatile boolean done = false;
+        private long sink = 0;
+        
+        public WorkModule(long workNanos, boolean threadSafe) {
+            this.workNanos = workNanos;
+            this.threadSafe = threadSafe;
+            out = addOutput("Out");
+        }
+        
+        public void connect(WorkModule source) {
+            ResourceTicket<Object> in = addInput("In" + sources.size());
+            in.setSource(source.out);
+            sources.add(source);
+        }
+        
+        @Override
+        protected void initModule(FrameGraph frameGraph) {}
+        @Override
+        protected void prepareModuleRender(FGRenderContext context) {}
+        @Override
+        protected void executeRender(FGRenderContext context) {
+            for (int i = 0; i < sources.size(); i++) {
+                WorkModule s = sources.get(i);
+                while (!s.done) {
+                    Thread.yield();
+                }
+            }
+            long end = System.nanoTime() + workNanos;
+            while (System.nanoTime() < end) {
+                sink += sink * 31 + 7;
+            }
+            done = true;
+        }
+        @Override
+        protected void resetRender(FGRenderContext context) {}
+        @Override
+        protected void cleanupModule(FrameGraph frameGraph) {}
+        @Override
+        public void renderingComplete() {}
+        @Override
+        public void traverse(Consumer<RenderModule> traverser) {
+            traverser.accept(this);
+        }
+        @Override
+        public boolean isUsed() {
+            return true;
+        }
+        @Override
+        public boolean isThreadSafe() {
+            return threadSafe;
+        }
+        
+    }
+    private static class GraphRoot extends RenderModule {
+        
+        private final ArrayList<WorkModule> modules;
+        
+        public GraphRoot(ArrayList<WorkModule> modules) {
+            this.modules = modules;
+        }
+        
+        @Override
+        protected void initModule(FrameGraph frameGraph) {}
+        @Override
+        protected void prepareModuleRender(FGRenderContext context) {}
+        @Override
+        protected void executeRender(FGRenderContext context) {}
+        @Override
+        protected void resetRender(FGRenderContext context) {}
+        @Override
+        protected void cleanupModule(FrameGraph frameGraph) {}
+        @Override
+        public void renderingComplete() {}
+        @Override
+        public void traverse(Consumer<RenderModule> traverser) {
+            for (WorkModule m : modules) {
+                traverser.accept(m);
+            }
+        }
+        
+    }
+    
+    public static void main(String[] args) throws InterruptedException {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int numBranches = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int depth = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        long work = args.length > 4 ? Long.parseLong(args[4]) : 50;
+        long seed = args.length > 5 ? Long.parseLong(args[5]) : 1;
+        System.out.println("frames=" + frames + " threads=" + threads + " branches=" + numBranches
+                + " depth=" + depth + " workMicros=" + work + " cores=" + Runtime.getRuntime().availableProcessors());
+        long manual = new DependencySchedulerBenchmark(frames, threads, numBranches, depth, work, seed).runManual(threads);
+        DependencySchedulerBenchmark bench = new DependencySchedulerBenchmark(frames, threads, numBranches, depth, work, seed);
+        long scheduled = bench.runScheduled(threads);
+        System.out.println(String.format("ideal      frame=%8.3fms", bench.getIdeal() / 1e6));
+        System.out.println(String.format("manual     frame=%8.3fms", manual / 1e6));
+        System.out.println(String.format("scheduled  frame=%8.3fms (%.2fx)", scheduled / 1e6, (double)manual / scheduled));
+    }
+    
+}
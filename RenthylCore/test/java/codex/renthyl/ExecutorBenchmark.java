@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2024, codex
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package codex.renthyl;
+
+import codex.renthyl.modules.RenderModule;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * Compares {@link QueueExecutor} implementations running asynchronous
+ * render queues.
+ * <p>
+ * Each frame, a number of asynchronous queues of modules that busy-work for
+ * a fixed time are started and awaited, as {@link FrameGraph} does. Reported
+ * per executor are the average frame time and the process CPU time per frame.
+ * Executors compared are the default persistent threads, a fixed thread pool,
+ * the common {@link ForkJoinPool}, and virtual threads when running on JDK 21
+ * or later.
+ * <p>
+ * Usage: {@code ExecutorBenchmark [frames] [queues] [modulesPerQueue] [workMicros]}
+ * 
+ * @author codex
+ */
+public class ExecutorBenchmark {
+    
+    private final int frames;
+    private final ExecutionQueueList queues = new ExecutionQueueList();
+    
+    public ExecutorBenchmark(int frames, int numQueues, int modulesPerQueue, long workMicros) {
+        this.frames = frames;
+        // queue 0 is the main thread queue, which is not run by the executor
+        for (int q = 1; q <= numQueues; q++) {
+            for (int m = 0; m < modulesPerQueue; m++) {
+                queues.add(new WorkModule(workMicros * 1000L), q);
+            }
+        }
+    }
+    
+    /**
+     * Runs the frames on the executor.
+     * 
+     * @param name
+     * @param executor
+     * @return result line
+     * @throws InterruptedException 
+     */
+    public String run(String name, QueueExecutor executor) throws InterruptedException {
+        // warm up
+        for (int i = 0; i < Math.min(frames, 50); i++) {
+            frame(executor);
+        }
+        long cpu = getProcessCpuTime();
+        long start = System.nanoTime();
+        for (int i = 0; i < frames; i++) {
+            frame(executor);
+        }
+        long wall = System.nanoTime() - start;
+        cpu = getProcessCpuTime() - cpu;
+        executor.shutdown();
+        return String.format("%-10s frame=%8.3fms cpu/frame=%s", name, wall / 1e6 / frames,
+                cpu >= 0 ? String.format("%8.3fms", cpu / 1e6 / frames) : "n/a");
+    }
+    private void frame(QueueExecutor executor) throws InterruptedException {
+        executor.start(null, queues);
+        if (!executor.await(5000)) {
+            throw new IllegalStateException("Frame timed out.");
+        }
+        executor.stop();
+    }
+    
+    private static long getProcessCpuTime() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean)os).getProcessCpuTime();
+        }
+        return -1;
+    }
+    private static ExecutorService createVirtualExecutor() {
+        try {
+            return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            return null;
+        }
+    }
+    
+    private static class WorkModule extends RenderModule {
+        
+        private final long workNanos;
+        private long sink = 0;
+        
+        public WorkModule(long workNanos) {
+            this.workNanos = workNanos;
+        }
+        
+        @Override
+        protected void initModule(FrameGraph frameGraph) {}
+        @Override
+        protected void prepareModuleRender(FGRenderContext context) {}
+        @Override
+        protected void executeRender(FGRenderContext context) {
+            long end = System.nanoTime() + workNanos;
+            while (System.nanoTime() < end) {
+                sink += sink * 31 + 7;
+            }
+        }
+        @Override
+        protected void resetRender(FGRenderContext context) {}
+        @Override
+        protected void cleanupModule(FrameGraph frameGraph) {}
+        @Override
+        public void renderingComplete() {}
+        @Override
+        public void traverse(Consumer<RenderModule> traverser) {
+            traverser.accept(this);
+        }
+        @Override
+        public boolean isUsed() {
+            return true;
+        }
+        
+    }
+    
+    public static void main(String[] args) throws InterruptedException {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int numQueues = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int modules = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        long work = args.length > 3 ? Long.parseLong(args[3]) : 50;
+        ExecutorBenchmark bench = new ExecutorBenchmark(frames, numQueues, modules, work);
+        System.out.println("frames=" + frames + " queues=" + numQueues + " modules/queue=" + modules
+                + " workMicros=" + work + " cores=" + Runtime.getRuntime().availableProcessors());
+        System.out.println(bench.run("threads", new ExecutionThreadManager()));
+        ExecutorService fixed = Executors.newFixedThreadPool(numQueues);
+        System.out.println(bench.run("fixed", QueueExecutor.wrap(fixed)));
+        fixed.shutdown();
+        System.out.println(bench.run("forkjoin", QueueExecutor.wrap(ForkJoinPool.commonPool())));
+        ExecutorService virtual = createVirtualExecutor();
+        if (virtual != null) {
+            System.out.println(bench.run("virtual", QueueExecutor.wrap(virtual)));
+            virtual.shutdown();
+        } else {
+            System.out.println("virtual    unavailable (requires JDK 21)");
+        }
+    }
+    
+}
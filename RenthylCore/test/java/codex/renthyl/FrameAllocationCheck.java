@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2024, codex
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package codex.renthyl;
+
+import com.jme3.asset.AssetManager;
+import com.jme3.material.Material;
+import com.jme3.material.RenderState;
+import com.jme3.math.ColorRGBA;
+import com.jme3.math.FastMath;
+import com.jme3.math.Quaternion;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.ViewPort;
+import com.jme3.renderer.queue.RenderQueue;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Node;
+import com.jme3.scene.shape.Box;
+import com.jme3.shader.plugins.GLSLLoader;
+import com.jme3.system.NullRenderer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Checks that steady-state frames of a representative graph allocate no
+ * more than a threshold of bytes on the render thread.
+ * <p>
+ * The {@link Renthyl#forward(com.jme3.asset.AssetManager) forward} graph renders
+ * a rotating scene of opaque, transparent and gui geometries with a {@link NullRenderer},
+ * through {@link FrameGraph#pipelineRender(com.jme3.renderer.RenderManager, codex.renthyl.FGPipelineContext, com.jme3.renderer.ViewPort, float) pipelineRender}
+ * as {@link RenderManager} would call it. This covers the resource list, execution queues,
+ * scene enqueueing and geometry queues. Allocated bytes are measured per frame with
+ * {@link com.sun.management.ThreadMXBean}, excluding scene updates. Warmup frames let the
+ * JIT compiler remove allocations it can prove do not escape, such as iterators.
+ * <p>
+ * Frames are not strictly allocation free. Iterators over concurrent maps in
+ * {@link codex.renthyl.resources.RenderObjectMap} and over lights in jME's
+ * {@link com.jme3.light.DefaultLightFilter} are only removed when the JIT inlines
+ * them, which varies between runs (0 or 80 bytes per frame have been observed
+ * for this scene). The default threshold of 128 bytes tolerates that, while
+ * allocations that scale with geometries or resources still fail the check.
+ * <p>
+ * Usage: {@code FrameAllocationCheck [frames] [warmup] [thresholdBytes]}
+ * 
+ * @author codex
+ */
+public class FrameAllocationCheck {
+    
+    private final AssetManager assetManager = LayoutUpdateCheck.createAssetManager();
+    private final RenderManager renderManager = new RenderManager(new NullRenderer());
+    private final FGPipelineContext pipelineContext = new FGPipelineContext(renderManager);
+    private final ViewPort viewPort;
+    private final Node scene = new Node("Scene");
+    private final Node gui = new Node("Gui");
+    private final Node spinner = new Node("Spinner");
+    private final Quaternion rotation = new Quaternion();
+    private final FrameGraph frameGraph;
+    private final com.sun.management.ThreadMXBean threads;
+    private final long threadId = Thread.currentThread().getId();
+    private float angle = 0;
+    
+    public FrameAllocationCheck() {
+        assetManager.registerLoader(GLSLLoader.class, "vert", "frag", "glsllib");
+        renderManager.registerContext(FrameGraph.CONTEXT_TYPE, pipelineContext);
+        Camera cam = new Camera(640, 480);
+        cam.setFrustumPerspective(60, 640f / 480f, 0.1f, 1000f);
+        cam.setLocation(new Vector3f(0, 0, 40));
+        cam.lookAt(Vector3f.ZERO, Vector3f.UNIT_Y);
+        viewPort = new ViewPort("Main", cam);
+        viewPort.attachScene(scene);
+        viewPort.attachScene(gui);
+        createScene();
+        frameGraph = Renthyl.forward(assetManager);
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            throw new UnsupportedOperationException("Per-thread allocation is not supported by this JVM.");
+        }
+        threads = (com.sun.management.ThreadMXBean)bean;
+    }
+    
+    private void createScene() {
+        Material opaque = new Material(assetManager, "Common/MatDefs/Misc/Unshaded.j3md");
+        Material transparent = new Material(assetManager, "Common/MatDefs/Misc/Unshaded.j3md");
+        transparent.setColor("Color", new ColorRGBA(1, 1, 1, 0.5f));
+        transparent.getAdditionalRenderState().setBlendMode(RenderState.BlendMode.Alpha);
+        Box box = new Box(0.5f, 0.5f, 0.5f);
+        for (int i = 0; i < 400; i++) {
+            Geometry g = new Geometry("Box" + i, box);
+            g.setLocalTranslation((i % 20) * 2 - 19, ((i / 20) % 10) * 2 - 9, -(i / 200) * 4);
+            if (i % 5 == 0) {
+                g.setMaterial(transparent);
+                g.setQueueBucket(RenderQueue.Bucket.Transparent);
+            } else {
+                g.setMaterial(opaque);
+            }
+            // boxes alternate between the static scene and the rotating node
+            (i % 2 == 0 ? scene : spinner).attachChild(g);
+        }
+        scene.attachChild(spinner);
+        for (int i = 0; i < 20; i++) {
+            Geometry g = new Geometry("Gui" + i, box);
+            g.setMaterial(opaque);
+            g.setLocalTranslation(i * 30, 20, 0);
+            gui.attachChild(g);
+        }
+        gui.setQueueBucket(RenderQueue.Bucket.Gui);
+    }
+    
+    /**
+     * Updates the scene and renders one frame.
+     * 
+     * @return bytes allocated on this thread while rendering
+     */
+    public long frame() {
+        angle += 0.01f;
+        spinner.setLocalRotation(rotation.fromAngles(0, angle % FastMath.TWO_PI, 0));
+        scene.updateLogicalState(0.016f);
+        scene.updateGeometricState();
+        gui.updateGeometricState();
+        long start = threads.getThreadAllocatedBytes(threadId);
+        pipelineContext.startViewPortRender(renderManager, viewPort);
+        frameGraph.pipelineRender(renderManager, pipelineContext, viewPort, 0.016f);
+        frameGraph.endRenderFrame(renderManager);
+        pipelineContext.endViewPortRender(renderManager, viewPort);
+        pipelineContext.endContextRenderFrame(renderManager);
+        return threads.getThreadAllocatedBytes(threadId) - start;
+    }
+    
+    public static void main(String[] args) {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int warmup = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        long threshold = args.length > 2 ? Long.parseLong(args[2]) : 128;
+        FrameAllocationCheck check = new FrameAllocationCheck();
+        long warmupBytes = 0;
+        for (int i = 0; i < warmup; i++) {
+            warmupBytes += check.frame();
+        }
+        long total = 0, max = 0;
+        int failed = 0, worst = -1;
+        for (int i = 0; i < frames; i++) {
+            long bytes = check.frame();
+            total += bytes;
+            if (bytes > max) {
+                max = bytes;
+                worst = i;
+            }
+            if (bytes > threshold) {
+                failed++;
+            }
+        }
+        System.out.println("frames=" + frames + " warmup=" + warmup + " threshold=" + threshold
+                + " warmupBytes/frame=" + (warmup > 0 ? warmupBytes / warmup : 0));
+        System.out.println("bytes/frame=" + String.format("%.2f", (double)total / frames)
+                + " maxBytes=" + max + (worst >= 0 ? " (frame " + worst + ")" : ""));
+        if (failed > 0) {
+            System.out.println("FAILED: " + failed + " frames over threshold");
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+    }
+    
+}
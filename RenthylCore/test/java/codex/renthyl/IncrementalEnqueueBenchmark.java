@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2024, codex
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package codex.renthyl;
+
+import codex.renthyl.modules.ModuleLocator;
+import codex.renthyl.modules.geometry.SceneEnqueuePass;
+import com.jme3.asset.AssetManager;
+import com.jme3.material.Material;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.ViewPort;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Node;
+import com.jme3.scene.shape.Box;
+import com.jme3.shader.plugins.GLSLLoader;
+import com.jme3.system.NullRenderer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Measures how much of the scene {@link SceneEnqueuePass#setIncremental(boolean) incremental}
+ * enqueueing skips, and the time it saves, when only part of the scene changes.
+ * <p>
+ * The {@link Renthyl#forward(com.jme3.asset.AssetManager) forward} graph renders a scene
+ * of nodes, each holding a block of geometries, with a {@link NullRenderer} from a still
+ * camera. Each frame, a percentage of the nodes are moved, so their subtrees must be
+ * walked again. The same scene and movements are rendered with full and incremental
+ * enqueueing, alternating frames between the two. Reported per mode are the median execution time of the enqueue pass,
+ * the median frame time, and the average percentage of spatials skipped.
+ * <p>
+ * Usage: {@code IncrementalEnqueueBenchmark [frames] [nodes] [geometriesPerNode] [movingPercent] [seed]}
+ * 
+ * @author codex
+ */
+public class IncrementalEnqueueBenchmark {
+    
+    private final AssetManager assetManager = LayoutUpdateCheck.createAssetManager();
+    private final RenderManager renderManager = new RenderManager(new NullRenderer());
+    private final FGPipelineContext pipelineContext = new FGPipelineContext(renderManager);
+    private final ViewPort viewPort;
+    private final Node scene = new Node("Scene");
+    private final ArrayList<Node> nodes = new ArrayList<>();
+    private final FrameGraph frameGraph;
+    private final SceneEnqueuePass enqueue;
+    private final Random random;
+    private final float moving;
+    private int frame = 0;
+    
+    public IncrementalEnqueueBenchmark(int numNodes, int geometriesPerNode, float movingPercent, long seed, boolean incremental) {
+        assetManager.registerLoader(GLSLLoader.class, "vert", "frag", "glsllib");
+        renderManager.registerContext(FrameGraph.CONTEXT_TYPE, pipelineContext);
+        random = new Random(seed);
+        moving = movingPercent / 100f;
+        int side = (int)Math.ceil(Math.sqrt(numNodes));
+        Camera cam = new Camera(640, 480);
+        cam.setFrustumPerspective(60, 640f / 480f, 0.1f, 1000f);
+        cam.setLocation(new Vector3f(0, 0, side * 8));
+        cam.lookAt(Vector3f.ZERO, Vector3f.UNIT_Y);
+        viewPort = new ViewPort("Main", cam);
+        viewPort.attachScene(scene);
+        Material mat = new Material(assetManager, "Common/MatDefs/Misc/Unshaded.j3md");
+        Box box = new Box(0.1f, 0.1f, 0.1f);
+        int row = (int)Math.ceil(Math.sqrt(geometriesPerNode));
+        for (int i = 0; i < numNodes; i++) {
+            Node n = new Node("Node" + i);
+            for (int j = 0; j < geometriesPerNode; j++) {
+                Geometry g = new Geometry("Box" + j, box);
+                g.setMaterial(mat);
+                g.setLocalTranslation((j % row) * 3f / row, (j / row) * 3f / row, 0);
+                n.attachChild(g);
+            }
+            n.setLocalTranslation((i % side - side / 2) * 4, (i / side - side / 2) * 4, 0);
+            scene.attachChild(n);
+            nodes.add(n);
+        }
+        frameGraph = Renthyl.forward(assetManager);
+        enqueue = frameGraph.get(ModuleLocator.by(SceneEnqueuePass.class));
+        enqueue.setIncremental(incremental);
+    }
+    
+    /**
+     * Moves some nodes and renders one frame.
+     * 
+     * @return time in nanoseconds
+     */
+    public long frame() {
+        // nodes move back and forth, so the scene stays in view
+        float offset = (++frame % 2 == 0 ? 0.01f : -0.01f);
+        int count = Math.round(nodes.size() * moving);
+        for (int i = 0; i < count; i++) {
+            nodes.get(random.nextInt(nodes.size())).move(offset, 0, 0);
+        }
+        scene.updateLogicalState(0.016f);
+        scene.updateGeometricState();
+        long start = System.nanoTime();
+        pipelineContext.startViewPortRender(renderManager, viewPort);
+        frameGraph.pipelineRender(renderManager, pipelineContext, viewPort, 0.016f);
+        frameGraph.endRenderFrame(renderManager);
+        pipelineContext.endViewPortRender(renderManager, viewPort);
+        pipelineContext.endContextRenderFrame(renderManager);
+        return System.nanoTime() - start;
+    }
+    
+    /**
+     * Renders the frames, alternating between the benchmarks so that both run
+     * under the same conditions.
+     * 
+     * @param frames
+     * @param benchmarks
+     * @return {median enqueue nanos, median frame nanos, average skipped percent} of each benchmark
+     */
+    public static double[][] run(int frames, IncrementalEnqueueBenchmark... benchmarks) {
+        int n = benchmarks.length;
+        long[][] enqueueTimes = new long[n][frames];
+        long[][] frameTimes = new long[n][frames];
+        double[] skipped = new double[n];
+        for (int i = -Math.min(frames, 500); i < frames; i++) {
+            for (int j = 0; j < n; j++) {
+                IncrementalEnqueueBenchmark b = benchmarks[j];
+                long t = b.frame();
+                if (i >= 0) {
+                    frameTimes[j][i] = t;
+                    enqueueTimes[j][i] = b.enqueue.getExecutionNanos();
+                    skipped[j] += b.enqueue.getSkippedPercent();
+                }
+            }
+        }
+        double[][] results = new double[n][];
+        for (int j = 0; j < n; j++) {
+            results[j] = new double[] {median(enqueueTimes[j]), median(frameTimes[j]), skipped[j] / frames};
+        }
+        return results;
+    }
+    
+    private static long median(long[] times) {
+        Arrays.sort(times);
+        return times[times.length / 2];
+    }
+    
+    public static void main(String[] args) {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int numNodes = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int geometries = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        float moving = args.length > 3 ? Float.parseFloat(args[3]) : 5;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 1;
+        System.out.println("frames=" + frames + " nodes=" + numNodes + " geometriesPerNode=" + geometries
+                + " movingPercent=" + moving);
+        double[][] results = run(frames,
+                new IncrementalEnqueueBenchmark(numNodes, geometries, moving, seed, false),
+                new IncrementalEnqueueBenchmark(numNodes, geometries, moving, seed, true));
+        print("full", results[0], results[0][0]);
+        print("incremental", results[1], results[0][0]);
+    }
+    private static void print(String mode, double[] result, double baseline) {
+        System.out.println(String.format("%-11s enqueue=%8.3fms (%.2fx) frame=%8.3fms skipped=%5.1f%%",
+                mode, result[0] / 1e6, baseline / result[0], result[1] / 1e6, result[2]));
+    }
+    
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (c) 2024, codex
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package codex.renthyl;
+
+import codex.renthyl.definitions.ResourceDef;
+import codex.renthyl.modules.Junction;
+import codex.renthyl.modules.ModuleIndex;
+import codex.renthyl.modules.RenderModule;
+import codex.renthyl.modules.RenderPass;
+import codex.renthyl.resources.ResourceTicket;
+import codex.renthyl.resources.TimeFrame;
+import com.jme3.asset.AssetInfo;
+import com.jme3.asset.AssetKey;
+import com.jme3.asset.AssetLocator;
+import com.jme3.asset.AssetManager;
+import com.jme3.asset.DesktopAssetManager;
+import com.jme3.asset.plugins.UrlAssetInfo;
+import com.jme3.material.plugins.J3MLoader;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Checks that connection updates leave a {@link FrameGraph} in the same state
+ * as full layout updates.
+ * <p>
+ * Two identical graphs of passes and a {@link Junction} receive the same random
+ * changes each frame: the junction switches inputs, tickets are connected and
+ * disconnected, and occasionally a pass changes threads. The first graph updates
+ * however it decides to, while the second is forced to make a full layout update
+ * every frame with {@link FrameGraph#setLayoutUpdateNeeded()}. After preparation
+ * and culling, the queue index and used state of every module, and the lifetime
+ * of every output of a used module, must be equal. Changes the first graph fails
+ * to notice therefore show up as differences too.
+ * <p>
+ * Modules are prepared and culled but not executed, so no renderer is needed.
+ * <p>
+ * Usage: {@code LayoutUpdateCheck [frames] [seed]}
+ * 
+ * @author codex
+ */
+public class LayoutUpdateCheck {
+    
+    private static final ResourceDef<Object> DEF = new ResourceDef<Object>() {
+        @Override
+        public Object createResource() {
+            return new Object();
+        }
+        @Override
+        public Object applyDirectResource(Object resource) {
+            return resource;
+        }
+        @Override
+        public Object applyIndirectResource(Object resource) {
+            return null;
+        }
+    };
+    
+    private final FrameGraph frameGraph = new FrameGraph(createAssetManager());
+    private final ArrayList<RenderModule> modules = new ArrayList<>();
+    private final Pass a, b, c, d, f, sink, sink2;
+    private final Junction<Object> junction;
+    
+    public LayoutUpdateCheck() {
+        a = add(new Pass(false, true));
+        b = add(new Pass(true, true));
+        c = add(new Pass(false, true));
+        junction = add(new Junction<>(3, 1));
+        d = add(new Pass(true, true));
+        f = add(new Pass(true, true));
+        sink = add(new Pass(true, false));
+        sink2 = add(new Pass(true, false));
+        b.input.setSource(a.output);
+        junction.getInput(Junction.getInput(0)).setSource(b.output);
+        junction.getInput(Junction.getInput(1)).setSource(c.output);
+        junction.getInput(Junction.getInput(2)).setSource(a.output);
+        d.input.setSource(junction.getOutput(Junction.getOutput()));
+        f.input.setSource(c.output);
+        sink.input.setSource(d.output);
+        sink2.input.setSource(f.output);
+    }
+    
+    /**
+     * Creates an asset manager that can load the framegraph's materials from
+     * the classpath.
+     * 
+     * @return 
+     */
+    static AssetManager createAssetManager() {
+        AssetManager assetManager = new DesktopAssetManager(false);
+        assetManager.registerLocator("/", ResourceLocator.class);
+        assetManager.registerLoader(J3MLoader.class, "j3m", "j3md");
+        return assetManager;
+    }
+    private <T extends RenderModule> T add(T module) {
+        modules.add(frameGraph.add(module));
+        return module;
+    }
+    
+    /**
+     * Applies a change to the graph.
+     * 
+     * @param change kind of change
+     * @param value value for the change
+     */
+    public void change(int change, int value) {
+        switch (change) {
+            // an index out of range disconnects the junction
+            case 0: junction.setDefaultIndex(value % 4); break;
+            case 1: sink.extra.setSource(value % 2 == 0 ? a.output : null); break;
+            case 2: sink2.input.setSource(value % 2 == 0 ? f.output : null); break;
+            case 3: d.extra.setSource(value % 2 == 0 ? c.output : null); break;
+            case 4: f.setThreadAssignment(value % 2); break;
+        }
+    }
+    /**
+     * Prepares and culls the graph for a frame.
+     */
+    public void prepare() {
+        frameGraph.getResources().beginRenderFrame(null, null);
+        frameGraph.prepareModules();
+    }
+    /**
+     * Ends the frame.
+     */
+    public void reset() {
+        frameGraph.getRoot().resetModuleRender(frameGraph.getContext());
+        frameGraph.getResources().clear();
+        frameGraph.getRoot().renderingComplete();
+    }
+    /**
+     * Compares the state of this graph with the other graph.
+     * 
+     * @param other
+     * @return description of the first difference, or null if equal
+     */
+    public String compare(LayoutUpdateCheck other) {
+        for (int i = 0; i < modules.size(); i++) {
+            RenderModule m = modules.get(i), n = other.modules.get(i);
+            ModuleIndex x = m.getIndex(), y = n.getIndex();
+            if (x.getThreadIndex() != y.getThreadIndex() || x.getQueueIndex() != y.getQueueIndex()) {
+                return "module " + i + " index " + x + " != " + y;
+            }
+            if (m.isUsed() != n.isUsed()) {
+                return "module " + i + " used " + m.isUsed() + " != " + n.isUsed();
+            }
+            // outputs of culled modules are only removed on frames that cull
+            if (m.isUsed() && m instanceof Pass && ((Pass)m).output != null) {
+                TimeFrame s = frameGraph.getResources().getLifeTime(((Pass)m).output);
+                TimeFrame t = other.frameGraph.getResources().getLifeTime(((Pass)n).output);
+                if (!lifetimesEqual(s, t)) {
+                    return "module " + i + " output lifetime " + describe(s) + " != " + describe(t);
+                }
+            }
+        }
+        return null;
+    }
+    
+    private static boolean lifetimesEqual(TimeFrame s, TimeFrame t) {
+        if (s == null || t == null) {
+            return s == t;
+        }
+        return s.getThreadIndex() == t.getThreadIndex() && s.getStartQueueIndex() == t.getStartQueueIndex()
+                && s.getLength() == t.getLength() && s.isAsync() == t.isAsync();
+    }
+    private static String describe(TimeFrame t) {
+        if (t == null) {
+            return "culled";
+        }
+        return "[thread=" + t.getThreadIndex() + ", start=" + t.getStartQueueIndex()
+                + ", length=" + t.getLength() + ", async=" + t.isAsync() + "]";
+    }
+    
+    /**
+     * Pass that optionally declares an output and references its inputs.
+     */
+    private static class Pass extends RenderPass {
+        
+        private final boolean hasInput, hasOutput;
+        private ResourceTicket<Object> input, extra, output;
+        
+        public Pass(boolean hasInput, boolean hasOutput) {
+            this.hasInput = hasInput;
+            this.hasOutput = hasOutput;
+        }
+        
+        @Override
+        protected void initialize(FrameGraph frameGraph) {
+            if (hasInput) {
+                input = addInput("Input");
+                extra = addInput("Extra");
+            }
+            if (hasOutput) {
+                output = addOutput("Output");
+            }
+        }
+        @Override
+        protected void prepare(FGRenderContext context) {
+            if (hasOutput) {
+                declare(DEF, output);
+            }
+            if (hasInput) {
+                referenceOptional(input, extra);
+            }
+        }
+        @Override
+        protected void execute(FGRenderContext context) {}
+        @Override
+        protected void reset(FGRenderContext context) {}
+        @Override
+        protected void cleanup(FrameGraph frameGraph) {}
+        @Override
+        public boolean isUsed() {
+            // sinks are used while connected to anything
+            return hasOutput ? super.isUsed() : input.hasSource() || extra.hasSource();
+        }
+        
+    }
+    
+    /**
+     * Locates assets with the class loader. Unlike jME's classpath locator,
+     * this does not require a desktop platform.
+     */
+    public static class ResourceLocator implements AssetLocator {
+        
+        @Override
+        public void setRootPath(String rootPath) {}
+        @Override
+        public AssetInfo locate(AssetManager manager, AssetKey key) {
+            URL url = LayoutUpdateCheck.class.getClassLoader().getResource(key.getName());
+            if (url == null) {
+                return null;
+            }
+            try {
+                return UrlAssetInfo.create(manager, key, url);
+            } catch (IOException ex) {
+                return null;
+            }
+        }
+        
+    }
+    
+    public static void main(String[] args) {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1L;
+        Random random = new Random(seed);
+        LayoutUpdateCheck narrowed = new LayoutUpdateCheck();
+        LayoutUpdateCheck forced = new LayoutUpdateCheck();
+        int failures = 0;
+        for (int i = 0; i < frames; i++) {
+            int changes = random.nextInt(3);
+            for (int j = 0; j < changes; j++) {
+                // thread changes are rare, since they are layout changes
+                int change = random.nextInt(20) == 0 ? 4 : random.nextInt(4);
+                int value = random.nextInt(8);
+                narrowed.change(change, value);
+                forced.change(change, value);
+            }
+            narrowed.prepare();
+            forced.frameGraph.setLayoutUpdateNeeded();
+            forced.prepare();
+            String diff = narrowed.compare(forced);
+            if (diff != null && failures++ < 10) {
+                System.err.println("Frame " + i + ": " + diff);
+            }
+            narrowed.reset();
+            forced.reset();
+        }
+        System.out.println("frames=" + frames + " seed=" + seed);
+        System.out.println("narrowed: layoutUpdates=" + narrowed.frameGraph.getNumLayoutUpdates()
+                + " connectionUpdates=" + narrowed.frameGraph.getNumConnectionUpdates());
+        System.out.println("forced:   layoutUpdates=" + forced.frameGraph.getNumLayoutUpdates()
+                + " connectionUpdates=" + forced.frameGraph.getNumConnectionUpdates());
+        if (failures > 0) {
+            System.out.println("FAILED: " + failures + " frames differ");
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+    }
+    
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2024, codex
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package codex.renthyl;
+
+import codex.renthyl.definitions.ResourceDef;
+import codex.renthyl.modules.RenderPass;
+import codex.renthyl.resources.RenderObjectMap;
+import codex.renthyl.resources.ResourceTicket;
+import com.jme3.asset.AssetManager;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.RenderManager;
+import com.jme3.renderer.ViewPort;
+import com.jme3.system.NullRenderer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Measures the passes and time saved by memoizing pass outputs under
+ * {@link RenderPass#getContentKey(FGRenderContext) content keys} across viewports.
+ * <p>
+ * A number of viewports are rendered each frame with a {@link NullRenderer}, each by
+ * its own {@link FrameGraph} sharing one {@link FGPipelineContext}, as a main view,
+ * reflection views and minimaps would be. Each graph has a producer pass that busy-works
+ * for a fixed time to produce camera independent content, such as a light or sky
+ * lookup, and a consumer pass that reads it. With keys, producers return the frame
+ * number as their content key, so only the first viewport's producer should execute
+ * each frame. Without keys, every producer executes.
+ * <p>
+ * Consumers check that the content they receive was produced in the same frame, so
+ * that memoized objects reused across frames or overwritten before use are counted
+ * as errors.
+ * <p>
+ * Usage: {@code MemoizationBenchmark [frames] [viewports] [workMicros]}
+ * 
+ * @author codex
+ */
+public class MemoizationBenchmark {
+    
+    private static final ResourceDef<long[]> DEF = new ResourceDef<long[]>() {
+        @Override
+        public long[] createResource() {
+            return new long[1];
+        }
+        @Override
+        public long[] applyDirectResource(Object resource) {
+            return resource instanceof long[] ? (long[])resource : null;
+        }
+        @Override
+        public long[] applyIndirectResource(Object resource) {
+            return null;
+        }
+    };
+    
+    private final AssetManager assetManager = LayoutUpdateCheck.createAssetManager();
+    private final RenderManager renderManager = new RenderManager(new NullRenderer());
+    private final FGPipelineContext pipelineContext = new FGPipelineContext(renderManager);
+    private final ArrayList<ViewPort> viewPorts = new ArrayList<>();
+    private final ArrayList<FrameGraph> frameGraphs = new ArrayList<>();
+    private final ArrayList<Consumer> consumers = new ArrayList<>();
+    private long frame = 0;
+    
+    public MemoizationBenchmark(int numViewPorts, long workMicros, boolean keyed) {
+        renderManager.registerContext(FrameGraph.CONTEXT_TYPE, pipelineContext);
+        for (int i = 0; i < numViewPorts; i++) {
+            Camera cam = new Camera(640, 480);
+            viewPorts.add(new ViewPort("View" + i, cam));
+            FrameGraph fg = new FrameGraph(assetManager);
+            Producer producer = fg.add(new Producer(workMicros * 1000L, keyed));
+            Consumer consumer = fg.add(new Consumer());
+            consumer.input.setSource(producer.output);
+            frameGraphs.add(fg);
+            consumers.add(consumer);
+        }
+    }
+    
+    /**
+     * Renders every viewport for one frame.
+     * 
+     * @return time in nanoseconds
+     */
+    public long frame() {
+        frame++;
+        long start = System.nanoTime();
+        for (int i = 0; i < viewPorts.size(); i++) {
+            ViewPort vp = viewPorts.get(i);
+            FrameGraph fg = frameGraphs.get(i);
+            pipelineContext.startViewPortRender(renderManager, vp);
+            fg.pipelineRender(renderManager, pipelineContext, vp, 0.016f);
+            fg.endRenderFrame(renderManager);
+            pipelineContext.endViewPortRender(renderManager, vp);
+        }
+        pipelineContext.endContextRenderFrame(renderManager);
+        return System.nanoTime() - start;
+    }
+    
+    /**
+     * Renders the frames.
+     * 
+     * @param frames
+     * @return {median frame nanos, total skipped passes, total saved nanos, errors}
+     */
+    public long[] run(int frames) {
+        RenderObjectMap map = pipelineContext.getRenderObjects();
+        long[] times = new long[frames];
+        long skipped = 0, saved = 0;
+        for (int i = -Math.min(frames, 200); i < frames; i++) {
+            long t = frame();
+            if (i >= 0) {
+                times[i] = t;
+                skipped += map.getMemoSkippedPasses();
+                saved += map.getMemoSavedNanos();
+            }
+        }
+        long errors = 0;
+        for (Consumer c : consumers) {
+            errors += c.errors;
+        }
+        Arrays.sort(times);
+        return new long[] {times[frames / 2], skipped, saved, errors};
+    }
+    
+    /**
+     * Produces content identified by the frame number.
+     */
+    private class Producer extends RenderPass {
+        
+        private final long workNanos;
+        private final boolean keyed;
+        private ResourceTicket<long[]> output;
+        private long sink = 0;
+        
+        public Producer(long workNanos, boolean keyed) {
+            this.workNanos = workNanos;
+            this.keyed = keyed;
+        }
+        
+        @Override
+        protected void initialize(FrameGraph frameGraph) {
+            output = addOutput("Output");
+        }
+        @Override
+        protected void prepare(FGRenderContext context) {
+            declare(DEF, output);
+        }
+        @Override
+        protected void execute(FGRenderContext context) {
+            long end = System.nanoTime() + workNanos;
+            while (System.nanoTime() < end) {
+                sink += sink * 31 + 7;
+            }
+            resources.acquire(output)[0] = frame;
+        }
+        @Override
+        protected void reset(FGRenderContext context) {}
+        @Override
+        protected void cleanup(FrameGraph frameGraph) {}
+        @Override
+        protected Object getContentKey(FGRenderContext context) {
+            return keyed ? frame : null;
+        }
+        
+    }
+    /**
+     * Checks that the content was produced this frame.
+     */
+    private class Consumer extends RenderPass {
+        
+        private ResourceTicket<long[]> input;
+        private int errors = 0;
+        
+        @Override
+        protected void initialize(FrameGraph frameGraph) {
+            input = addInput("Input");
+        }
+        @Override
+        protected void prepare(FGRenderContext context) {
+            reference(input);
+        }
+        @Override
+        protected void execute(FGRenderContext context) {
+            if (resources.acquire(input)[0] != frame) {
+                errors++;
+            }
+        }
+        @Override
+        protected void reset(FGRenderContext context) {}
+        @Override
+        protected void cleanup(FrameGraph frameGraph) {}
+        @Override
+        public boolean isUsed() {
+            return input.hasSource();
+        }
+        
+    }
+    
+    public static void main(String[] args) {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int numViewPorts = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        long work = args.length > 2 ? Long.parseLong(args[2]) : 500;
+        System.out.println("frames=" + frames + " viewports=" + numViewPorts + " workMicros=" + work);
+        long[] plain = new MemoizationBenchmark(numViewPorts, work, false).run(frames);
+        long[] keyed = new MemoizationBenchmark(numViewPorts, work, true).run(frames);
+        print("unkeyed", plain, frames, plain[0]);
+        print("keyed", keyed, frames, plain[0]);
+        if (plain[3] + keyed[3] > 0) {
+            System.out.println("FAILED: consumers received stale content");
+            System.exit(1);
+        }
+    }
+    private static void print(String mode, long[] result, int frames, long baseline) {
+        System.out.println(String.format("%-8s frame=%8.3fms (%.2fx) skippedPasses/frame=%.2f meanSaved/frame=%.3fms errors=%d",
+                mode, result[0] / 1e6, (double)baseline / result[0], (double)result[1] / frames,
+                result[2] / 1e6 / frames, result[3]));
+    }
+    
+}
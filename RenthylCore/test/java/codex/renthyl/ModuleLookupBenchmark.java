@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2024, codex
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package codex.renthyl;
+
+import codex.renthyl.modules.ModuleLocator;
+import codex.renthyl.modules.RenderModule;
+import codex.renthyl.resources.ResourceTicket;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.function.Consumer;
+
+/**
+ * Measures loading and searching a large graph through the indexed ticket
+ * and module lookups, against the linear searches they replace.
+ * <p>
+ * Each run adds a chain of modules to a new {@link FrameGraph} with
+ * {@link FrameGraph#addLoop(codex.renthyl.modules.RenderModule[], java.util.function.Function, java.lang.String, java.lang.String) addLoop},
+ * then connects every remaining ticket of each module to the previous module by name,
+ * as {@link codex.renthyl.export.ModuleGraphData} does when read. Finally, every module
+ * is located by type and name. Connecting is also timed with tickets found by scanning
+ * the ticket lists, and locating with the module tree searched, as before indexing.
+ * Reported are median times per run.
+ * <p>
+ * Usage: {@code ModuleLookupBenchmark [modules] [ticketsPerModule] [runs]}
+ * 
+ * @author codex
+ */
+public class ModuleLookupBenchmark {
+    
+    private final int numModules, numTickets;
+    private FrameGraph frameGraph;
+    private LookupModule[] modules;
+    
+    public ModuleLookupBenchmark(int numModules, int numTickets) {
+        this.numModules = numModules;
+        this.numTickets = numTickets;
+    }
+    
+    /**
+     * Creates a new graph with modules connected only by their first tickets.
+     * 
+     * @return time in nanoseconds
+     */
+    public long load() {
+        long start = System.nanoTime();
+        frameGraph = new FrameGraph(LayoutUpdateCheck.createAssetManager());
+        modules = frameGraph.addLoop(new LookupModule[numModules],
+                i -> new LookupModule("Lookup" + i, numTickets), "Out0", "In0");
+        return System.nanoTime() - start;
+    }
+    
+    /**
+     * Connects the remaining tickets of each module to the previous module.
+     * 
+     * @param scan true to find tickets by scanning ticket lists
+     * @return time in nanoseconds
+     */
+    public long connect(boolean scan) {
+        long start = System.nanoTime();
+        for (int i = 1; i < modules.length; i++) {
+            for (int j = 1; j < numTickets; j++) {
+                if (scan) {
+                    ResourceTicket out = find(modules[i-1].getOutputTickets(), "Out" + j);
+                    find(modules[i].getInputTickets(), "In" + j).setSource(out);
+                } else {
+                    modules[i].makeInput(modules[i-1], "Out" + j, "In" + j);
+                }
+            }
+        }
+        return System.nanoTime() - start;
+    }
+    
+    /**
+     * Locates every module by type and name.
+     * 
+     * @param scan true to search the module tree
+     * @return time in nanoseconds
+     */
+    public long locate(boolean scan) {
+        long start = System.nanoTime();
+        for (int i = 0; i < modules.length; i++) {
+            ModuleLocator<LookupModule> by = ModuleLocator.by(LookupModule.class, "Lookup" + i);
+            RenderModule m = scan ? frameGraph.getRoot().get(by) : frameGraph.get(by);
+            if (m != modules[i]) {
+                throw new IllegalStateException("Located the wrong module.");
+            }
+        }
+        return System.nanoTime() - start;
+    }
+    
+    private static ResourceTicket find(LinkedList<ResourceTicket> tickets, String name) {
+        // the search previously used by RenderModule
+        return tickets.stream().filter(t -> name.equals(t.getName())).findFirst().orElse(null);
+    }
+    private static long median(long[] times) {
+        Arrays.sort(times);
+        return times[times.length / 2];
+    }
+    
+    private static class LookupModule extends RenderModule {
+        
+        public LookupModule(String name, int numTickets) {
+            setName(name);
+            for (int i = 0; i < numTickets; i++) {
+                addInput("In" + i);
+                addOutput("Out" + i);
+            }
+        }
+        
+        @Override
+        protected void initModule(FrameGraph frameGraph) {}
+        @Override
+        protected void prepareModuleRender(FGRenderContext context) {}
+        @Override
+        protected void executeRender(FGRenderContext context) {}
+        @Override
+        protected void resetRender(FGRenderContext context) {}
+        @Override
+        protected void cleanupModule(FrameGraph frameGraph) {}
+        @Override
+        public void renderingComplete() {}
+        @Override
+        public void traverse(Consumer<RenderModule> traverser) {
+            traverser.accept(this);
+        }
+        
+    }
+    
+    public static void main(String[] args) {
+        int numModules = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int numTickets = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        ModuleLookupBenchmark bench = new ModuleLookupBenchmark(numModules, numTickets);
+        long[] load = new long[runs], connect = new long[runs], connectScan = new long[runs];
+        long[] locate = new long[runs], locateScan = new long[runs];
+        // the first runs warm up
+        for (int i = -Math.min(runs, 3); i < runs; i++) {
+            long l = bench.load();
+            long c = bench.connect(false);
+            long f = bench.locate(false);
+            bench.load();
+            long cs = bench.connect(true);
+            long fs = bench.locate(true);
+            if (i >= 0) {
+                load[i] = l;
+                connect[i] = c;
+                connectScan[i] = cs;
+                locate[i] = f;
+                locateScan[i] = fs;
+            }
+        }
+        System.out.println("modules=" + numModules + " tickets/module=" + numTickets + " runs=" + runs);
+        System.out.println(String.format("load     %9.3fms", median(load) / 1e6));
+        System.out.println(String.format("connect  indexed=%9.3fms scan=%9.3fms", median(connect) / 1e6, median(connectScan) / 1e6));
+        System.out.println(String.format("locate   indexed=%9.3fms scan=%9.3fms", median(locate) / 1e6, median(locateScan) / 1e6));
+    }
+    
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2024, codex
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package codex.renthyl;
+
+import codex.renthyl.modules.RenderModule;
+import codex.renthyl.resources.ResourceTicket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * Checks that {@link DependencyScheduler} completes graphs whose pinned modules
+ * are traversed in any order, and never executes a module before its inputs.
+ * <p>
+ * Each trial connects random modules into an acyclic graph, pins some of them to
+ * the main thread, and shuffles the order they are traversed in, so that pinned
+ * modules often depend on pinned modules traversed after them through thread safe
+ * modules. Several frames are executed per trial.
+ * <p>
+ * Usage: {@code SchedulerOrderCheck [modules] [trials] [seed]}
+ * 
+ * @author codex
+ */
+public class SchedulerOrderCheck {
+    
+    private final Random random;
+    private final DependencyScheduler scheduler = new DependencyScheduler();
+    private final ForkJoinPool pool = new ForkJoinPool(3);
+    private int failures = 0;
+    
+    public SchedulerOrderCheck(long seed) {
+        random = new Random(seed);
+        scheduler.setPool(pool);
+    }
+    
+    /**
+     * Runs one trial.
+     * 
+     * @param numModules
+     * @param frames
+     * @throws InterruptedException 
+     */
+    public void trial(int numModules, int frames) throws InterruptedException {
+        ArrayList<CheckModule> modules = new ArrayList<>(numModules);
+        for (int i = 0; i < numModules; i++) {
+            CheckModule m = new CheckModule(random.nextInt(3) == 0);
+            // sources are only taken from earlier modules, so the graph is acyclic
+            for (int j = random.nextInt(3); j > 0 && i > 0; j--) {
+                m.connect(modules.get(random.nextInt(i)));
+            }
+            modules.add(m);
+        }
+        Collections.shuffle(modules, random);
+        scheduler.build(new GraphRoot(modules));
+        for (int f = 0; f < frames; f++) {
+            boolean complete = scheduler.execute(null, 1000);
+            boolean ordered = true;
+            for (CheckModule m : modules) {
+                ordered &= m.ordered && m.done;
+                m.done = false;
+                m.ordered = true;
+            }
+            if (!complete || !ordered) {
+                failures++;
+                return;
+            }
+        }
+    }
+    
+    private static class CheckModule extends RenderModule {
+        
+        private final boolean pinned;
+        private final ArrayList<CheckModule> sources = new ArrayList<>(2);
+        private final ResourceTicket<Object> out;
+        private volatile boolean done = false;
+        private volatile boolean ordered = true;
+        
+        public CheckModule(boolean pinned) {
+            this.pinned = pinned;
+            out = addOutput("Out");
+        }
+        
+        public void connect(CheckModule source) {
+            ResourceTicket<Object> in = addInput("In" + sources.size());
+            in.setSource(source.out);
+            sources.add(source);
+        }
+        
+        @Override
+        protected void initModule(FrameGraph frameGraph) {}
+        @Override
+        protected void prepareModuleRender(FGRenderContext context) {}
+        @Override
+        protected void executeRender(FGRenderContext context) {
+            for (int i = 0; i < sources.size(); i++) {
+                if (!sources.get(i).done) {
+                    ordered = false;
+                }
+            }
+            done = true;
+        }
+        @Override
+        protected void resetRender(FGRenderContext context) {}
+        @Override
+        protected void cleanupModule(FrameGraph frameGraph) {}
+        @Override
+        public void renderingComplete() {}
+        @Override
+        public void traverse(Consumer<RenderModule> traverser) {
+            traverser.accept(this);
+        }
+        @Override
+        public boolean isUsed() {
+            return true;
+        }
+        @Override
+        public boolean isThreadSafe() {
+            return !pinned;
+        }
+        
+    }
+    private static class GraphRoot extends RenderModule {
+        
+        private final ArrayList<CheckModule> modules;
+        
+        public GraphRoot(ArrayList<CheckModule> modules) {
+            this.modules = modules;
+        }
+        
+        @Override
+        protected void initModule(FrameGraph frameGraph) {}
+        @Override
+        protected void prepareModuleRender(FGRenderContext context) {}
+        @Override
+        protected void executeRender(FGRenderContext context) {}
+        @Override
+        protected void resetRender(FGRenderContext context) {}
+        @Override
+        protected void cleanupModule(FrameGraph frameGraph) {}
+        @Override
+        public void renderingComplete() {}
+        @Override
+        public void traverse(Consumer<RenderModule> traverser) {
+            for (CheckModule m : modules) {
+                traverser.accept(m);
+            }
+        }
+        
+    }
+    
+    public static void main(String[] args) throws InterruptedException {
+        int modules = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+        int trials = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+        SchedulerOrderCheck check = new SchedulerOrderCheck(seed);
+        for (int i = 0; i < trials; i++) {
+            check.trial(modules, 10);
+        }
+        check.pool.shutdown();
+        System.out.println("trials=" + trials + " modules=" + modules + " failed=" + check.failures);
+        if (check.failures > 0) {
+            System.out.println("FAILED: " + check.failures + " trials");
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+    }
+    
+}
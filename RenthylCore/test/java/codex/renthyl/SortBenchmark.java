@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2024, codex
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package codex.renthyl;
+
+import com.jme3.bounding.BoundingSphere;
+import com.jme3.material.Material;
+import com.jme3.material.MaterialDef;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.queue.GeometryComparator;
+import com.jme3.renderer.queue.OpaqueComparator;
+import com.jme3.renderer.queue.TransparentComparator;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.shape.Box;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Compares sorting a {@link GeometryQueue} with its comparator (jME's
+ * {@code ListSort}) against radix sorting it by {@link GeometrySortKey}.
+ * <p>
+ * Random boxes and spheres are placed around a camera. Before each sort the
+ * queue is refilled in a new random order and cached queue distances are
+ * cleared, as happens between frames, and only the sort is timed. The median
+ * time per sort is reported.
+ * <p>
+ * Without a renderer, materials select no technique and share a sort id, so
+ * opaque geometries differ only in depth.
+ * <p>
+ * Usage: {@code SortBenchmark [sorts] [sizes...]}
+ * 
+ * @author codex
+ */
+public class SortBenchmark {
+    
+    private final Random random = new Random(1);
+    private final Camera cam = new Camera(640, 480);
+    private final Material[] materials = new Material[8];
+    
+    public SortBenchmark() {
+        cam.setFrustumPerspective(60f, 640f / 480f, 0.1f, 1000f);
+        cam.setLocation(new Vector3f(0f, 0f, 0f));
+        cam.lookAt(new Vector3f(0f, 0f, -1f), Vector3f.UNIT_Y);
+        for (int i = 0; i < materials.length; i++) {
+            materials[i] = new Material(new MaterialDef(null, "Bench" + i));
+        }
+    }
+    
+    /**
+     * Sorts the number of geometries repeatedly.
+     * 
+     * @param factory creates the comparator
+     * @param numGeometries
+     * @param sorts
+     * @param radix
+     * @return median nanoseconds per sort
+     */
+    public long run(Supplier<GeometryComparator> factory, int numGeometries, int sorts, boolean radix) {
+        Geometry[] geometries = createGeometries(numGeometries);
+        GeometryQueue queue = new GeometryQueue(factory.get());
+        queue.setRadixSort(radix);
+        queue.setCamera(cam);
+        long[] times = new long[sorts];
+        for (int s = 0; s < sorts; s++) {
+            shuffle(geometries);
+            queue.clear();
+            for (Geometry g : geometries) {
+                g.queueDistance = Float.NEGATIVE_INFINITY;
+                queue.add(g);
+            }
+            long start = System.nanoTime();
+            queue.sort();
+            times[s] = System.nanoTime() - start;
+        }
+        // the median is reported, since it is not skewed by collections
+        Arrays.sort(times);
+        return times[sorts / 2];
+    }
+    private Geometry[] createGeometries(int n) {
+        Geometry[] array = new Geometry[n];
+        for (int i = 0; i < n; i++) {
+            Geometry g = new Geometry("Geometry" + i, new Box(1f, 1f, 1f));
+            if (random.nextBoolean()) {
+                g.setModelBound(new BoundingSphere());
+            }
+            g.setMaterial(materials[random.nextInt(materials.length)]);
+            g.setLocalTranslation((random.nextFloat() * 2f - 1f) * 200f,
+                    (random.nextFloat() * 2f - 1f) * 200f, -random.nextFloat() * 500f);
+            g.updateGeometricState();
+            array[i] = g;
+        }
+        return array;
+    }
+    private void shuffle(Geometry[] array) {
+        for (int i = array.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            Geometry g = array[i];
+            array[i] = array[j];
+            array[j] = g;
+        }
+    }
+    
+    public static void main(String[] args) {
+        int sorts = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int[] sizes = {1000, 10000, 100000};
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                sizes[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+        SortBenchmark bench = new SortBenchmark();
+        String[] names = {"opaque", "transparent"};
+        Supplier<GeometryComparator>[] factories = new Supplier[] {
+            (Supplier<GeometryComparator>)OpaqueComparator::new,
+            (Supplier<GeometryComparator>)TransparentComparator::new
+        };
+        for (int n : sizes) {
+            // small queues sort more often, so that each size runs long enough to be compiled
+            int s = Math.max(sorts, 1000000 / n);
+            for (int i = 0; i < factories.length; i++) {
+                // warm up both on the same size
+                bench.run(factories[i], n, s, false);
+                bench.run(factories[i], n, s, true);
+                long list = bench.run(factories[i], n, s, false);
+                long radix = bench.run(factories[i], n, s, true);
+                System.out.println(String.format("%-12s n=%7d listSort=%10.1fus radix=%10.1fus speedup=%5.2fx",
+                        names[i], n, list / 1e3, radix / 1e3, (double)list / radix));
+            }
+        }
+    }
+    
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2024, codex
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package codex.renthyl;
+
+import com.jme3.bounding.BoundingSphere;
+import com.jme3.material.Material;
+import com.jme3.material.MaterialDef;
+import com.jme3.math.Vector3f;
+import com.jme3.renderer.Camera;
+import com.jme3.renderer.queue.GeometryComparator;
+import com.jme3.renderer.queue.GuiComparator;
+import com.jme3.renderer.queue.OpaqueComparator;
+import com.jme3.renderer.queue.TransparentComparator;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.shape.Box;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Checks that radix sorting a {@link GeometryQueue} by {@link GeometrySortKey}
+ * produces exactly the order of sorting by the equivalent comparator.
+ * <p>
+ * Each trial places random boxes and spheres around a random camera, some
+ * sharing positions and some enclosing the camera so that equal distances
+ * are common, then sorts copies of the same queue both ways and compares them
+ * element by element.
+ * <p>
+ * Usage: {@code SortKeyCheck [geometries] [trials] [seed]}
+ * 
+ * @author codex
+ */
+public class SortKeyCheck {
+    
+    private final Random random;
+    private final Material[] materials = new Material[4];
+    private int failures = 0;
+    
+    public SortKeyCheck(long seed) {
+        random = new Random(seed);
+        for (int i = 0; i < materials.length; i++) {
+            materials[i] = new Material(new MaterialDef(null, "Check" + i));
+        }
+    }
+    
+    /**
+     * Runs trials for the comparator.
+     * 
+     * @param name
+     * @param factory creates new comparators of the type checked
+     * @param numGeometries
+     * @param trials 
+     */
+    public void run(String name, Supplier<GeometryComparator> factory, int numGeometries, int trials) {
+        int failed = 0;
+        for (int t = 0; t < trials; t++) {
+            Camera cam = createCamera();
+            Geometry[] geometries = createGeometries(numGeometries);
+            GeometryQueue expected = sort(factory.get(), cam, geometries, false);
+            GeometryQueue actual = sort(factory.get(), cam, geometries, true);
+            for (int i = 0; i < numGeometries; i++) {
+                if (expected.get(i) != actual.get(i)) {
+                    if (failed++ == 0) {
+                        System.err.println(name + ": trial " + t + " differs at index " + i
+                                + " (expected " + expected.get(i).getName()
+                                + ", got " + actual.get(i).getName() + ")");
+                    }
+                    break;
+                }
+            }
+        }
+        failures += failed;
+        System.out.println(String.format("%-12s %d/%d trials matched", name, trials - failed, trials));
+    }
+    
+    private GeometryQueue sort(GeometryComparator comparator, Camera cam, Geometry[] geometries, boolean radix) {
+        GeometryQueue queue = new GeometryQueue(comparator);
+        queue.setRadixSort(radix);
+        queue.setCamera(cam);
+        for (Geometry g : geometries) {
+            // both sorts start without cached distances
+            g.queueDistance = Float.NEGATIVE_INFINITY;
+            queue.add(g);
+        }
+        queue.sort();
+        return queue;
+    }
+    private Camera createCamera() {
+        Camera cam = new Camera(640, 480);
+        cam.setFrustumPerspective(60f, 640f / 480f, 0.1f, 1000f);
+        cam.setLocation(randomVector(20f));
+        cam.lookAt(randomVector(20f), Vector3f.UNIT_Y);
+        return cam;
+    }
+    private Geometry[] createGeometries(int n) {
+        Geometry[] array = new Geometry[n];
+        for (int i = 0; i < n; i++) {
+            Geometry g = new Geometry("Geometry" + i, new Box(1f + random.nextFloat() * 4f,
+                    1f + random.nextFloat() * 4f, 1f + random.nextFloat() * 4f));
+            if (random.nextBoolean()) {
+                g.setModelBound(new BoundingSphere());
+            }
+            g.setMaterial(materials[random.nextInt(materials.length)]);
+            if (i > 0 && random.nextInt(8) == 0) {
+                // share a position to produce equal keys
+                g.setLocalTranslation(array[random.nextInt(i)].getLocalTranslation());
+            } else {
+                g.setLocalTranslation(randomVector(50f));
+            }
+            g.updateGeometricState();
+            array[i] = g;
+        }
+        return array;
+    }
+    private Vector3f randomVector(float range) {
+        return new Vector3f((random.nextFloat() * 2f - 1f) * range,
+                (random.nextFloat() * 2f - 1f) * range, (random.nextFloat() * 2f - 1f) * range);
+    }
+    
+    public static void main(String[] args) {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int trials = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1L;
+        SortKeyCheck check = new SortKeyCheck(seed);
+        System.out.println("geometries=" + n + " trials=" + trials + " seed=" + seed);
+        check.run("opaque", OpaqueComparator::new, n, trials);
+        check.run("transparent", TransparentComparator::new, n, trials);
+        check.run("gui", GuiComparator::new, n, trials);
+        if (check.failures > 0) {
+            System.out.println("FAILED: " + check.failures + " trials");
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+    }
+    
+}
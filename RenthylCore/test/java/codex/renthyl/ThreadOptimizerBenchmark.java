@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2024, codex
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package codex.renthyl;
+
+import codex.renthyl.modules.RenderModule;
+import codex.renthyl.resources.ResourceTicket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Measures the frame times predicted and achieved by {@link ThreadOptimizer}
+ * on a synthetic wide graph.
+ * <p>
+ * A main thread source module feeds a number of uneven branches, each a chain of
+ * thread safe modules that busy-work for a random time, which all feed a main thread
+ * sink module. All modules start on the main thread, as they would without any
+ * {@link codex.renthyl.modules.RenderThread} indices chosen by hand. Frames are executed
+ * by an {@link ExecutionThreadManager} and reported to the optimizer as {@link FrameGraph}
+ * does. Halfway through, the work of the first branch is scaled to make the measured
+ * frame time drift from the prediction, which should cause a re-evaluation.
+ * <p>
+ * Reported per phase are the median measured frame time, the optimizer's predicted
+ * and measured frame times for its last window, and the critical path length. The
+ * optimizer evaluates at the end of a window, so the prediction reported after the
+ * first phase is for the assignment applied in the next phase. Predictions assume
+ * each thread runs on its own core, so they are only reachable with at least as
+ * many cores as threads.
+ * <p>
+ * Usage: {@code ThreadOptimizerBenchmark [frames] [threads] [branches] [depth] [workMicros] [driftScale] [seed]}
+ * 
+ * @author codex
+ */
+public class ThreadOptimizerBenchmark {
+    
+    private final ArrayList<WorkModule> modules = new ArrayList<>();
+    private final ArrayList<WorkModule> firstBranch = new ArrayList<>();
+    private final GraphRoot root = new GraphRoot(modules);
+    private final ThreadOptimizer optimizer;
+    private final ExecutionThreadManager executor = new ExecutionThreadManager();
+    private ExecutionQueueList queues;
+    private int applications = -1;
+    
+    public ThreadOptimizerBenchmark(int threads, int numBranches, int depth, long workMicros, long seed) {
+        optimizer = new ThreadOptimizer(threads);
+        Random random = new Random(seed);
+        long work = workMicros * 1000L;
+        WorkModule source = add(new WorkModule(work, false));
+        WorkModule sink = new WorkModule(work, false);
+        for (int b = 0; b < numBranches; b++) {
+            // branches are uneven, so that a round-robin assignment would not balance them
+            double scale = 0.25 + random.nextDouble() * 1.5;
+            WorkModule prev = source;
+            for (int d = 0; d < depth; d++) {
+                WorkModule m = add(new WorkModule((long)(work * scale * (0.5 + random.nextDouble())), true));
+                m.connect(prev);
+                if (b == 0) {
+                    firstBranch.add(m);
+                }
+                prev = m;
+            }
+            sink.connect(prev);
+        }
+        add(sink);
+    }
+    
+    private WorkModule add(WorkModule m) {
+        modules.add(m);
+        return m;
+    }
+    
+    /**
+     * Runs the frames, feeding each frame's execution time to the optimizer.
+     * 
+     * @param frames
+     * @return median frame time in nanoseconds
+     * @throws InterruptedException 
+     */
+    public long run(int frames) throws InterruptedException {
+        long[] times = new long[frames];
+        for (int i = 0; i < frames; i++) {
+            if (applications != optimizer.getApplications()) {
+                // assignments changed, so queue modules again as a layout update would
+                applications = optimizer.getApplications();
+                queues = new ExecutionQueueList();
+                for (WorkModule m : modules) {
+                    m.queueModule(null, queues, 0);
+                }
+            }
+            long start = System.nanoTime();
+            executor.start(null, queues);
+            if (!executor.await(5000)) {
+                throw new IllegalStateException("Frame timed out.");
+            }
+            executor.stop();
+            times[i] = System.nanoTime() - start;
+            optimizer.frameComplete(root, times[i], null);
+            for (WorkModule m : modules) {
+                m.done = false;
+            }
+        }
+        return median(times);
+    }
+    
+    /**
+     * Scales the work of each module in the first branch.
+     * 
+     * @param scale 
+     */
+    public void scaleFirstBranch(double scale) {
+        for (WorkModule m : firstBranch) {
+            m.workNanos = (long)(m.workNanos * scale);
+        }
+    }
+    
+    /**
+     * Counts the modules currently assigned off the main thread.
+     * 
+     * @return 
+     */
+    public int countOffMain() {
+        int n = 0;
+        for (WorkModule m : modules) {
+            if (m.getIndex().getThreadIndex() > 0) n++;
+        }
+        return n;
+    }
+    
+    public ThreadOptimizer getOptimizer() {
+        return optimizer;
+    }
+    
+    public void shutdown() {
+        executor.shutdown();
+    }
+    
+    private static long median(long[] times) {
+        long[] sorted = times.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+    
+    private static class WorkModule extends RenderModule {
+        
+        private final boolean threadSafe;
+        private final ArrayList<WorkModule> sources = new ArrayList<>(1);
+        private final ResourceTicket<Object> out;
+        private volatile boolean done = false;
+        private long workNanos;
+        private long sink = 0;
+        
+        public WorkModule(long workNanos, boolean threadSafe) {
+            this.workNanos = workNanos;
+            this.threadSafe = threadSafe;
+            out = addOutput("Out");
+        }
+        
+        public void connect(WorkModule source) {
+            ResourceTicket<Object> in = addInput("In" + sources.size());
+            in.setSource(source.out);
+            sources.add(source);
+        }
+        
+        @Override
+        protected void initModule(FrameGraph frameGraph) {}
+        @Override
+        protected void prepareModuleRender(FGRenderContext context) {}
+        @Override
+        protected void executeRender(FGRenderContext context) {
+            // waiting on inputs is excluded from the measured time, as in RenderPass
+            long wait = System.nanoTime();
+            for (int i = 0; i < sources.size(); i++) {
+                WorkModule s = sources.get(i);
+                while (!s.done) {
+                    Thread.yield();
+                }
+            }
+            excludeExecutionNanos(System.nanoTime() - wait);
+            long end = System.nanoTime() + workNanos;
+            while (System.nanoTime() < end) {
+                sink += sink * 31 + 7;
+            }
+            done = true;
+        }
+        @Override
+        protected void resetRender(FGRenderContext context) {}
+        @Override
+        protected void cleanupModule(FrameGraph frameGraph) {}
+        @Override
+        public void renderingComplete() {}
+        @Override
+        public void traverse(Consumer<RenderModule> traverser) {
+            traverser.accept(this);
+        }
+        @Override
+        public boolean isUsed() {
+            return true;
+        }
+        @Override
+        public boolean isThreadSafe() {
+            return threadSafe;
+        }
+        
+    }
+    private static class GraphRoot extends RenderModule {
+        
+        private final ArrayList<WorkModule> modules;
+        
+        public GraphRoot(ArrayList<WorkModule> modules) {
+            this.modules = modules;
+        }
+        
+        @Override
+        protected void initModule(FrameGraph frameGraph) {}
+        @Override
+        protected void prepareModuleRender(FGRenderContext context) {}
+        @Override
+        protected void executeRender(FGRenderContext context) {}
+        @Override
+        protected void resetRender(FGRenderContext context) {}
+        @Override
+        protected void cleanupModule(FrameGraph frameGraph) {}
+        @Override
+        public void renderingComplete() {}
+        @Override
+        public void traverse(Consumer<RenderModule> traverser) {
+            for (WorkModule m : modules) {
+                traverser.accept(m);
+            }
+        }
+        
+    }
+    
+    private static void print(String phase, long median, ThreadOptimizerBenchmark bench) {
+        ThreadOptimizer o = bench.getOptimizer();
+        System.out.println(String.format("%-9s frame=%8.3fms predicted=%8.3fms actual=%8.3fms criticalPath=%8.3fms offMain=%d",
+                phase, median / 1e6, o.getPredictedNanos() / 1e6, o.getActualNanos() / 1e6,
+                o.getCriticalPathNanos() / 1e6, bench.countOffMain()));
+    }
+    
+    public static void main(String[] args) throws InterruptedException {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 600;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int numBranches = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int depth = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        long work = args.length > 4 ? Long.parseLong(args[4]) : 50;
+        double drift = args.length > 5 ? Double.parseDouble(args[5]) : 3.0;
+        long seed = args.length > 6 ? Long.parseLong(args[6]) : 1;
+        System.out.println("frames=" + frames + " threads=" + threads + " branches=" + numBranches + " depth=" + depth
+                + " workMicros=" + work + " driftScale=" + drift + " cores=" + Runtime.getRuntime().availableProcessors());
+        ThreadOptimizerBenchmark bench = new ThreadOptimizerBenchmark(threads, numBranches, depth, work, seed);
+        int window = bench.getOptimizer().getWindowFrames();
+        // the first window runs with every module on the main thread
+        print("main", bench.run(window), bench);
+        print("optimized", bench.run(frames / 2), bench);
+        bench.scaleFirstBranch(drift);
+        print("drifted", bench.run(frames / 2), bench);
+        System.out.println(bench.getOptimizer().getReport());
+        bench.shutdown();
+    }
+    
+}
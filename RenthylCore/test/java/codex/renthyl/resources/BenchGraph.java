@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2024, codex
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package codex.renthyl.resources;
+
+import codex.renthyl.FrameGraph;
+import codex.renthyl.definitions.ResourceDef;
+import codex.renthyl.modules.ModuleIndex;
+import com.jme3.asset.DesktopAssetManager;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+/**
+ * Synthetic graph of resource users for exercising a {@link ResourceList}
+ * the same way {@link FrameGraph} does, without rendering.
+ * <p>
+ * Each user declares a number of outputs and references outputs of earlier
+ * users at fixed offsets. Every tenth user is a dead end whose outputs are
+ * never referenced, so that culling has work to do. The last user is a sink.
+ * 
+ * @author codex
+ */
+public class BenchGraph {
+    
+    private static final ResourceDef<Object> DEF = new ResourceDef<Object>() {
+        @Override
+        public Object createResource() {
+            return new Object();
+        }
+        @Override
+        public Object applyDirectResource(Object resource) {
+            return resource;
+        }
+        @Override
+        public Object applyIndirectResource(Object resource) {
+            return null;
+        }
+    };
+    private static final int[] INPUT_OFFSETS = {1, 2, 7};
+    
+    private final ArrayList<User> users = new ArrayList<>();
+    
+    /**
+     * 
+     * @param numUsers number of users
+     * @param numOutputs number of outputs per user
+     */
+    public BenchGraph(int numUsers, int numOutputs) {
+        ArrayList<User> live = new ArrayList<>();
+        for (int i = 0; i < numUsers; i++) {
+            User u = new User(i, numOutputs, i == numUsers - 1);
+            for (int offset : INPUT_OFFSETS) {
+                int j = live.size() - offset;
+                if (j >= 0) {
+                    User p = live.get(j);
+                    u.addInput(p.outputs.get(i % numOutputs));
+                }
+            }
+            users.add(u);
+            if (i % 10 != 9 || u.sink) {
+                live.add(u);
+            }
+        }
+    }
+    
+    /**
+     * Creates a resource list for benchmarking.
+     * 
+     * @return 
+     */
+    public static ResourceList createResourceList() {
+        return new ResourceList(new FrameGraph(new DesktopAssetManager(true)));
+    }
+    
+    /**
+     * Prepares all users.
+     * 
+     * @param resources 
+     */
+    public void prepare(ResourceList resources) {
+        for (int i = 0; i < users.size(); i++) {
+            users.get(i).prepare(resources);
+        }
+    }
+    /**
+     * Counts references of all users.
+     */
+    public void countReferences() {
+        for (int i = 0; i < users.size(); i++) {
+            users.get(i).countReferences();
+        }
+    }
+    
+    /**
+     * 
+     * @return 
+     */
+    public ArrayList<User> getUsers() {
+        return users;
+    }
+    /**
+     * Gets the number of users not culled by the last cull.
+     * 
+     * @return 
+     */
+    public int getNumUsed() {
+        int n = 0;
+        for (User u : users) {
+            if (u.isUsed()) n++;
+        }
+        return n;
+    }
+    
+    /**
+     * Resource user that declares and references tickets looked up by name,
+     * as render passes do.
+     */
+    public static class User implements ResourceUser {
+        
+        private final String name;
+        private final ModuleIndex index;
+        private final boolean sink;
+        private final LinkedList<ResourceTicket> inputs = new LinkedList<>();
+        private final LinkedList<ResourceTicket> outputs = new LinkedList<>();
+        private final HashMap<String, ResourceTicket> tickets = new HashMap<>();
+        private final ArrayList<String> inputNames = new ArrayList<>();
+        private final ArrayList<String> outputNames = new ArrayList<>();
+        private final PrepareRecord record = new PrepareRecord();
+        private int refs = 0;
+        
+        public User(int id, int numOutputs, boolean sink) {
+            this.name = "User" + id;
+            this.index = new ModuleIndex(ModuleIndex.MAIN_THREAD, id);
+            this.sink = sink;
+            for (int i = 0; i < numOutputs; i++) {
+                ResourceTicket t = new ResourceTicket<>("Out" + i);
+                outputs.add(t);
+                outputNames.add(t.getName());
+                tickets.put(t.getName(), t);
+            }
+        }
+        
+        private void addInput(ResourceTicket source) {
+            ResourceTicket t = new ResourceTicket<>("In" + inputs.size());
+            t.setSource(source);
+            inputs.add(t);
+            inputNames.add(t.getName());
+            tickets.put(t.getName(), t);
+        }
+        
+        /**
+         * Runs this user's preparation logic.
+         * 
+         * @param resources 
+         */
+        public void prepare(ResourceList resources) {
+            for (int i = 0; i < outputNames.size(); i++) {
+                resources.declare(this, DEF, tickets.get(outputNames.get(i)));
+            }
+            ResourceTicket[] in = new ResourceTicket[inputNames.size()];
+            for (int i = 0; i < in.length; i++) {
+                in[i] = tickets.get(inputNames.get(i));
+            }
+            resources.reference(index, name, in);
+        }
+        /**
+         * Records this user's preparation on the first call, and replays
+         * the record on following calls.
+         * 
+         * @param resources 
+         */
+        public void prepareRecorded(ResourceList resources) {
+            if (record.isValid(0)) {
+                resources.replay(this, record);
+            } else {
+                resources.beginRecording(record);
+                prepare(resources);
+                resources.endRecording(0);
+            }
+        }
+        
+        @Override
+        public LinkedList<ResourceTicket> getInputTickets() {
+            return inputs;
+        }
+        @Override
+        public LinkedList<ResourceTicket> getOutputTickets() {
+            return outputs;
+        }
+        @Override
+        public ModuleIndex getIndex() {
+            return index;
+        }
+        @Override
+        public void countReferences() {
+            refs = outputs.size();
+        }
+        @Override
+        public void dereference() {
+            refs--;
+        }
+        @Override
+        public boolean isUsed() {
+            return sink || refs > 0;
+        }
+        @Override
+        public String toString() {
+            return name;
+        }
+        
+    }
+    
+}
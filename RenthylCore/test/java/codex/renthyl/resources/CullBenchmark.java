@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2024, codex
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package codex.renthyl.resources;
+
+import java.util.Arrays;
+
+/**
+ * Measures how {@link ResourceList#cullUnreferenced()} scales with the
+ * number of passes.
+ * <p>
+ * For each graph size, a {@link BenchGraph} is prepared and its references
+ * counted as {@link codex.renthyl.FrameGraph} does on a layout update, then
+ * only the cull is timed. The median time per cull is reported.
+ * <p>
+ * Usage: {@code CullBenchmark [frames] [sizes...]}
+ * 
+ * @author codex
+ */
+public class CullBenchmark {
+    
+    /**
+     * Runs the frames on a graph with the number of passes.
+     * 
+     * @param passes
+     * @param frames
+     * @return result line
+     */
+    public static String run(int passes, int frames) {
+        BenchGraph graph = new BenchGraph(passes, 2);
+        ResourceList resources = BenchGraph.createResourceList();
+        long[] times = new long[frames];
+        for (int f = 0; f < frames; f++) {
+            resources.beginRenderFrame(null, null);
+            graph.prepare(resources);
+            resources.applyFutureReferences();
+            graph.countReferences();
+            long start = System.nanoTime();
+            resources.cullUnreferenced();
+            times[f] = System.nanoTime() - start;
+            resources.clear();
+        }
+        // the median is reported, since it is not skewed by collections
+        Arrays.sort(times);
+        double micros = times[frames / 2] / 1e3;
+        return String.format("passes=%6d cull=%10.2fus perPass=%7.3fus used=%d",
+                passes, micros, micros / passes, graph.getNumUsed());
+    }
+    
+    public static void main(String[] args) {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int[] sizes = {100, 300, 1000, 3000, 10000};
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                sizes[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+        for (int n : sizes) {
+            // small graphs run more frames, so that each size runs long enough to be compiled
+            int f = Math.max(frames, 200000 / n);
+            // warm up on the same size
+            run(n, f);
+            System.out.println(run(n, f));
+        }
+    }
+    
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2024, codex
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package codex.renthyl.resources;
+
+import java.util.ArrayList;
+
+/**
+ * Measures the cost of the prepare phase with and without
+ * {@link PrepareRecord record and replay}.
+ * <p>
+ * Each frame, all users of a {@link BenchGraph} are prepared, either by running
+ * their preparation logic or by replaying the record made on the first frame,
+ * and future references are applied. Only the prepare phase is timed.
+ * <p>
+ * Usage: {@code PrepareReplayBenchmark [passes] [frames]}
+ * 
+ * @author codex
+ */
+public class PrepareReplayBenchmark {
+    
+    private final BenchGraph graph;
+    private final ResourceList resources = BenchGraph.createResourceList();
+    private final int frames;
+    
+    public PrepareReplayBenchmark(int passes, int frames) {
+        this.graph = new BenchGraph(passes, 2);
+        this.frames = frames;
+    }
+    
+    /**
+     * Runs the frames.
+     * 
+     * @param replay
+     * @return average prepare time in microseconds
+     */
+    public double run(boolean replay) {
+        ArrayList<BenchGraph.User> users = graph.getUsers();
+        long total = 0;
+        for (int f = 0; f < frames; f++) {
+            resources.beginRenderFrame(null, null);
+            long start = System.nanoTime();
+            for (int i = 0; i < users.size(); i++) {
+                if (replay) {
+                    users.get(i).prepareRecorded(resources);
+                } else {
+                    users.get(i).prepare(resources);
+                }
+            }
+            resources.applyFutureReferences();
+            total += System.nanoTime() - start;
+            resources.clear();
+        }
+        return total / 1e3 / frames;
+    }
+    
+    public static void main(String[] args) {
+        int passes = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        PrepareReplayBenchmark bench = new PrepareReplayBenchmark(passes, frames);
+        System.out.println("passes=" + passes + " frames=" + frames);
+        // warm up both paths
+        bench.run(false);
+        bench.run(true);
+        for (int i = 0; i < 3; i++) {
+            System.out.printf("prepare=%8.2fus replay=%8.2fus%n", bench.run(false), bench.run(true));
+        }
+    }
+    
+}
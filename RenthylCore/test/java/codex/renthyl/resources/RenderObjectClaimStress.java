@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2024, codex
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package codex.renthyl.resources;
+
+import codex.renthyl.definitions.ResourceDef;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Concurrent stress check of the {@link RenderObject} claim protocol.
+ * <p>
+ * Threads repeatedly inspect random objects the same way asynchronous
+ * allocation does: claim, optionally hold a candidate while inspecting others,
+ * then acquire or unclaim. Some inspections throw, as a failing resource
+ * definition would, and are unclaimed in a finally block. An object acquired
+ * by two threads at once, or left claimed after all threads finish, fails
+ * the check.
+ * <p>
+ * Usage: {@code RenderObjectClaimStress [threads] [objects] [iterations]}
+ * 
+ * @author codex
+ */
+public class RenderObjectClaimStress {
+    
+    private static final ResourceDef<Object> DEF = new ResourceDef<Object>() {
+        @Override
+        public Object createResource() {
+            return new Object();
+        }
+        @Override
+        public Object applyDirectResource(Object resource) {
+            return resource;
+        }
+        @Override
+        public Object applyIndirectResource(Object resource) {
+            return null;
+        }
+    };
+    
+    private final RenderObject[] objects;
+    private final AtomicIntegerArray owners;
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong thrown = new AtomicLong();
+    
+    public RenderObjectClaimStress(int numObjects) {
+        objects = new RenderObject[numObjects];
+        owners = new AtomicIntegerArray(numObjects);
+        for (int i = 0; i < numObjects; i++) {
+            objects[i] = new RenderObject<>(DEF, new Object(), 0);
+            owners.set(i, -1);
+        }
+    }
+    
+    /**
+     * Runs the check.
+     * 
+     * @param threads
+     * @param iterations iterations per thread
+     * @return true if no violations occurred
+     * @throws InterruptedException 
+     */
+    public boolean run(int threads, int iterations) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        ArrayList<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread w = new Thread(() -> {
+                Random random = new Random(thread);
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                for (int i = 0; i < iterations; i++) {
+                    inspect(thread, random);
+                }
+            }, "ClaimStress-" + t);
+            workers.add(w);
+            w.start();
+        }
+        start.countDown();
+        for (Thread w : workers) {
+            w.join();
+        }
+        for (int i = 0; i < objects.length; i++) {
+            if (!objects[i].isFree()) {
+                System.err.println("Object " + i + " left claimed or acquired.");
+                failures.incrementAndGet();
+            }
+        }
+        return failures.get() == 0;
+    }
+    
+    private void inspect(int thread, Random random) {
+        int candidate = -1;
+        try {
+            for (int n = 0; n < 4; n++) {
+                int i = random.nextInt(objects.length);
+                RenderObject obj = objects[i];
+                if (!obj.tryClaim()) {
+                    continue;
+                }
+                boolean done = false;
+                try {
+                    if (random.nextInt(64) == 0) {
+                        thrown.incrementAndGet();
+                        throw new SimulatedFailure();
+                    }
+                    if (candidate < 0 && random.nextBoolean() && obj.hold()) {
+                        candidate = i;
+                        done = true;
+                    } else if (random.nextInt(4) == 0) {
+                        use(thread, i);
+                        done = true;
+                        return;
+                    }
+                } finally {
+                    if (!done) {
+                        obj.unclaim();
+                    }
+                }
+            }
+            if (candidate >= 0) {
+                int i = candidate;
+                candidate = -1;
+                use(thread, i);
+            }
+        } catch (SimulatedFailure ex) {
+            // unclaimed by the finally blocks
+        } finally {
+            if (candidate >= 0) {
+                objects[candidate].unclaim();
+            }
+        }
+    }
+    private void use(int thread, int i) {
+        RenderObject obj = objects[i];
+        try {
+            obj.acquire();
+        } catch (IllegalStateException ex) {
+            System.err.println("Object " + i + " already acquired when claimed by thread " + thread + ".");
+            failures.incrementAndGet();
+            return;
+        }
+        if (!owners.compareAndSet(i, -1, thread)) {
+            System.err.println("Object " + i + " acquired by threads "
+                    + owners.get(i) + " and " + thread + ".");
+            failures.incrementAndGet();
+        }
+        acquisitions.incrementAndGet();
+        Thread.yield();
+        owners.compareAndSet(i, thread, -1);
+        obj.release();
+    }
+    
+    private static class SimulatedFailure extends RuntimeException {}
+    
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int numObjects = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 200000;
+        RenderObjectClaimStress stress = new RenderObjectClaimStress(numObjects);
+        long start = System.nanoTime();
+        boolean passed = stress.run(threads, iterations);
+        long millis = (System.nanoTime() - start) / 1000000;
+        System.out.println("threads=" + threads + " objects=" + numObjects + " iterations=" + iterations
+                + " acquisitions=" + stress.acquisitions.get() + " failures(simulated)=" + stress.thrown.get()
+                + " time=" + millis + "ms");
+        if (!passed) {
+            System.out.println("FAILED: " + stress.failures.get() + " violations");
+            System.exit(1);
+        }
+        System.out.println("PASSED");
+    }
+    
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2024, codex
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ *    list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * 3. Neither the name of the copyright holder nor the names of its
+ *    contributors may be used to endorse or promote products derived from
+ *    this software without specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package codex.renthyl.resources;
+
+import codex.renthyl.modules.ModuleIndex;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedList;
+
+/**
+ * Measures the CPU time a consumer thread spends waiting on a resource
+ * produced by another thread.
+ * <p>
+ * Each frame, a producer thread works for a fixed time and then releases a
+ * {@link ResourceView}, while a consumer thread waits for it either by spinning
+ * on {@link ResourceView#isReadAvailable()} (the previous behavior of
+ * {@link ResourceList#waitForResource(ResourceTicket, int)}) or by parking
+ * with {@link ResourceView#awaitReadAvailable(long)}. Reported are the
+ * consumer's CPU time, the wall time of all frames (which grows when a
+ * spinning consumer starves the producer), and the average wake latency.
+ * <p>
+ * Usage: {@code ResourceWaitBenchmark [frames] [workMicros]}
+ * 
+ * @author codex
+ */
+public class ResourceWaitBenchmark {
+    
+    private static final ThreadMXBean BEAN = ManagementFactory.getThreadMXBean();
+    
+    private final int frames;
+    private final long workNanos;
+    
+    public ResourceWaitBenchmark(int frames, long workMicros) {
+        this.frames = frames;
+        this.workNanos = workMicros * 1000L;
+    }
+    
+    /**
+     * Runs one measurement.
+     * 
+     * @param park true to park, false to spin
+     * @return result line
+     * @throws InterruptedException 
+     */
+    public String run(boolean park) throws InterruptedException {
+        Producer user = new Producer();
+        ResourceView[] views = new ResourceView[frames];
+        long[] released = new long[frames];
+        for (int i = 0; i < frames; i++) {
+            views[i] = new ResourceView<>(user, null, new ResourceTicket<>("bench"));
+        }
+        long[] consumerCpu = new long[1];
+        long[] latency = new long[1];
+        Thread consumer = new Thread(() -> {
+            long cpu = BEAN.getCurrentThreadCpuTime();
+            for (int i = 0; i < frames; i++) {
+                ResourceView v = views[i];
+                if (park) {
+                    try {
+                        if (!v.awaitReadAvailable(5000)) {
+                            throw new IllegalStateException("Timed out.");
+                        }
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                } else {
+                    while (!v.isReadAvailable()) {}
+                }
+                latency[0] += System.nanoTime() - released[i];
+            }
+            consumerCpu[0] = BEAN.getCurrentThreadCpuTime() - cpu;
+        }, "Consumer");
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < frames; i++) {
+                work(workNanos);
+                released[i] = System.nanoTime();
+                views[i].release();
+            }
+        }, "Producer");
+        long start = System.nanoTime();
+        consumer.start();
+        producer.start();
+        producer.join();
+        consumer.join();
+        long wall = System.nanoTime() - start;
+        return String.format("%-5s consumerCpu=%8.2fms wall=%8.2fms expected=%8.2fms avgWake=%7.2fus",
+                park ? "park" : "spin", consumerCpu[0] / 1e6, wall / 1e6,
+                frames * workNanos / 1e6, latency[0] / 1e3 / frames);
+    }
+    
+    private static long work(long nanos) {
+        long end = System.nanoTime() + nanos;
+        long x = 0;
+        while (System.nanoTime() < end) {
+            x += x * 31 + 7;
+        }
+        return x;
+    }
+    
+    private static class Producer implements ResourceUser {
+        
+        private final ModuleIndex index = new ModuleIndex(1, 0);
+        private final LinkedList<ResourceTicket> tickets = new LinkedList<>();
+        
+        @Override
+        public LinkedList<ResourceTicket> getInputTickets() {
+            return tickets;
+        }
+        @Override
+        public LinkedList<ResourceTicket> getOutputTickets() {
+            return tickets;
+        }
+        @Override
+        public ModuleIndex getIndex() {
+            return index;
+        }
+        @Override
+        public void countReferences() {}
+        @Override
+        public void dereference() {}
+        @Override
+        public boolean isUsed() {
+            return true;
+        }
+        
+    }
+    
+    public static void main(String[] args) throws InterruptedException {
+        int frames = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        long work = args.length > 1 ? Long.parseLong(args[1]) : 500;
+        ResourceWaitBenchmark bench = new ResourceWaitBenchmark(frames, work);
+        System.out.println("frames=" + frames + " workMicros=" + work
+                + " cores=" + Runtime.getRuntime().availableProcessors());
+        // warm up both paths
+        bench.run(false);
+        bench.run(true);
+        for (int i = 0; i < 3; i++) {
+            System.out.println(bench.run(false));
+            System.out.println(bench.run(true));
+        }
+    }
+    
+}